@@ -0,0 +1,50 @@
+package com.gbujak.kanalarz;
+
+import com.gbujak.kanalarz.annotations.RollbackOnly;
+import com.gbujak.kanalarz.annotations.Step;
+import com.gbujak.kanalarz.annotations.StepsHolder;
+import org.jspecify.annotations.NullMarked;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+@StepsHolder("benchmark-steps")
+@NullMarked
+public class BenchmarkSteps {
+
+    private final BenchmarkSteps self;
+
+    public BenchmarkSteps(@Lazy BenchmarkSteps self) {
+        this.self = self;
+    }
+
+    @Step("noop")
+    public int noop(int value) {
+        return value;
+    }
+
+    @Step("large-arguments")
+    public int largeArguments(List<String> document) {
+        return document.size();
+    }
+
+    @Step("nested")
+    public int nested(int value) {
+        return self.noop(value) + self.noop(value + 1);
+    }
+
+    @RollbackOnly("marker")
+    public void marker(int value) { }
+
+    @Step(value = "fallible", fallible = true)
+    public StepOut<Integer> fallible(int value) {
+        return StepOut.of(value);
+    }
+
+    @Step(value = "fallible-error", fallible = true)
+    public StepOut<Integer> fallibleError(int value) {
+        return StepOut.err(new IllegalStateException("benchmark error " + value));
+    }
+}
@@ -0,0 +1,26 @@
+package com.gbujak.kanalarz;
+
+import org.jspecify.annotations.NullMarked;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Drops every event, so benchmarks measure Kanalarz and the serialization adapter only.
+ */
+@Component
+@NullMarked
+public class NoopPersistence implements KanalarzPersistence {
+
+    @Override
+    public void stepStarted(StepStartedEvent stepStartedEvent) { }
+
+    @Override
+    public void stepCompleted(StepCompletedEvent stepCompletedEvent) { }
+
+    @Override
+    public List<StepExecutedInfo> getExecutedStepsInContextInOrderOfExecutionStarted(UUID contextId) {
+        return List.of();
+    }
+}
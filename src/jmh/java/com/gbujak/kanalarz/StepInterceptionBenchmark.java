@@ -0,0 +1,127 @@
+package com.gbujak.kanalarz;
+
+import com.gbujak.kanalarz.testimplementations.TestSerialization;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cost of a single step call through the Spring proxy, with a no-op persistence and the Jackson test
+ * serialization. Every benchmark except {@link #emptyContext()} calls {@value #STEPS} steps in one context,
+ * so the scores are per step call.
+ */
+@State(Scope.Benchmark)
+public class StepInterceptionBenchmark {
+
+    static final int STEPS = 100;
+
+    private AnnotationConfigApplicationContext applicationContext;
+    private Kanalarz kanalarz;
+    private BenchmarkSteps steps;
+    private BenchmarkSteps plainSteps;
+    private List<String> largeDocument;
+
+    @Setup
+    public void setup() {
+        applicationContext = new AnnotationConfigApplicationContext(
+            KanalarzConfiguration.class,
+            TestSerialization.class,
+            NoopPersistence.class,
+            BenchmarkSteps.class
+        );
+        kanalarz = applicationContext.getBean(Kanalarz.class);
+        steps = applicationContext.getBean(BenchmarkSteps.class);
+        plainSteps = new BenchmarkSteps(null);
+
+        largeDocument = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            largeDocument.add("line %d of a large document passed to a step as an argument".formatted(i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        applicationContext.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STEPS)
+    public void plainMethodCall(Blackhole blackhole) {
+        for (int i = 0; i < STEPS; i++) {
+            blackhole.consume(plainSteps.noop(i));
+        }
+    }
+
+    @Benchmark
+    public void emptyContext() {
+        kanalarz.newContext().consume(context -> { });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STEPS)
+    public void noopStep(Blackhole blackhole) {
+        kanalarz.newContext().consume(context -> {
+            for (int i = 0; i < STEPS; i++) {
+                blackhole.consume(steps.noop(i));
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STEPS)
+    public void largeArgumentsStep(Blackhole blackhole) {
+        kanalarz.newContext().consume(context -> {
+            for (int i = 0; i < STEPS; i++) {
+                blackhole.consume(steps.largeArguments(largeDocument));
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STEPS)
+    public void nestedSteps(Blackhole blackhole) {
+        kanalarz.newContext().consume(context -> {
+            for (int i = 0; i < STEPS; i++) {
+                blackhole.consume(steps.nested(i));
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STEPS)
+    public void rollbackOnlyMarker() {
+        kanalarz.newContext().consume(context -> {
+            for (int i = 0; i < STEPS; i++) {
+                steps.marker(i);
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STEPS)
+    public void fallibleStep(Blackhole blackhole) {
+        kanalarz.newContext().consume(context -> {
+            for (int i = 0; i < STEPS; i++) {
+                blackhole.consume(steps.fallible(i));
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STEPS)
+    public void fallibleStepError(Blackhole blackhole) {
+        kanalarz.newContext().consume(context -> {
+            for (int i = 0; i < STEPS; i++) {
+                blackhole.consume(steps.fallibleError(i));
+            }
+        });
+    }
+}
@@ -0,0 +1,48 @@
+package com.gbujak.kanalarz;
+
+import com.gbujak.kanalarz.annotations.Step;
+import com.gbujak.kanalarz.annotations.StepsHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Cost of calling a step or rollback method once its arguments are known, through core reflection as it used to be
+ * done and through the method handle created at registration.
+ */
+@State(Scope.Benchmark)
+public class StepInvokerBenchmark {
+
+    private BenchmarkSteps target;
+    private Method method;
+    private StepInfoClasses.StepInfo stepInfo;
+    private Object[] arguments;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        target = new BenchmarkSteps(null);
+        method = BenchmarkSteps.class.getMethod("noop", int.class);
+        stepInfo = StepInfoClasses.StepInfo.createNew(
+            target,
+            method,
+            BenchmarkSteps.class.getAnnotation(StepsHolder.class),
+            method.getAnnotation(Step.class),
+            false
+        );
+        arguments = new Object[] { 42 };
+    }
+
+    @Benchmark
+    public Object reflectiveInvoke() throws InvocationTargetException, IllegalAccessException {
+        return method.invoke(target, arguments);
+    }
+
+    @Benchmark
+    public Object methodHandleInvoke() throws InvocationTargetException {
+        return stepInfo.invoke(arguments);
+    }
+}
@@ -0,0 +1,73 @@
+package com.gbujak.kanalarz;
+
+import com.gbujak.kanalarz.KanalarzCancellationChannel.CancelRequest;
+import org.jspecify.annotations.NullMarked;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Polls the cancellation channel for requests targeting the contexts of a {@link Kanalarz} instance and cancels
+ * them, until closed.
+ */
+@NullMarked
+class ContextCancellationPoller implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ContextCancellationPoller.class);
+
+    private final KanalarzCancellationChannel channel;
+    private final Supplier<Map<UUID, KanalarzContext>> runningContexts;
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().daemon().name("kanalarz-cancellation-poller").factory()
+    );
+
+    ContextCancellationPoller(
+        KanalarzCancellationChannel channel,
+        Supplier<Map<UUID, KanalarzContext>> runningContexts
+    ) {
+        this.channel = channel;
+        this.runningContexts = runningContexts;
+        var interval = Math.max(1, channel.pollInterval().toNanos());
+        poller.scheduleWithFixedDelay(this::poll, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    void poll() {
+        var running = runningContexts.get();
+        if (running.isEmpty()) {
+            return;
+        }
+
+        List<CancelRequest> requests;
+        try {
+            requests = channel.poll(running.keySet());
+        } catch (RuntimeException e) {
+            log.warn("Kanalarz failed to poll the cancellation channel", e);
+            return;
+        }
+
+        for (var request : requests) {
+            var context = running.get(request.contextId());
+            // Requests for a run that already finished, or that predate the current run, are dropped.
+            if (context != null && !request.requestedAt().isBefore(context.startedAt())) {
+                Kanalarz.tryCancelContext(request.contextId(), request.forceDeferRollback());
+            }
+            try {
+                channel.acknowledge(request);
+            } catch (RuntimeException e) {
+                log.warn("Kanalarz failed to acknowledge a cancel request of context [{}]", request.contextId(), e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        poller.shutdownNow();
+    }
+}
@@ -0,0 +1,54 @@
+package com.gbujak.kanalarz;
+
+import org.jspecify.annotations.NullMarked;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One timer thread shared by the deadlines of all running contexts.
+ */
+@NullMarked
+class ContextDeadlines {
+
+    private static final Logger log = LoggerFactory.getLogger(ContextDeadlines.class);
+
+    private static final ScheduledThreadPoolExecutor timer = createTimer();
+
+    private static ScheduledThreadPoolExecutor createTimer() {
+        var timer = new ScheduledThreadPoolExecutor(
+            1,
+            Thread.ofPlatform().daemon().name("kanalarz-deadline-timer").factory()
+        );
+        // Most contexts finish before their deadline, don't keep their timers queued until then.
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    private ContextDeadlines() { }
+
+    /**
+     * Cancel the context when the deadline passes. Cancel the returned future when the context finishes.
+     */
+    static ScheduledFuture<?> schedule(KanalarzContext context, Instant deadline) {
+        long delayNanos;
+        try {
+            delayNanos = Duration.between(Instant.now(), deadline).toNanos();
+        } catch (ArithmeticException e) {
+            delayNanos = Long.MAX_VALUE;
+        }
+        return timer.schedule(
+            () -> {
+                log.info("Kanalarz context [{}] exceeded its deadline [{}], cancelling it", context.id(), deadline);
+                context.deadlineExceeded();
+            },
+            Math.max(0, delayNanos),
+            TimeUnit.NANOSECONDS
+        );
+    }
+}
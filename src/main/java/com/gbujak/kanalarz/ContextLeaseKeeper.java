@@ -0,0 +1,110 @@
+package com.gbujak.kanalarz;
+
+import com.gbujak.kanalarz.KanalarzLeases.Lease;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Acquires, renews and releases the leases of running root contexts.
+ */
+@NullMarked
+class ContextLeaseKeeper {
+
+    private static final Logger log = LoggerFactory.getLogger(ContextLeaseKeeper.class);
+
+    private static final ScheduledExecutorService renewer = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().daemon().name("kanalarz-lease-renewer").factory()
+    );
+
+    /**
+     * A lease held by a running context.
+     */
+    final class HeldLease {
+
+        private final Lease lease;
+        private volatile long renewedAtNanos = System.nanoTime();
+        @Nullable private ScheduledFuture<?> renewal;
+
+        private HeldLease(Lease lease) {
+            this.lease = lease;
+        }
+
+        long fencingToken() {
+            return lease.fencingToken();
+        }
+
+        private void renew() {
+            var now = System.nanoTime();
+            try {
+                if (leases.renew(lease)) {
+                    renewedAtNanos = now;
+                    return;
+                }
+            } catch (RuntimeException e) {
+                if (now - renewedAtNanos < lease.ttl().toNanos()) {
+                    log.warn("Kanalarz failed to renew the lease on context [{}], retrying", lease.contextId(), e);
+                    return;
+                }
+            }
+            lost();
+        }
+
+        private void lost() {
+            stopRenewal();
+            log.warn("Kanalarz lost the lease on context [{}], cancelling it", lease.contextId());
+            Kanalarz.tryCancelContext(lease.contextId(), true);
+        }
+
+        private synchronized void stopRenewal() {
+            if (renewal != null) {
+                renewal.cancel(false);
+            }
+        }
+
+        void release() {
+            stopRenewal();
+            try {
+                leases.release(lease);
+            } catch (RuntimeException e) {
+                log.warn("Kanalarz failed to release the lease on context [{}]", lease.contextId(), e);
+            }
+        }
+    }
+
+    private final KanalarzLeases leases;
+
+    ContextLeaseKeeper(KanalarzLeases leases) {
+        this.leases = leases;
+    }
+
+    /**
+     * Acquire the lease on a context and start renewing it.
+     * @throws KanalarzException.KanalarzContextLeaseException if the lease is held by another node
+     */
+    HeldLease acquire(UUID contextId) {
+        Lease lease;
+        try {
+            lease = leases.tryAcquire(contextId);
+        } catch (RuntimeException e) {
+            throw new KanalarzException.KanalarzContextLeaseException(contextId, e);
+        }
+        if (lease == null) {
+            throw new KanalarzException.KanalarzContextLeaseException(contextId, null);
+        }
+
+        var held = new HeldLease(lease);
+        var period = Math.max(1, lease.ttl().toNanos() / 3);
+        synchronized (held) {
+            held.renewal = renewer.scheduleAtFixedRate(held::renew, period, period, TimeUnit.NANOSECONDS);
+        }
+        return held;
+    }
+}
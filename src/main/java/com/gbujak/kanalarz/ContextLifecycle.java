@@ -0,0 +1,91 @@
+package com.gbujak.kanalarz;
+
+import com.gbujak.kanalarz.KanalarzPersistence.ContextFinishedEvent;
+import com.gbujak.kanalarz.KanalarzPersistence.ContextOutcome;
+import com.gbujak.kanalarz.KanalarzPersistence.ContextRollbackState;
+import com.gbujak.kanalarz.KanalarzPersistence.ContextStartedEvent;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Emits the started and finished events of one run of a context.
+ */
+@NullMarked
+class ContextLifecycle {
+
+    private final KanalarzPersistencePipeline persistence;
+    private final KanalarzContext context;
+    @Nullable private final UUID parentId;
+    private final boolean rollbackOnly;
+    private final Instant startedAt;
+    private final long startedNanos;
+
+    private ContextLifecycle(
+        KanalarzPersistencePipeline persistence,
+        KanalarzContext context,
+        @Nullable UUID parentId,
+        boolean rollbackOnly
+    ) {
+        this.persistence = persistence;
+        this.context = context;
+        this.parentId = parentId;
+        this.rollbackOnly = rollbackOnly;
+        this.startedAt = context.startedAt();
+        this.startedNanos = System.nanoTime();
+    }
+
+    static ContextLifecycle started(
+        KanalarzPersistencePipeline persistence,
+        KanalarzContext context,
+        Kanalarz.@Nullable ContextStack parents,
+        boolean resumed,
+        boolean rollbackOnly
+    ) {
+        var parentId = parents != null ? parents.context().id() : null;
+        var lifecycle = new ContextLifecycle(persistence, context, parentId, rollbackOnly);
+        var event = new ContextStartedEvent(
+            context.id(),
+            parentId,
+            resumed,
+            rollbackOnly,
+            context.fullMetadata(),
+            lifecycle.startedAt
+        );
+        Kanalarz.runWithDeadlineInterruptsHeld(() -> persistence.contextStarted(event));
+        return lifecycle;
+    }
+
+    KanalarzContext context() {
+        return context;
+    }
+
+    /**
+     * Emit the finished event.
+     * @param thrown exception the context is about to throw, a failure to persist the event is added to it as
+     * suppressed. When null the failure is thrown.
+     */
+    void finished(ContextOutcome outcome, ContextRollbackState rollbackState, @Nullable Throwable thrown) {
+        var event = new ContextFinishedEvent(
+            context.id(),
+            parentId,
+            rollbackOnly,
+            outcome,
+            rollbackState,
+            context.fullMetadata(),
+            startedAt,
+            Duration.ofNanos(System.nanoTime() - startedNanos)
+        );
+        try {
+            Kanalarz.runWithDeadlineInterruptsHeld(() -> persistence.contextFinished(event));
+        } catch (RuntimeException e) {
+            if (thrown == null) {
+                throw e;
+            }
+            thrown.addSuppressed(e);
+        }
+    }
+}
@@ -4,27 +4,63 @@ import com.gbujak.kanalarz.KanalarzPersistence.StepExecutedInfo;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 @NullMarked
 class ContextResumeStateResolver {
 
     private final List<StepExecutedInfo> replayableSteps;
+    @Nullable private final UUID resolvedContextId;
+    @Nullable private final ExecutionPath resolvedBasePath;
 
     ContextResumeStateResolver(List<StepExecutedInfo> steps) {
-        Set<UUID> rolledBack =
-            steps.stream()
-                .flatMap(it -> it.wasRollbackFor().stream())
-                .collect(Collectors.toSet());
+        this(steps.reversed().iterator(), null, true);
+    }
+
+    /**
+     * Reads the history newest first, so that a rollback is always read before the step it rolled back and rolled
+     * back steps are never kept.
+     * @param stepsNewestFirst history of the context in reverse order of execution start
+     * @param contextId context whose base path is resolved while reading, or null to resolve it from the kept steps
+     * @param keepReplayable whether to keep the replayable steps for {@link #replayable()}
+     */
+    ContextResumeStateResolver(
+        Iterator<StepExecutedInfo> stepsNewestFirst,
+        @Nullable UUID contextId,
+        boolean keepReplayable
+    ) {
+        Set<UUID> rolledBack = new HashSet<>();
+        var replayable = new ArrayList<StepExecutedInfo>();
+        ExecutionPath basePath = null;
+
+        while (stepsNewestFirst.hasNext()) {
+            var step = stepsNewestFirst.next();
+            if (step.wasRollbackFor().isPresent()) {
+                rolledBack.add(step.wasRollbackFor().get());
+                rolledBack.addAll(step.batchedRollbackFor());
+                continue;
+            }
+            if (rolledBack.remove(step.stepId())) {
+                continue;
+            }
+            if (contextId != null) {
+                basePath = mergeBasePath(basePath, step, contextId);
+            }
+            if (keepReplayable) {
+                replayable.add(step);
+            }
+        }
 
-        this.replayableSteps = steps.stream()
-            .filter(it -> it.wasRollbackFor().isEmpty())
-            .filter(it -> !rolledBack.contains(it.stepId()))
-            .toList();
+        Collections.reverse(replayable);
+        this.replayableSteps = replayable;
+        this.resolvedContextId = contextId;
+        this.resolvedBasePath = basePath;
     }
 
     List<StepExecutedInfo> replayable() {
@@ -32,52 +68,30 @@ class ContextResumeStateResolver {
     }
 
     @Nullable
-    String resolveBasePath(UUID contextId) {
-        String result = null;
+    ExecutionPath resolveBasePath(UUID contextId) {
+        if (contextId.equals(resolvedContextId)) {
+            return resolvedBasePath;
+        }
 
+        ExecutionPath result = null;
         for (var step : replayableSteps) {
-            var path = step.executionPath();
-            var contextSegmentIndex = findContextSegmentIndex(path, contextId);
-            if (contextSegmentIndex == -1) {
-                continue;
-            }
-
-            var basePath = reconstructBasePath(path, contextSegmentIndex);
-            if (result != null && !result.equals(basePath)) {
-                throw inconsistentRootPaths(contextId);
-            }
-
-            result = basePath;
+            result = mergeBasePath(result, step, contextId);
         }
-
         return result;
     }
 
-    private int findContextSegmentIndex(String path, UUID contextId) {
-        var targetSegment = "c-" + contextId;
-        var pathSegments = path.split("\\.");
-        int result = -1;
-
-        for (int i = 0; i < pathSegments.length; i++) {
-            if (!pathSegments[i].equals(targetSegment)) {
-                continue;
-            }
-            if (result != -1) {
-                throw new KanalarzException.KanalarzIllegalUsageException(
-                    ("Tried to resume-replay context [%s] but its execution path is ambiguous because the same " +
-                        "context id appears multiple times in a single path!")
-                        .formatted(contextId)
-                );
-            }
-            result = i;
+    @Nullable
+    private ExecutionPath mergeBasePath(@Nullable ExecutionPath result, StepExecutedInfo step, UUID contextId) {
+        var basePath = ExecutionPath.parse(step.executionPath()).namedSubContextAncestor(contextId);
+        if (basePath == null) {
+            return result;
         }
 
-        return result;
-    }
+        if (result != null && !result.equals(basePath)) {
+            throw inconsistentRootPaths(contextId);
+        }
 
-    private String reconstructBasePath(String path, int contextSegmentIndex) {
-        var pathSegments = path.split("\\.");
-        return String.join(".", Arrays.copyOfRange(pathSegments, 0, contextSegmentIndex + 1));
+        return basePath;
     }
 
     private KanalarzException.KanalarzIllegalUsageException inconsistentRootPaths(UUID contextId) {
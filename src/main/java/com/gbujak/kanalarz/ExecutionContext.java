@@ -8,42 +8,59 @@ import java.util.UUID;
 
 @NullMarked
 class ExecutionContext {
-    private final String path;
+    private final ExecutionPath path;
     private int sequenceCounter = 0;
+    // Path of the next step, created early by forNestedSteps() and reused by nextStepId().
+    @Nullable private ExecutionPath nextStep = null;
 
-    public ExecutionContext() { this.path = "r"; }
-    public ExecutionContext(String path) { this.path = Objects.requireNonNull(path); }
+    public ExecutionContext() { this.path = ExecutionPath.ROOT; }
+    public ExecutionContext(ExecutionPath path) { this.path = Objects.requireNonNull(path); }
 
-    public String nextStepId() {
-        return path + ".s" + (sequenceCounter++);
+    public ExecutionPath nextStepId() {
+        var result = peekNextStep();
+        nextStep = null;
+        sequenceCounter++;
+        return result;
     }
 
     public ForkJoinExecutionContext forkJoinContext() {
+        nextStep = null;
         return new ForkJoinExecutionContext(path, (sequenceCounter++));
     }
 
     public ExecutionContext spawnSubContext(@Nullable UUID subcontextId) {
-        String subcontextSuffix = subcontextId != null ? "-" + subcontextId : (sequenceCounter++) + "";
-        return new ExecutionContext(path + ".c" + subcontextSuffix);
+        if (subcontextId != null) {
+            return new ExecutionContext(path.namedSubContext(subcontextId));
+        }
+        nextStep = null;
+        return new ExecutionContext(path.subContext(sequenceCounter++));
     }
 
     public ExecutionContext forNestedSteps() {
-        return new ExecutionContext(path + ".s" + (sequenceCounter));
+        return new ExecutionContext(peekNextStep());
+    }
+
+    private ExecutionPath peekNextStep() {
+        var result = nextStep;
+        if (result == null) {
+            result = path.step(sequenceCounter);
+            nextStep = result;
+        }
+        return result;
     }
 
     static class ForkJoinExecutionContext {
 
-        private final String path;
+        private final ExecutionPath path;
         private final int forkBaseId;
 
-        public ForkJoinExecutionContext(String path, int forkBaseId) {
+        public ForkJoinExecutionContext(ExecutionPath path, int forkBaseId) {
             this.path = path;
             this.forkBaseId = forkBaseId;
         }
 
         public ExecutionContext forTask(int taskIndex) {
-            return new ExecutionContext(path  + ".f" + forkBaseId + "-" + taskIndex);
+            return new ExecutionContext(path.forkTask(forkBaseId, taskIndex));
         }
     }
 }
-
@@ -0,0 +1,92 @@
+package com.gbujak.kanalarz;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Steps completed by a fresh context in this JVM, with the argument and result objects they were called with. An
+ * immediate rollback reads it instead of reading and deserializing the history from persistence.
+ * <p>
+ * Shared by a context and its fork copies. A journal that grew past {@link #MAX_ENTRIES} drops its entries and
+ * rollback falls back to persistence.
+ */
+@NullMarked
+class ExecutionJournal {
+
+    static final int MAX_ENTRIES = 10_000;
+
+    /**
+     * A completed step, a rollforward or a rollback. Steps read from persistence have the serialized result instead
+     * of the live objects.
+     * @param arguments rollforward arguments by parameter name, empty for rollbacks and persisted steps
+     * @param result rollforward result unwrapped from {@link StepOut}, null for persisted steps
+     * @param serializedExecutionResult serialized result of a persisted step, null for journaled steps
+     * @param batchedRollbackFor other rollforwards rolled back together with {@code wasRollbackFor} by a batched
+     *                           rollback
+     */
+    record Entry(
+        UUID stepId,
+        String stepIdentifier,
+        List<UUID> contexts,
+        Optional<UUID> wasRollbackFor,
+        boolean failed,
+        ExecutionPath executionPath,
+        Map<String, @Nullable Object> arguments,
+        @Nullable Object result,
+        @Nullable String serializedExecutionResult,
+        List<UUID> batchedRollbackFor
+    ) {
+
+        static Entry persisted(KanalarzPersistence.StepExecutedInfo step) {
+            return new Entry(
+                step.stepId(),
+                step.stepIdentifier(),
+                step.contexts(),
+                step.wasRollbackFor(),
+                step.failed(),
+                ExecutionPath.parse(step.executionPath()),
+                Map.of(),
+                null,
+                step.serializedExecutionResult(),
+                step.batchedRollbackFor()
+            );
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+    private boolean overflowed = false;
+
+    synchronized void add(Entry entry) {
+        if (overflowed) {
+            return;
+        }
+        if (entries.size() >= MAX_ENTRIES) {
+            overflowed = true;
+            entries.clear();
+            return;
+        }
+        entries.add(entry);
+    }
+
+    /**
+     * @return entries in reverse order of execution start, like the history read from persistence, or null if the
+     * journal overflowed
+     */
+    @Nullable
+    synchronized List<Entry> newestFirst() {
+        if (overflowed) {
+            return null;
+        }
+        // Entries are added on completion, step ids are UUIDv7 generated when the step starts.
+        var result = new ArrayList<>(entries);
+        result.sort(Comparator.comparing(Entry::stepId).reversed());
+        return result;
+    }
+}
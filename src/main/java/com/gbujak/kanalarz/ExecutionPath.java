@@ -0,0 +1,267 @@
+package com.gbujak.kanalarz;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Execution path of a step or context, stored as a parent pointer and a single segment. Paths of nested steps
+ * share their ancestors, and the string form persisted in step events (like {@code r.c-<uuid>.f3-17.s4}) is only
+ * rendered when asked for and then cached.
+ */
+@NullMarked
+final class ExecutionPath {
+
+    enum Kind {
+        /** {@code r}, or whatever the first segment of a parsed path was */
+        ROOT,
+        /** {@code s<index>} */
+        STEP,
+        /** {@code c<index>} */
+        SUBCONTEXT,
+        /** {@code c-<uuid>} */
+        NAMED_SUBCONTEXT,
+        /** {@code f<index>-<taskIndex>} */
+        FORK_TASK,
+        /** {@code r} after a step, the rollback of that step */
+        ROLLBACK
+    }
+
+    static final ExecutionPath ROOT = new ExecutionPath(null, Kind.ROOT, 0, 0, null, "r");
+
+    @Nullable private final ExecutionPath parent;
+    private final Kind kind;
+    private final int index;
+    private final int taskIndex;
+    @Nullable private final UUID contextId;
+    @Nullable private final String rootLabel;
+    private final int depth;
+    private final int hash;
+    // Rendered lazily, racing threads render the same string.
+    @Nullable private String rendered;
+
+    private ExecutionPath(
+        @Nullable ExecutionPath parent,
+        Kind kind,
+        int index,
+        int taskIndex,
+        @Nullable UUID contextId,
+        @Nullable String rootLabel
+    ) {
+        this.parent = parent;
+        this.kind = kind;
+        this.index = index;
+        this.taskIndex = taskIndex;
+        this.contextId = contextId;
+        this.rootLabel = rootLabel;
+        this.depth = parent == null ? 0 : parent.depth + 1;
+        int hash = parent == null ? 0 : parent.hash;
+        hash = 31 * hash + kind.hashCode();
+        hash = 31 * hash + index;
+        hash = 31 * hash + taskIndex;
+        hash = 31 * hash + (contextId == null ? 0 : contextId.hashCode());
+        hash = 31 * hash + (rootLabel == null ? 0 : rootLabel.hashCode());
+        this.hash = hash;
+        if (parent == null) {
+            this.rendered = rootLabel;
+        }
+    }
+
+    ExecutionPath step(int index) {
+        return new ExecutionPath(this, Kind.STEP, index, 0, null, null);
+    }
+
+    ExecutionPath subContext(int index) {
+        return new ExecutionPath(this, Kind.SUBCONTEXT, index, 0, null, null);
+    }
+
+    ExecutionPath namedSubContext(UUID contextId) {
+        return new ExecutionPath(this, Kind.NAMED_SUBCONTEXT, 0, 0, contextId, null);
+    }
+
+    ExecutionPath forkTask(int forkIndex, int taskIndex) {
+        return new ExecutionPath(this, Kind.FORK_TASK, forkIndex, taskIndex, null, null);
+    }
+
+    ExecutionPath rollback() {
+        return new ExecutionPath(this, Kind.ROLLBACK, 0, 0, null, null);
+    }
+
+    /**
+     * Find the segment of the named subcontext with the given id.
+     * @param contextId id of the subcontext
+     * @return path ending with the subcontext segment or null if the id isn't in this path
+     * @throws KanalarzException.KanalarzIllegalUsageException if the id appears more than once
+     */
+    @Nullable
+    ExecutionPath namedSubContextAncestor(UUID contextId) {
+        ExecutionPath result = null;
+        for (var current = this; current != null; current = current.parent) {
+            if (current.kind != Kind.NAMED_SUBCONTEXT || !contextId.equals(current.contextId)) {
+                continue;
+            }
+            if (result != null) {
+                throw new KanalarzException.KanalarzIllegalUsageException(
+                    ("Tried to resume-replay context [%s] but its execution path is ambiguous because the same " +
+                        "context id appears multiple times in a single path!")
+                        .formatted(contextId)
+                );
+            }
+            result = current;
+        }
+        return result;
+    }
+
+    int depth() {
+        return depth;
+    }
+
+    /**
+     * @return task index of a {@link Kind#FORK_TASK} segment
+     */
+    int taskIndex() {
+        return taskIndex;
+    }
+
+    /**
+     * Find the fork task segment closest to the root that is deeper than the given depth.
+     * @param depth depth the segment must be below
+     * @return path ending with the fork task segment or null if there's none below the depth
+     */
+    @Nullable
+    ExecutionPath outermostForkTaskBelow(int depth) {
+        ExecutionPath result = null;
+        for (var current = this; current != null && current.depth > depth; current = current.parent) {
+            if (current.kind == Kind.FORK_TASK) {
+                result = current;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param other another fork task segment
+     * @return true if both are tasks of the same {@code forkJoin} call
+     */
+    boolean isSameFork(ExecutionPath other) {
+        return kind == Kind.FORK_TASK &&
+            other.kind == Kind.FORK_TASK &&
+            index == other.index &&
+            Objects.equals(parent, other.parent);
+    }
+
+    /**
+     * Parse a path persisted by {@link #toString()}.
+     * @param path rendered path
+     * @return parsed path
+     * @throws KanalarzException.KanalarzIllegalUsageException if a segment isn't recognized
+     */
+    static ExecutionPath parse(String path) {
+        var segmentEnd = path.indexOf('.');
+        var rootLabel = segmentEnd == -1 ? path : path.substring(0, segmentEnd);
+        var result = rootLabel.equals(ROOT.rootLabel)
+            ? ROOT
+            : new ExecutionPath(null, Kind.ROOT, 0, 0, null, rootLabel);
+
+        while (segmentEnd != -1) {
+            var segmentStart = segmentEnd + 1;
+            segmentEnd = path.indexOf('.', segmentStart);
+            result = result.parseChild(path, segmentStart, segmentEnd == -1 ? path.length() : segmentEnd);
+        }
+
+        result.rendered = path;
+        return result;
+    }
+
+    private ExecutionPath parseChild(String path, int start, int end) {
+        try {
+            var segmentLength = end - start;
+            switch (segmentLength > 0 ? path.charAt(start) : ' ') {
+                case 's' -> {
+                    return step(Integer.parseInt(path, start + 1, end, 10));
+                }
+                case 'c' -> {
+                    return segmentLength > 1 && path.charAt(start + 1) == '-'
+                        ? namedSubContext(UUID.fromString(path.substring(start + 2, end)))
+                        : subContext(Integer.parseInt(path, start + 1, end, 10));
+                }
+                case 'f' -> {
+                    var dash = path.indexOf('-', start);
+                    if (dash == -1 || dash > end) {
+                        break;
+                    }
+                    return forkTask(
+                        Integer.parseInt(path, start + 1, dash, 10),
+                        Integer.parseInt(path, dash + 1, end, 10)
+                    );
+                }
+                case 'r' -> {
+                    if (segmentLength == 1) {
+                        return rollback();
+                    }
+                }
+                default -> { }
+            }
+        } catch (IllegalArgumentException e) {
+            // falls through to the exception below, NumberFormatException included
+        }
+        throw new KanalarzException.KanalarzIllegalUsageException(
+            "Unrecognized segment [%s] in execution path [%s]".formatted(path.substring(start, end), path)
+        );
+    }
+
+    @Override
+    public String toString() {
+        var result = rendered;
+        if (result != null) {
+            return result;
+        }
+
+        var parentRendered = Objects.requireNonNull(parent).toString();
+        var builder = new StringBuilder(parentRendered.length() + 12).append(parentRendered).append('.');
+        switch (kind) {
+            case ROOT -> throw new IllegalStateException("Root path with a parent");
+            case STEP -> builder.append('s').append(index);
+            case SUBCONTEXT -> builder.append('c').append(index);
+            case NAMED_SUBCONTEXT -> builder.append("c-").append(contextId);
+            case FORK_TASK -> builder.append('f').append(index).append('-').append(taskIndex);
+            case ROLLBACK -> builder.append('r');
+        }
+        result = builder.toString();
+        rendered = result;
+        return result;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ExecutionPath that) || hash != that.hash || depth != that.depth) {
+            return false;
+        }
+        ExecutionPath left = this;
+        ExecutionPath right = that;
+        for (; left != null && right != null; left = left.parent, right = right.parent) {
+            if (left == right) {
+                return true;
+            }
+            if (left.kind != right.kind ||
+                left.index != right.index ||
+                left.taskIndex != right.taskIndex ||
+                !Objects.equals(left.contextId, right.contextId) ||
+                !Objects.equals(left.rootLabel, right.rootLabel)
+            ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
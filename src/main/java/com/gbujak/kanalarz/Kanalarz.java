@@ -1,28 +1,33 @@
 package com.gbujak.kanalarz;
 
-import com.gbujak.kanalarz.KanalarzPersistence.StepExecutedInfo;
+import com.gbujak.kanalarz.KanalarzPersistence.ContextOutcome;
+import com.gbujak.kanalarz.KanalarzPersistence.ContextRollbackState;
 import com.gbujak.kanalarz.StepReplayer.SearchResult;
-import com.gbujak.kanalarz.annotations.RollbackOnly;
-import com.gbujak.kanalarz.annotations.Step;
-import com.gbujak.kanalarz.annotations.StepsHolder;
 import com.github.f4b6a3.uuid.UuidCreator;
 import org.aopalliance.intercept.MethodInvocation;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
 import java.util.stream.Stream;
 
 /**
  * Entrypoint of the Kanalarz pipeline library
  */
 @NullMarked
-public class Kanalarz {
+public class Kanalarz implements AutoCloseable {
 
     private static final ThreadLocal<@Nullable ContextStack> kanalarzContextThreadLocal = new ThreadLocal<>();
     private static final ExecutorService forkExecutor = Executors.newVirtualThreadPerTaskExecutor();
@@ -30,38 +35,105 @@ public class Kanalarz {
 
     private final KanalarzStepsRegistry stepsRegistry;
     private final KanalarzSerialization serialization;
-    private final KanalarzPersistence persistence;
+    private final KanalarzPersistencePipeline persistence;
+    // Set when the pipeline was created by this instance and has to be closed with it.
+    private final boolean ownsPersistence;
+    @Nullable private final ContextLeaseKeeper leaseKeeper;
+    @Nullable private final KanalarzCancellationChannel cancellationChannel;
+    @Nullable private final ContextCancellationPoller cancellationPoller;
+    // Contexts started through this instance, the cancellation poller only asks the channel about these.
+    private final ConcurrentHashMap<UUID, KanalarzContext> ownContexts = new ConcurrentHashMap<>();
 
     Kanalarz(
         KanalarzStepsRegistry stepsRegistry,
         KanalarzSerialization serialization,
         KanalarzPersistence persistence
+    ) {
+        this(
+            stepsRegistry,
+            serialization,
+            new KanalarzPersistencePipeline(
+                new KanalarzPersistenceExceptionWrapper(persistence),
+                KanalarzPersistencePipelineSettings.defaults()
+            ),
+            true,
+            null,
+            null
+        );
+    }
+
+    Kanalarz(
+        KanalarzStepsRegistry stepsRegistry,
+        KanalarzSerialization serialization,
+        KanalarzPersistencePipeline persistencePipeline,
+        @Nullable KanalarzLeases leases,
+        @Nullable KanalarzCancellationChannel cancellationChannel
+    ) {
+        this(stepsRegistry, serialization, persistencePipeline, false, leases, cancellationChannel);
+    }
+
+    private Kanalarz(
+        KanalarzStepsRegistry stepsRegistry,
+        KanalarzSerialization serialization,
+        KanalarzPersistencePipeline persistencePipeline,
+        boolean ownsPersistence,
+        @Nullable KanalarzLeases leases,
+        @Nullable KanalarzCancellationChannel cancellationChannel
     ) {
         this.stepsRegistry = stepsRegistry;
         this.serialization = new KanalarzSerializationExceptionWrapper(serialization);
-        this.persistence = new KanalarzPersistenceExceptionWrapper(persistence);
+        this.persistence = persistencePipeline;
+        this.ownsPersistence = ownsPersistence;
+        this.leaseKeeper = leases != null ? new ContextLeaseKeeper(leases) : null;
+        this.cancellationChannel = cancellationChannel;
+        this.cancellationPoller = cancellationChannel != null
+            ? new ContextCancellationPoller(cancellationChannel, this::runningContextsSnapshot)
+            : null;
+    }
+
+    /**
+     * Stop polling the cancellation channel. Contexts still running can only be cancelled from this JVM afterwards.
+     * A persistence pipeline created by this instance is closed too, writing its buffered events.
+     */
+    @Override
+    public void close() {
+        if (cancellationPoller != null) {
+            cancellationPoller.close();
+        }
+        if (ownsPersistence) {
+            persistence.close();
+        }
     }
 
     /**
      * Thread-local stack of active contexts for the current execution thread.
      * @param context current context
      * @param parents parent stack frame, if any
+     * @param contextIds immutable list of context ids of this stack, from the root to this frame
      */
     public record ContextStack(
         KanalarzContext context,
-        @Nullable ContextStack parents
+        @Nullable ContextStack parents,
+        List<UUID> contextIds
     ) {
 
-        private UUID contextId() {
-            return context.id();
+        /**
+         * Push a context on top of the parent stack frames.
+         * @param context current context
+         * @param parents parent stack frame, if any
+         */
+        public ContextStack(KanalarzContext context, @Nullable ContextStack parents) {
+            this(context, parents, appendContextId(parents, context.id()));
         }
 
-        private List<UUID> contextIds() {
-            return Stream.iterate(this, Objects::nonNull, ContextStack::parents)
-                .filter(Objects::nonNull)
-                .map(ContextStack::contextId)
-                .toList()
-                .reversed();
+        private static List<UUID> appendContextId(@Nullable ContextStack parents, UUID contextId) {
+            if (parents == null) {
+                return List.of(contextId);
+            }
+            var parentIds = parents.contextIds();
+            var ids = parentIds.toArray(new UUID[parentIds.size() + 1]);
+            ids[parentIds.size()] = contextId;
+            return List.of(ids);
         }
 
         private UUID stepIdOrThrow() {
@@ -106,12 +178,10 @@ public class Kanalarz {
     @Nullable
     Object handleMethodInvocation(
         MethodInvocation invocation,
-        StepsHolder stepsHolder,
-        @Nullable Step step,
-        @Nullable RollbackOnly rollbackOnly
+        StepInfoClasses.StepInfo stepInfo
     ) {
 
-        if (step == null && rollbackOnly == null) {
+        if (stepInfo.step == null && !stepInfo.rollbackMarker) {
             throw new KanalarzException.KanalarzInternalError(
                 "Handling method invocation on step that isn't a step or a rollback marker, " +
                     "this should never happen!",
@@ -125,9 +195,7 @@ public class Kanalarz {
         return contextStack.context().withNewStep(
             stepStack -> handleInContextMethodExecution(
                 invocation,
-                stepsHolder,
-                step,
-                rollbackOnly,
+                stepInfo,
                 contextStack.context()
             )
         );
@@ -136,9 +204,7 @@ public class Kanalarz {
     @Nullable
     private Object handleInContextMethodExecution(
         MethodInvocation invocation,
-        StepsHolder stepsHolder,
-        @Nullable Step step,
-        @Nullable RollbackOnly rollbackOnly,
+        StepInfoClasses.StepInfo stepInfo,
         KanalarzContext context
     ) {
 
@@ -151,25 +217,12 @@ public class Kanalarz {
                 throw new KanalarzException.KanalarzContextCancelledException(true);
         }
 
-        StepInfoClasses.StepInfo stepInfo;
-        String stepIdentifier;
-
-        if (step != null) {
-            stepInfo = stepsRegistry.getStepInfoOrThrow(stepsHolder, step);
-            stepIdentifier = KanalarzStepsRegistry.stepIdentifier(stepsHolder, step);
-        } else if (rollbackOnly != null) {
-            stepInfo = stepsRegistry.getStepInfoOrThrow(stepsHolder, rollbackOnly);
-            stepIdentifier = KanalarzStepsRegistry.stepIdentifier(stepsHolder, rollbackOnly);
-        } else {
-            throw new KanalarzException.KanalarzInternalError(
-                "Handling invocation of a method that is neither a step nor a rollback-only marker!", null
-            );
-        }
+        var stepIdentifier = stepInfo.identifier;
 
         var serializeParametersInfo = Utils.makeSerializeParametersInfo(invocation.getArguments(), stepInfo);
 
         var stepReplayer = context.stepReplayer();
-        var serializedParameters = serialization.serializeStepCalled(serializeParametersInfo, null);
+        var serializedParameters = serialization.serializeStepStarted(serializeParametersInfo);
         var stepExecutionPath = context.nextStepExecutionPath();
 
         // Must check from this direction if the replayer is done because forked contexts will drain
@@ -178,7 +231,7 @@ public class Kanalarz {
             context.clearStepReplayer();
         } else if (stepReplayer != null) {
             var foundStep = stepReplayer.findNextStep(
-                stepExecutionPath,
+                stepExecutionPath.toString(),
                 stepIdentifier,
                 serializedParameters
             );
@@ -199,7 +252,7 @@ public class Kanalarz {
         }
 
         var contextStack = contextStackOrThrow();
-        persistence.stepStarted(new KanalarzPersistence.StepStartedEvent(
+        var startedEvent = new KanalarzPersistence.StepStartedEvent(
             contextStack.contextIds(),
             contextStack.stepIdOrThrow(),
             contextStack.parentStepId(),
@@ -207,21 +260,32 @@ public class Kanalarz {
             context.fullMetadata(),
             stepIdentifier,
             stepInfo.description,
-            serializedParameters,
-            step != null && step.fallible(),
+            serializedParameters.serialized(),
+            stepInfo.fallible,
             stepInfo.rollbackMarker,
-            stepExecutionPath
-        ));
+            stepExecutionPath.toString(),
+            serializedParameters.fingerprint(),
+            List.of()
+        );
+        runWithDeadlineInterruptsHeld(() -> persistence.stepStarted(startedEvent, context.durability()));
 
         Object result = null;
         Throwable error = null;
         boolean unwrappedStepOut = false;
+        boolean interruptedByDeadline = false;
         String resultSerialized;
         try {
-            result = rollbackOnly != null
-                ? Utils.voidOrUnitValue(stepInfo.returnType)
-                : proceedInvocation(invocation);
-            if (step != null && step.fallible() && result == null) {
+            if (stepInfo.rollbackMarker) {
+                result = Utils.voidOrUnitValue(stepInfo.returnType);
+            } else {
+                context.stepThreadStarted();
+                try {
+                    result = proceedInvocation(invocation, stepInfo);
+                } finally {
+                    interruptedByDeadline = context.stepThreadFinished();
+                }
+            }
+            if (stepInfo.fallible && result == null) {
                 throw new KanalarzException.KanalarzIllegalUsageException(
                     "Fallible step [%s] returned null instead of a StepOut instance!"
                         .formatted(stepIdentifier)
@@ -232,8 +296,8 @@ public class Kanalarz {
                 result = stepOutResult.valueOrNull();
                 error = stepOutResult.errorOrNull();
             }
-            resultSerialized = serialization.serializeStepCalled(
-                serializeParametersInfo,
+            resultSerialized = serialization.serializeStepCompleted(
+                serializedParameters,
                 new KanalarzSerialization.SerializeReturnInfo(
                     stepInfo.returnType,
                     result,
@@ -243,8 +307,8 @@ public class Kanalarz {
             );
         } catch (InvocationTargetException e) {
             error = e.getTargetException();
-            resultSerialized = serialization.serializeStepCalled(
-                serializeParametersInfo,
+            resultSerialized = serialization.serializeStepCompleted(
+                serializedParameters,
                 new KanalarzSerialization.SerializeReturnInfo(
                     stepInfo.returnType,
                     result,
@@ -261,22 +325,50 @@ public class Kanalarz {
 
         var failed = error != null;
         var contextStackAfterExecute = contextStackOrThrow();
-        persistence.stepCompleted(new KanalarzPersistence.StepCompletedEvent(
+        var completedEvent = new KanalarzPersistence.StepCompletedEvent(
             contextStack.contextIds(),
             contextStackAfterExecute.stepIdOrThrow(),
             contextStackAfterExecute.parentStepId(),
             Optional.empty(),
-            Collections.unmodifiableMap(context.fullMetadata()),
+            context.fullMetadata(),
             stepIdentifier,
             stepInfo.description,
             resultSerialized,
             failed,
             stepInfo.rollbackMarker,
-            stepExecutionPath
-        ));
+            stepExecutionPath.toString(),
+            serializedParameters.fingerprint(),
+            List.of()
+        );
+        runWithDeadlineInterruptsHeld(() -> persistence.stepCompleted(completedEvent, context.durability()));
+
+        var journaledResult = result;
+        addToJournals(() -> {
+            Map<String, @Nullable Object> arguments = new HashMap<>();
+            var invocationArguments = invocation.getArguments();
+            for (int i = 0; i < invocationArguments.length; i++) {
+                arguments.put(stepInfo.paramsInfo.get(i).paramName, invocationArguments[i]);
+            }
+            return new ExecutionJournal.Entry(
+                contextStackAfterExecute.stepIdOrThrow(),
+                stepIdentifier,
+                contextStack.contextIds(),
+                Optional.empty(),
+                failed,
+                stepExecutionPath,
+                arguments,
+                journaledResult,
+                null,
+                List.of()
+            );
+        });
 
         if (failed) {
-            if (step != null && step.fallible()) {
+            if (interruptedByDeadline) {
+                // The step was most likely failed by the deadline interrupt, fail the context as cancelled.
+                throw new KanalarzException.KanalarzContextCancelledException(false);
+            }
+            if (stepInfo.fallible) {
                 return StepOut.err(error);
             } else {
                 throw new KanalarzException.KanalarzStepFailedException(error);
@@ -291,7 +383,55 @@ public class Kanalarz {
         }
     }
 
-    private Object proceedInvocation(MethodInvocation invocation) throws InvocationTargetException {
+    /**
+     * Add a completed step to the journals of the running contexts it belongs to. The entry is only created when
+     * some context on the stack keeps a journal.
+     */
+    private static void addToJournals(Supplier<ExecutionJournal.Entry> entrySupplier) {
+        ExecutionJournal.Entry entry = null;
+        for (var stack = contextStackOrNull(); stack != null; stack = stack.parents()) {
+            var journal = stack.context().journal();
+            if (journal == null) {
+                continue;
+            }
+            if (entry == null) {
+                entry = entrySupplier.get();
+            }
+            if (entry.contexts().contains(stack.context().id())) {
+                journal.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Run a persistence write or a rollback with the deadline interrupts of the current thread held, so a deadline
+     * that passed while a step of the thread runs doesn't fail interruptible adapters or rollback handlers. The
+     * interrupt is set again afterwards if the step still runs.
+     */
+    static void runWithDeadlineInterruptsHeld(Runnable action) {
+        var contextStack = contextStackOrNull();
+        for (var stack = contextStack; stack != null; stack = stack.parents()) {
+            stack.context().holdDeadlineInterrupt();
+        }
+        try {
+            action.run();
+        } finally {
+            for (var stack = contextStack; stack != null; stack = stack.parents()) {
+                stack.context().resumeDeadlineInterrupt();
+            }
+        }
+    }
+
+    @Nullable
+    private Object proceedInvocation(
+        MethodInvocation invocation,
+        StepInfoClasses.StepInfo stepInfo
+    ) throws InvocationTargetException {
+        // The steps holder proxy is frozen with our interceptor as its only advice, so the step is called on the
+        // target directly.
+        if (stepInfo.invoker != null) {
+            return stepInfo.invoke(invocation.getArguments());
+        }
         try {
             return invocation.proceed();
         } catch (Throwable throwable) {
@@ -312,6 +452,9 @@ public class Kanalarz {
         @Nullable UUID resumesContext,
         Function<KanalarzContext, T> body,
         EnumSet<Option> options,
+        @Nullable Durability durability,
+        @Nullable Instant deadline,
+        int rollbackParallelism,
         boolean resumeReplay
     ) {
         throwIfNestedInsideSelf(resumesContext);
@@ -323,74 +466,180 @@ public class Kanalarz {
             );
         }
 
-        String restoredBasePath = null;
-        StepReplayer replayer = null;
-
-        if (resumesContext != null) {
-            var executedSteps = persistence.getExecutedStepsInContextInOrderOfExecutionStarted(resumesContext);
-            var resumeStateResolver = new ContextResumeStateResolver(executedSteps);
-            var resumeBasePath = resumeStateResolver.resolveBasePath(resumesContext);
-            if (!resumeReplay && resumeBasePath == null) {
-                resumeBasePath = "r.c-" + resumesContext;
-            }
-
-            restoredBasePath = resumeBasePath;
-            if (resumeReplay) {
-                replayer = new StepReplayer(resumeStateResolver.replayable(), serialization, stepsRegistry);
+        var lease = acquireResumedLease(resumesContext);
+        AutoCloseableContext autoCloseableContext;
+        try {
+            autoCloseableContext = openContext(
+                metadata, resumesContext, options, durability, deadline, resumeReplay, lease
+            );
+        } catch (Throwable e) {
+            if (lease != null) {
+                lease.release();
             }
+            throw e;
         }
 
-        Map<String, String> actualMetadata = new HashMap<>();
-        actualMetadata.putAll(contextStack().map(it -> it.context().fullMetadata()).orElse(Map.of()));
-        actualMetadata.putAll(metadata);
-
-        try (
-            var autoCloseableContext =
-                new AutoCloseableContext(actualMetadata, resumesContext, options, replayer, restoredBasePath)
-        ) {
+        try (autoCloseableContext) {
+            var context = autoCloseableContext.context();
+            var lifecycle = ContextLifecycle.started(
+                persistence, context, contextStackOrThrow().parents(), resumesContext != null, false
+            );
+            var replayer = autoCloseableContext.stepReplayer();
+            T result;
             try {
 
-                var result = body.apply(autoCloseableContext.context());
+                result = body.apply(context);
                 if (replayer != null) {
                     if (!replayer.isDone()) {
                         throw new KanalarzException
                             .KanalarzNotAllStepsReplayedException(replayer.unreplayedStepsInfo());
                     }
                 }
-                return result;
             } catch (KanalarzException.KanalarzInternalError e) {
+                lifecycle.finished(ContextOutcome.FAILED, ContextRollbackState.PENDING, e);
                 throw e;
             } catch (KanalarzException.KanalarzStepFailedException e) {
                 if (!options.contains(Option.DEFER_ROLLBACK)) {
-                    performRollback(autoCloseableContext.context(), e.getInitialStepFailedException(), options);
+                    rollbackAfterFailure(
+                        lifecycle,
+                        ContextOutcome.FAILED,
+                        e.getInitialStepFailedException(),
+                        e,
+                        options,
+                        rollbackParallelism
+                    );
+                } else {
+                    lifecycle.finished(ContextOutcome.FAILED, ContextRollbackState.PENDING, e);
                 }
                 throw e;
             } catch (KanalarzException.KanalarzContextCancelledException e) {
                 if (!options.contains(Option.DEFER_ROLLBACK) && !e.forceDeferRollback()) {
-                    performRollback(autoCloseableContext.context(), e, options);
+                    rollbackAfterFailure(lifecycle, ContextOutcome.CANCELLED, e, e, options, rollbackParallelism);
+                } else {
+                    lifecycle.finished(ContextOutcome.CANCELLED, ContextRollbackState.PENDING, e);
                 }
                 throw e;
             } catch (Throwable e) {
+                var thrown = new KanalarzException.KanalarzThrownOutsideOfStepException(e);
                 if (!options.contains(Option.DEFER_ROLLBACK)) {
-                    performRollback(autoCloseableContext.context(), e, options);
+                    rollbackAfterFailure(lifecycle, ContextOutcome.FAILED, e, thrown, options, rollbackParallelism);
+                } else {
+                    lifecycle.finished(ContextOutcome.FAILED, ContextRollbackState.PENDING, thrown);
                 }
-                throw new KanalarzException.KanalarzThrownOutsideOfStepException(e);
+                throw thrown;
             }
+            lifecycle.finished(ContextOutcome.SUCCEEDED, ContextRollbackState.NOT_NEEDED, null);
+            return result;
         }
     }
 
+    /**
+     * Acquire the lease of a resumed context before its history is read, so another node can't add to the history
+     * between the read and the acquisition.
+     */
+    private ContextLeaseKeeper.@Nullable HeldLease acquireResumedLease(@Nullable UUID resumesContext) {
+        return leaseKeeper != null && resumesContext != null ? leaseKeeper.acquire(resumesContext) : null;
+    }
+
+    /**
+     * Restore the resume state of the context from its history and enter it.
+     */
+    private AutoCloseableContext openContext(
+        Map<String, String> metadata,
+        @Nullable UUID resumesContext,
+        EnumSet<Option> options,
+        @Nullable Durability durability,
+        @Nullable Instant deadline,
+        boolean resumeReplay,
+        ContextLeaseKeeper.@Nullable HeldLease lease
+    ) {
+        ExecutionPath restoredBasePath = null;
+        StepReplayer replayer = null;
+
+        if (resumesContext != null) {
+            var resumeStateResolver = new ContextResumeStateResolver(
+                persistence.executedSteps(resumesContext, KanalarzPersistence.HistoryOrder.NEWEST_FIRST),
+                resumesContext,
+                resumeReplay
+            );
+            var resumeBasePath = resumeStateResolver.resolveBasePath(resumesContext);
+            if (!resumeReplay && resumeBasePath == null) {
+                resumeBasePath = ExecutionPath.ROOT.namedSubContext(resumesContext);
+            }
+
+            restoredBasePath = resumeBasePath;
+            if (resumeReplay) {
+                replayer = new StepReplayer(resumeStateResolver.replayable(), serialization, stepsRegistry);
+            }
+        }
+
+        Map<String, String> actualMetadata = new HashMap<>();
+        actualMetadata.putAll(contextStack().map(it -> it.context().fullMetadata()).orElse(Map.of()));
+        actualMetadata.putAll(metadata);
+
+        return new AutoCloseableContext(
+            actualMetadata,
+            resumesContext,
+            options,
+            durability,
+            deadline,
+            replayer,
+            restoredBasePath,
+            leaseKeeper,
+            lease,
+            ownContexts
+        );
+    }
+
+    private void rollbackAfterFailure(
+        ContextLifecycle lifecycle,
+        ContextOutcome outcome,
+        Throwable originalError,
+        Throwable thrown,
+        EnumSet<Option> options,
+        int rollbackParallelism
+    ) {
+        runWithDeadlineInterruptsHeld(() -> {
+            try {
+                performRollback(lifecycle.context(), originalError, options, rollbackParallelism);
+            } catch (Throwable e) {
+                lifecycle.finished(outcome, ContextRollbackState.ROLLBACK_FAILED, e);
+                throw e;
+            }
+            lifecycle.finished(outcome, ContextRollbackState.ROLLED_BACK, thrown);
+        });
+    }
+
     private void rollbackInContext(
         Map<String, String> metadata,
         UUID resumesContext,
-        EnumSet<Option> options
+        EnumSet<Option> options,
+        @Nullable Durability durability,
+        int rollbackParallelism,
+        @Nullable RollbackThrottle rollbackThrottle
     ) {
         throwIfNestedInsideSelf(resumesContext);
 
+        // The lease is acquired here, before the rollback reads the history.
         try (
             var autoCloseableContext =
-                new AutoCloseableContext(metadata, resumesContext, options, null, null)
+                new AutoCloseableContext(
+                    metadata, resumesContext, options, durability, null, null, null, leaseKeeper, null, ownContexts
+                )
         ) {
-            performRollback(autoCloseableContext.context(), null, options);
+            autoCloseableContext.context().setRollbackThrottle(rollbackThrottle);
+            var lifecycle = ContextLifecycle.started(
+                persistence, autoCloseableContext.context(), contextStackOrThrow().parents(), true, true
+            );
+            try {
+                runWithDeadlineInterruptsHeld(() ->
+                    performRollback(autoCloseableContext.context(), null, options, rollbackParallelism)
+                );
+            } catch (Throwable e) {
+                lifecycle.finished(ContextOutcome.FAILED, ContextRollbackState.ROLLBACK_FAILED, e);
+                throw e;
+            }
+            lifecycle.finished(ContextOutcome.SUCCEEDED, ContextRollbackState.ROLLED_BACK, null);
         }
     }
 
@@ -408,27 +657,51 @@ public class Kanalarz {
         }
     }
 
+    private record PendingRollback(
+        ExecutionJournal.Entry rollforward,
+        StepInfoClasses.StepInfo stepInfo,
+        StepInfoClasses.StepInfo rollback
+    ) { }
+
     private void performRollback(
         KanalarzContext context,
         @Nullable Throwable originalError,
-        EnumSet<Option> options
+        EnumSet<Option> options,
+        int rollbackParallelism
     ) {
-        var executedSteps = persistence.getExecutedStepsInContextInOrderOfExecutionStarted(context.id());
-        var executedRollbacks =
-            executedSteps.stream()
-                .filter(it -> it.wasRollbackFor().isPresent())
-                .collect(
-                    Collectors.toMap(
-                        it -> it.wasRollbackFor().get(),
-                        StepExecutedInfo::failed,
+        // Newest first, a rollback is always read before the step it rolled back. Only rollbacks of steps that
+        // weren't read yet are kept.
+        var journal = context.journal();
+        var journaledSteps = journal != null ? journal.newestFirst() : null;
+        Iterator<ExecutionJournal.Entry> executedSteps = journaledSteps != null
+            ? journaledSteps.iterator()
+            : Utils.mapIterator(
+                persistence.executedSteps(context.id(), KanalarzPersistence.HistoryOrder.NEWEST_FIRST),
+                ExecutionJournal.Entry::persisted
+            );
+        Map<UUID, Boolean> executedRollbacks = new HashMap<>();
+        var plan = rollbackParallelism > 1 ? new RollbackPlan<>(Kanalarz::canJoinBatch) : null;
+        List<PendingRollback> batch = new ArrayList<>();
+
+        while (executedSteps.hasNext()) {
+            var rollforward = executedSteps.next();
+            if (rollforward.wasRollbackFor().isPresent()) {
+                executedRollbacks.merge(
+                    rollforward.wasRollbackFor().get(),
+                    rollforward.failed(),
+                    (leftFailed, rightFailed) -> (leftFailed && rightFailed)
+                );
+                for (var batchedRollforward : rollforward.batchedRollbackFor()) {
+                    executedRollbacks.merge(
+                        batchedRollforward,
+                        rollforward.failed(),
                         (leftFailed, rightFailed) -> (leftFailed && rightFailed)
-                    ));
-        var stepsToRollback =
-            executedSteps.reversed().stream()
-                .filter(it -> it.wasRollbackFor().isEmpty())
-                .toList();
+                    );
+                }
+                continue;
+            }
+            var executedRollbackFailed = executedRollbacks.remove(rollforward.stepId());
 
-        for (var rollforward : stepsToRollback) {
             if (rollforward.failed()) {
                 continue;
             }
@@ -450,24 +723,14 @@ public class Kanalarz {
                 );
             }
 
-            boolean fallible;
-            String rollbackIdentifier;
-            if (rollback.rollback != null) {
-                fallible = rollback.rollback.fallible();
-                rollbackIdentifier = KanalarzStepsRegistry.rollbackIdentifier(rollback.stepsHolder, rollback.rollback);
-            } else if (rollback.rollbackOnly != null) {
-                fallible = rollback.rollbackOnly.fallible();
-                rollbackIdentifier = KanalarzStepsRegistry.rollbackIdentifier(rollback.stepsHolder, rollback.rollbackOnly);
-            } else {
-                throw new KanalarzException.KanalarzInternalError("Unreachable!", null);
-            }
-
-            var executedRollbackFailed = executedRollbacks.get(rollforward.stepId());
             if (executedRollbackFailed != null) {
                 if (!executedRollbackFailed || options.contains(Option.SKIP_FAILED_ROLLBACKS)) {
                     continue;
                 }
                 if (!options.contains(Option.RETRY_FAILED_ROLLBACKS)) {
+                    if (!batch.isEmpty()) {
+                        executeRollback(context, batch, originalError, options);
+                    }
                     throw new KanalarzException.KanalarzRollbackStepFailedException(
                         originalError,
                         new IllegalStateException(
@@ -478,110 +741,320 @@ public class Kanalarz {
                 }
             }
 
+            var pendingRollback = new PendingRollback(rollforward, stepInfo, rollback);
+            if (plan != null) {
+                plan.add(pendingRollback, rollforward.executionPath());
+                continue;
+            }
+            if (!batch.isEmpty() && !canJoinBatch(batch, pendingRollback)) {
+                executeRollback(context, batch, originalError, options);
+                batch = new ArrayList<>();
+            }
+            batch.add(pendingRollback);
+            if (batch.size() >= maxBatchSize(rollback)) {
+                executeRollback(context, batch, originalError, options);
+                batch = new ArrayList<>();
+            }
+        }
 
-            var deserializedParams = serialization.deserializeParameters(
-                rollforward.serializedExecutionResult(),
-                Utils.makeDeserializeParamsInfo(stepInfo.paramsInfo),
-                StepOut.unwrapStepOutType(stepInfo.returnType)
+        if (!batch.isEmpty()) {
+            executeRollback(context, batch, originalError, options);
+        }
+
+        if (plan != null) {
+            var failure = new AtomicReference<@Nullable Throwable>();
+            executeRollbackPlan(
+                context, plan.units(), new Semaphore(rollbackParallelism), failure, originalError, options
             );
-            if (deserializedParams.executionError() != null) {
-                continue;
+            switch (failure.get()) {
+                case null -> { }
+                case RuntimeException e -> throw e;
+                case Error e -> throw e;
+                case Throwable e -> throw new KanalarzException.KanalarzInternalError(e.getMessage(), e);
             }
+        }
+    }
 
-            @Nullable Object[] parameters = new Object[rollback.paramsInfo.size()];
-            for (int i = 0; i < rollback.paramsInfo.size(); i++) {
-                var paramInfo = rollback.paramsInfo.get(i);
+    private static boolean isBatched(StepInfoClasses.StepInfo rollback) {
+        return rollback.rollback != null && rollback.rollback.batched();
+    }
+
+    private static int maxBatchSize(StepInfoClasses.StepInfo rollback) {
+        return isBatched(rollback) ? Objects.requireNonNull(rollback.rollback).maxBatchSize() : 1;
+    }
+
+    /**
+     * Rollforwards of the same step in the same context stack can be rolled back together by a batched rollback.
+     */
+    private static boolean canJoinBatch(List<PendingRollback> batch, PendingRollback next) {
+        var first = batch.getFirst();
+        return first.rollback() == next.rollback()
+            && batch.size() < maxBatchSize(next.rollback())
+            && first.rollforward().contexts().equals(next.rollforward().contexts());
+    }
 
-                if (paramInfo.isRollforwardOutput) {
-                    parameters[i] = deserializedParams.executionResult();
-                    if (parameters[i] instanceof StepOut<?> stepOut) {
-                        parameters[i] = stepOut.valueOrThrow();
+    /**
+     * Execute a block of a rollback plan. Blocks of fork tasks run in their own virtual threads with a copy of the
+     * context, but only as many rollbacks as the semaphore allows run at once. The first failure stops all blocks
+     * from starting further rollbacks.
+     */
+    private void executeRollbackPlan(
+        KanalarzContext context,
+        List<RollbackPlan.Unit<PendingRollback>> units,
+        Semaphore permits,
+        AtomicReference<@Nullable Throwable> failure,
+        @Nullable Throwable originalError,
+        EnumSet<Option> options
+    ) {
+        for (var unit : units) {
+            if (failure.get() != null) {
+                return;
+            }
+            switch (unit) {
+                case RollbackPlan.Batch<PendingRollback> batch -> {
+                    permits.acquireUninterruptibly();
+                    try {
+                        executeRollback(context, batch.rollbacks(), originalError, options);
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                        return;
+                    } finally {
+                        permits.release();
                     }
-                } else {
-                    parameters[i] = deserializedParams.parameters().get(paramInfo.paramName);
                 }
+                case RollbackPlan.Fork<PendingRollback> fork -> {
+                    var contextStack = contextStackOrThrow();
+                    List<CompletableFuture<Void>> futures = new ArrayList<>(fork.tasks().size());
+                    for (var task : fork.tasks().values()) {
+                        var contextCopy = context.copy(new ExecutionContext(fork.forkTask()));
+                        futures.add(CompletableFuture.runAsync(() -> {
+                            try {
+                                kanalarzContextThreadLocal.set(
+                                    new ContextStack(contextCopy, contextStack.parents, contextStack.contextIds)
+                                );
+                                executeRollbackPlan(contextCopy, task, permits, failure, originalError, options);
+                            } catch (Throwable e) {
+                                failure.compareAndSet(null, e);
+                            } finally {
+                                kanalarzContextThreadLocal.remove();
+                            }
+                        }, forkExecutor));
+                    }
+                    futures.forEach(CompletableFuture::join);
+                }
+            }
+        }
+    }
 
-                if (paramInfo.isNonNullable && parameters[i] == null) {
-                    throw new KanalarzException.KanalarzIllegalUsageException(
-                        "Trying to execute rollback for step [%s] but the non-nullable parameter [%s] is null"
-                            .formatted(rollforward.stepIdentifier(), paramInfo.paramName)
-                    );
+    /**
+     * Roll back a batch of rollforwards of the same step. Only batched rollback methods get more than one, their
+     * parameters are lists with an element per rolled back step.
+     */
+    private void executeRollback(
+        KanalarzContext context,
+        List<PendingRollback> batch,
+        @Nullable Throwable originalError,
+        EnumSet<Option> options
+    ) {
+        var first = batch.getFirst();
+        var stepInfo = first.stepInfo();
+        var rollback = first.rollback();
+        var batched = isBatched(rollback);
+        boolean fallible = rollback.fallible;
+        String rollbackIdentifier = rollback.identifier;
+
+        // Only decode what the rollback method takes.
+        var usedParamsInfo = Utils.makeDeserializeParamsInfo(stepInfo.paramsInfo, rollback.paramsInfo);
+        var rollforwardReturnType = StepOut.unwrapStepOutType(stepInfo.returnType);
+
+        List<ExecutionJournal.Entry> rolledBack = new ArrayList<>(batch.size());
+        List<@Nullable Object[]> rolledBackParameters = new ArrayList<>(batch.size());
+        for (var pendingRollback : batch) {
+            var rollforward = pendingRollback.rollforward();
+            var rollforwardParameters = rollbackParameters(
+                rollforward, rollback, usedParamsInfo, rollforwardReturnType, !batched
+            );
+            if (rollforwardParameters != null) {
+                rolledBack.add(rollforward);
+                rolledBackParameters.add(rollforwardParameters);
+            }
+        }
+        if (rolledBack.isEmpty()) {
+            return;
+        }
+
+        @Nullable Object[] parameters;
+        if (batched) {
+            parameters = new Object[rollback.paramsInfo.size()];
+            for (int i = 0; i < parameters.length; i++) {
+                @Nullable Object[] column = new Object[rolledBack.size()];
+                for (int j = 0; j < column.length; j++) {
+                    column[j] = rolledBackParameters.get(j)[i];
                 }
+                parameters[i] = Arrays.asList(column);
             }
+        } else {
+            parameters = rolledBackParameters.getFirst();
+        }
 
-            context.withNewStep(stepStack -> {
+        var rollforward = rolledBack.getFirst();
+        var batchedRollbackFor = rolledBack.stream().skip(1).map(ExecutionJournal.Entry::stepId).toList();
 
-                var serializedParameters = serialization.serializeStepCalled(
-                    Utils.makeSerializeParametersInfo(parameters, rollback),
-                    null
-                );
+        var rollbackThrottle = context.rollbackThrottle();
+        if (rollbackThrottle != null) {
+            rollbackThrottle.beforeRollback(rollback.stepsHolder.value());
+        }
 
-                var contextStack = contextStackOrThrow();
-                var executionPath = rollforward.executionPath() + ".r";
-
-                persistence.stepStarted(new KanalarzPersistence.StepStartedEvent(
-                    rollforward.contexts(),
-                    contextStack.stepIdOrThrow(),
-                    contextStack.parentStepId(),
-                    Optional.of(rollforward.stepId()),
-                    context.fullMetadata(),
-                    rollbackIdentifier,
-                    rollback.description,
-                    serializedParameters,
-                    fallible,
-                    rollback.rollbackMarker,
-                    executionPath
-                ));
-
-                Object result = null;
-                Throwable error = null;
-                try {
-                    if (rollback.method == null) {
-                        throw new KanalarzException.KanalarzInternalError(
-                            "Rollback had null method reference this should never happen!",
-                            null
-                        );
-                    }
-                    result = rollback.method.invoke(rollback.target, parameters);
-                } catch (InvocationTargetException e) {
-                    error = e.getTargetException();
-                } catch (Throwable e) {
-                    throw new KanalarzException.KanalarzInternalError(e.getMessage(), e);
+        context.withNewStep(stepStack -> {
+
+            var serializedParameters = serialization.serializeStepStarted(
+                Utils.makeSerializeParametersInfo(parameters, rollback)
+            );
+
+            var contextStack = contextStackOrThrow();
+            var executionPath = rollforward.executionPath().rollback();
+
+            persistence.stepStarted(new KanalarzPersistence.StepStartedEvent(
+                rollforward.contexts(),
+                contextStack.stepIdOrThrow(),
+                contextStack.parentStepId(),
+                Optional.of(rollforward.stepId()),
+                context.fullMetadata(),
+                rollbackIdentifier,
+                rollback.description,
+                serializedParameters.serialized(),
+                fallible,
+                rollback.rollbackMarker,
+                executionPath.toString(),
+                serializedParameters.fingerprint(),
+                batchedRollbackFor
+            ), context.durability());
+
+            Object result = null;
+            Throwable error = null;
+            try {
+                if (rollback.method == null) {
+                    throw new KanalarzException.KanalarzInternalError(
+                        "Rollback had null method reference this should never happen!",
+                        null
+                    );
                 }
+                result = rollback.invoke(parameters);
+            } catch (InvocationTargetException e) {
+                error = e.getTargetException();
+            } catch (Throwable e) {
+                throw new KanalarzException.KanalarzInternalError(e.getMessage(), e);
+            }
 
-                var serializedResult = serialization.serializeStepCalled(
-                    Utils.makeSerializeParametersInfo(parameters, rollback),
-                    new KanalarzSerialization.SerializeReturnInfo(
-                        rollback.returnType,
-                        result,
-                        error,
-                        rollback.returnIsSecret
-                    )
+            var serializedResult = serialization.serializeStepCompleted(
+                serializedParameters,
+                new KanalarzSerialization.SerializeReturnInfo(
+                    rollback.returnType,
+                    result,
+                    error,
+                    rollback.returnIsSecret
+                )
+            );
+
+            boolean failed = error != null;
+            var contextStackAfterExecute = contextStackOrThrow();
+            persistence.stepCompleted(new KanalarzPersistence.StepCompletedEvent(
+                contextStack.contextIds(),
+                contextStackAfterExecute.stepIdOrThrow(),
+                contextStackAfterExecute.parentStepId(),
+                Optional.of(rollforward.stepId()),
+                context.fullMetadata(),
+                rollbackIdentifier,
+                rollback.description,
+                serializedResult,
+                failed,
+                rollback.rollbackMarker,
+                executionPath.toString(),
+                serializedParameters.fingerprint(),
+                batchedRollbackFor
+            ), context.durability());
+
+            var rollbackStepId = contextStackAfterExecute.stepIdOrThrow();
+            addToJournals(() -> new ExecutionJournal.Entry(
+                rollbackStepId,
+                rollbackIdentifier,
+                rollforward.contexts(),
+                Optional.of(rollforward.stepId()),
+                failed,
+                executionPath,
+                Map.of(),
+                null,
+                null,
+                batchedRollbackFor
+            ));
+
+            if (failed && !fallible && !options.contains(Option.ALL_ROLLBACK_STEPS_FALLIBLE)) {
+                throw new KanalarzException.KanalarzRollbackStepFailedException(originalError, error);
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * Resolve the rollback method arguments for a single rollforward.
+     * @return arguments or null if the rollforward result says it failed and there's nothing to roll back
+     */
+    private @Nullable Object @Nullable [] rollbackParameters(
+        ExecutionJournal.Entry rollforward,
+        StepInfoClasses.StepInfo rollback,
+        List<KanalarzSerialization.DeserializeParameterInfo> usedParamsInfo,
+        Type rollforwardReturnType,
+        boolean checkNullability
+    ) {
+        Map<String, @Nullable Object> rollforwardParams;
+        @Nullable Object rollforwardResult = null;
+        var serializedExecutionResult = rollforward.serializedExecutionResult();
+        if (serializedExecutionResult == null) {
+            rollforwardParams = rollforward.arguments();
+            rollforwardResult = rollforward.result();
+        } else if (rollback.paramsInfo.stream().anyMatch(it -> it.isRollforwardOutput)) {
+            var deserializedParams = serialization.deserializeParameters(
+                serializedExecutionResult,
+                usedParamsInfo,
+                rollforwardReturnType
+            );
+            if (deserializedParams.executionError() != null) {
+                return null;
+            }
+            rollforwardParams = deserializedParams.parameters();
+            rollforwardResult = deserializedParams.executionResult();
+        } else {
+            rollforwardParams = usedParamsInfo.isEmpty()
+                ? Map.of()
+                : serialization.deserializeParametersOnly(
+                    serializedExecutionResult,
+                    usedParamsInfo,
+                    rollforwardReturnType
                 );
+        }
+
+        @Nullable Object[] parameters = new Object[rollback.paramsInfo.size()];
+        for (int i = 0; i < rollback.paramsInfo.size(); i++) {
+            var paramInfo = rollback.paramsInfo.get(i);
 
-                boolean failed = error != null;
-                var contextStackAfterExecute = contextStackOrThrow();
-                persistence.stepCompleted(new KanalarzPersistence.StepCompletedEvent(
-                    contextStack.contextIds(),
-                    contextStackAfterExecute.stepIdOrThrow(),
-                    contextStackAfterExecute.parentStepId(),
-                    Optional.of(rollforward.stepId()),
-                    context.fullMetadata(),
-                    rollbackIdentifier,
-                    rollback.description,
-                    serializedResult,
-                    failed,
-                    rollback.rollbackMarker,
-                    executionPath
-                ));
-
-                if (failed && !fallible && !options.contains(Option.ALL_ROLLBACK_STEPS_FALLIBLE)) {
-                    throw new KanalarzException.KanalarzRollbackStepFailedException(originalError, error);
+            if (paramInfo.isRollforwardOutput) {
+                parameters[i] = rollforwardResult;
+                if (parameters[i] instanceof StepOut<?> stepOut) {
+                    parameters[i] = stepOut.valueOrThrow();
                 }
+            } else {
+                parameters[i] = rollforwardParams.get(paramInfo.paramName);
+            }
 
-                return null;
-            });
+            if (checkNullability && paramInfo.isNonNullable && parameters[i] == null) {
+                throw new KanalarzException.KanalarzIllegalUsageException(
+                    "Trying to execute rollback for step [%s] but the non-nullable parameter [%s] is null"
+                        .formatted(rollforward.stepIdentifier(), paramInfo.paramName)
+                );
+            }
         }
+        return parameters;
     }
 
     /**
@@ -592,6 +1065,11 @@ public class Kanalarz {
         @Nullable private UUID resumeContext;
         private final Map<String, String> metadata = new HashMap<>();
         private final EnumSet<Option> options = EnumSet.noneOf(Option.class);
+        @Nullable private Durability durability;
+        @Nullable private Instant deadline;
+        @Nullable private Duration timeout;
+        private int rollbackParallelism = 1;
+        @Nullable private RollbackThrottle rollbackThrottle;
 
         KanalarzContextBuilder() { }
 
@@ -639,6 +1117,70 @@ public class Kanalarz {
             return this;
         }
 
+        /**
+         * Set how step events of this context are written to the persistence adapter. If not set, the context
+         * uses the durability of the context it's nested in, or {@link Durability#SYNC}.
+         * @param durability durability of step events
+         * @return this to continue building
+         */
+        public KanalarzContextBuilder durability(Durability durability) {
+            this.durability = Objects.requireNonNull(durability);
+            return this;
+        }
+
+        /**
+         * Set the time the context must finish by. When it passes the context is cancelled like with
+         * {@link #cancelContext(UUID)} and the threads executing its steps are interrupted, a step failing because
+         * of that fails the context with {@link KanalarzException.KanalarzContextCancelledException}. Rollback
+         * follows the usual cancellation rules, its steps aren't interrupted. Nested contexts and fork tasks
+         * inherit the deadline.
+         * @param deadline time the context must finish by
+         * @return this to continue building
+         */
+        public KanalarzContextBuilder deadline(Instant deadline) {
+            this.deadline = Objects.requireNonNull(deadline);
+            this.timeout = null;
+            return this;
+        }
+
+        /**
+         * Set the deadline of the context relative to when it starts.
+         * @param timeout time the context has to finish after it starts
+         * @return this to continue building
+         * @see #deadline(Instant)
+         */
+        public KanalarzContextBuilder deadline(Duration timeout) {
+            this.timeout = Objects.requireNonNull(timeout);
+            this.deadline = null;
+            return this;
+        }
+
+        /**
+         * Roll back steps that ran in different tasks of a {@link #forkJoin(List, int, Function)} concurrently.
+         * Steps of a single task are still rolled back in reverse order, and a step that called a fork is rolled
+         * back after all of its tasks. By default, the rollback runs sequentially. A step that failed to roll back
+         * in an earlier attempt fails the rollback before any step is rolled back.
+         * @param maxParallelism max number of rollbacks running at once; must be >= 1, 1 rolls back sequentially
+         * @return this to continue building
+         */
+        public KanalarzContextBuilder parallelRollback(int maxParallelism) {
+            if (maxParallelism < 1) {
+                throw new IllegalArgumentException("Illegal max parallelism option: " + maxParallelism);
+            }
+            this.rollbackParallelism = maxParallelism;
+            return this;
+        }
+
+        KanalarzContextBuilder rollbackThrottle(RollbackThrottle rollbackThrottle) {
+            this.rollbackThrottle = Objects.requireNonNull(rollbackThrottle);
+            return this;
+        }
+
+        @Nullable
+        private Instant resolveDeadline() {
+            return timeout != null ? Instant.now().plus(timeout) : deadline;
+        }
+
         /**
          * Add a metadata field to the metadata map. The metadata
          * is accessible through the pipeline context and is passed to
@@ -660,7 +1202,9 @@ public class Kanalarz {
          */
         public <T extends @Nullable Object> T start(Function<KanalarzContext, T> block) {
             validateDependantOptions();
-            return inContext(metadata, resumeContext, block, options, false);
+            return inContext(
+                metadata, resumeContext, block, options, durability, resolveDeadline(), rollbackParallelism, false
+            );
         }
 
         /**
@@ -687,7 +1231,9 @@ public class Kanalarz {
          */
         public <T extends @Nullable Object> T startResumeReplay(Function<KanalarzContext, T> block) {
             validateDependantOptions();
-            return inContext(metadata, resumeContext, block, options, true);
+            return inContext(
+                metadata, resumeContext, block, options, durability, resolveDeadline(), rollbackParallelism, true
+            );
         }
 
         /**
@@ -728,7 +1274,7 @@ public class Kanalarz {
                     "Immediate rollback of a context that doesn't resume anything makes no sense!"
                 );
             }
-            rollbackInContext(metadata, resumeContext, options);
+            rollbackInContext(metadata, resumeContext, options, durability, rollbackParallelism, rollbackThrottle);
         }
 
         private void validateDependantOptions() {
@@ -786,6 +1332,59 @@ public class Kanalarz {
         cancelContext(contextId, KanalarzContext.State.CANCELLED_FORCE_DEFER_ROLLBACK);
     }
 
+    /**
+     * Cancels the context wherever it runs. A context running in this JVM is cancelled like with
+     * {@link #cancelContext(UUID)}. Otherwise the request is published through the
+     * {@link KanalarzCancellationChannel} and the node running the context cancels it within the poll interval of
+     * the channel. A request for a context that isn't running anywhere is ignored by later runs of it, the request
+     * time is compared with the start of the run, so node clocks should be in sync.
+     * @param contextId context id to cancel
+     * @param forceDeferRollback whether the rollback is deferred, like
+     *                           {@link #cancelContextForceDeferRollback(UUID)}
+     * @throws IllegalStateException if the context runs in this JVM and has already been cancelled, or if it isn't
+     * running in this JVM and there's no cancellation channel
+     */
+    public void requestCancel(UUID contextId, boolean forceDeferRollback) {
+        Objects.requireNonNull(contextId);
+        try {
+            cancelContext(
+                contextId,
+                forceDeferRollback
+                    ? KanalarzContext.State.CANCELLED_FORCE_DEFER_ROLLBACK
+                    : KanalarzContext.State.CANCELLED
+            );
+            return;
+        } catch (IllegalStateException e) {
+            if (cancellationChannel == null || contexts.containsKey(contextId)) {
+                throw e;
+            }
+        }
+        cancellationChannel.publish(
+            new KanalarzCancellationChannel.CancelRequest(contextId, forceDeferRollback, Instant.now())
+        );
+    }
+
+    static boolean isRunningInThisJvm(UUID contextId) {
+        return contexts.containsKey(contextId);
+    }
+
+    Map<UUID, KanalarzContext> runningContextsSnapshot() {
+        return Map.copyOf(ownContexts);
+    }
+
+    static void tryCancelContext(UUID contextId, boolean forceDeferRollback) {
+        try {
+            cancelContext(
+                contextId,
+                forceDeferRollback
+                    ? KanalarzContext.State.CANCELLED_FORCE_DEFER_ROLLBACK
+                    : KanalarzContext.State.CANCELLED
+            );
+        } catch (IllegalStateException e) {
+            // already cancelled or finished
+        }
+    }
+
     private static void cancelContext(UUID contextId, KanalarzContext.State newState) {
         if (newState == KanalarzContext.State.RUNNING) {
             throw new KanalarzException.KanalarzInternalError("Can't restore a context state back to running!", null);
@@ -816,7 +1415,8 @@ public class Kanalarz {
      * <p>
      * Must be called inside an active Kanalarz context.
      * <p>
-     * Returned values are in the same order as input elements.
+     * Returned values are in the same order as input elements. A task is created for every element up front, see
+     * {@link #forkJoinStreaming(Iterator, int, Function, BiConsumer)} for large or lazily produced inputs.
      * @param elements items to process
      * @param maxParallelism max number of concurrent tasks; must be >= 1
      * @param function function to execute per element
@@ -845,7 +1445,9 @@ public class Kanalarz {
             futures.add(CompletableFuture.supplyAsync(() -> {
                 if (semaphore != null) semaphore.acquireUninterruptibly();
                 try {
-                    kanalarzContextThreadLocal.set(new ContextStack(contextCopy, contextStack.parents));
+                    kanalarzContextThreadLocal.set(
+                        new ContextStack(contextCopy, contextStack.parents, contextStack.contextIds)
+                    );
                     return function.apply(element);
                 } finally {
                     kanalarzContextThreadLocal.remove();
@@ -870,6 +1472,175 @@ public class Kanalarz {
         return forkJoin(elements, Integer.MAX_VALUE, function);
     }
 
+    private record ForkTaskResult<X, Y>(X element, @Nullable Y result, @Nullable Throwable error) { }
+
+    /**
+     * Execute the function concurrently for elements of an iterator while preserving Kanalarz context propagation,
+     * handing each result to a callback as soon as its task finishes.
+     * <p>
+     * Must be called inside an active Kanalarz context.
+     * <p>
+     * Unlike {@link #forkJoin(List, int, Function)}, an element is only taken from the iterator and its task only
+     * created when fewer than maxParallelism tasks are running, so elements can be produced lazily and results
+     * don't have to be kept until the last task finishes. Tasks are numbered in iteration order like the elements
+     * of a list passed to {@code forkJoin}, so iterating the same elements again resume-replays the same steps.
+     * <p>
+     * The iterator and the callback are only used by the calling thread, the callback gets results in the order
+     * tasks finish. After a task, the iterator or the callback fails no more tasks are created, the running ones
+     * are waited for and the first failure is thrown, a task failure wrapped in {@link CompletionException} like in
+     * {@code forkJoin}. A checked exception sneakily thrown by the iterator or the callback is wrapped in
+     * {@link UndeclaredThrowableException}.
+     * @param elements items to process
+     * @param maxParallelism max number of concurrent tasks; must be >= 1
+     * @param function function to execute per element
+     * @param onResult called with every element and its result
+     * @param <X> input type
+     * @param <Y> output type
+     */
+    public static <X, Y> void forkJoinStreaming(
+        Iterator<X> elements,
+        int maxParallelism,
+        Function<X, Y> function,
+        BiConsumer<X, Y> onResult
+    ) {
+        if (maxParallelism < 1) {
+            throw new IllegalArgumentException("Illegal max parallelism option: " + maxParallelism);
+        }
+
+        var contextStack = contextStackOrThrow();
+        var context = contextStack.context;
+        var forkJoinExecutionContext = context.forkJoinTaskContext();
+        var finished = new LinkedBlockingQueue<ForkTaskResult<X, Y>>();
+
+        int taskIndex = 0;
+        int running = 0;
+        @Nullable Throwable failure = null;
+        boolean interrupted = false;
+        try {
+            while (true) {
+                while (failure == null && running < maxParallelism) {
+                    // Errors are caught too, the running tasks must be waited for before anything is thrown.
+                    try {
+                        if (!elements.hasNext()) {
+                            break;
+                        }
+                        var element = elements.next();
+                        var contextCopy = context.copy(forkJoinExecutionContext.forTask(taskIndex++));
+                        forkExecutor.execute(() -> {
+                            ForkTaskResult<X, Y> result;
+                            try {
+                                kanalarzContextThreadLocal.set(
+                                    new ContextStack(contextCopy, contextStack.parents, contextStack.contextIds)
+                                );
+                                result = new ForkTaskResult<>(element, function.apply(element), null);
+                            } catch (Throwable e) {
+                                result = new ForkTaskResult<>(element, null, e);
+                            } finally {
+                                kanalarzContextThreadLocal.remove();
+                            }
+                            finished.add(result);
+                        });
+                        running++;
+                    } catch (Throwable e) {
+                        failure = e;
+                        break;
+                    }
+                }
+                if (running == 0) {
+                    break;
+                }
+
+                ForkTaskResult<X, Y> result;
+                try {
+                    result = finished.take();
+                } catch (InterruptedException e) {
+                    // Waited for uninterruptibly like forkJoin, tasks are interrupted on their own.
+                    interrupted = true;
+                    continue;
+                }
+                running--;
+
+                if (failure != null) {
+                    continue;
+                }
+                if (result.error() != null) {
+                    failure = new CompletionException(result.error());
+                    continue;
+                }
+                try {
+                    onResult.accept(result.element(), result.result());
+                } catch (Throwable e) {
+                    failure = e;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        switch (failure) {
+            case null -> { }
+            case RuntimeException e -> throw e;
+            case Error e -> throw e;
+            default -> throw new UndeclaredThrowableException(failure);
+        }
+    }
+
+    /**
+     * Same as {@link #forkJoinStreaming(Iterator, int, Function, BiConsumer)} for the elements of a stream.
+     * Must be called inside an active Kanalarz context.
+     * @param elements items to process, consumed lazily and closed after the last task finishes
+     * @param maxParallelism max number of concurrent tasks; must be >= 1
+     * @param function function to execute per element
+     * @param onResult called with every element and its result
+     * @param <X> input type
+     * @param <Y> output type
+     */
+    public static <X, Y> void forkJoinStreaming(
+        Stream<X> elements,
+        int maxParallelism,
+        Function<X, Y> function,
+        BiConsumer<X, Y> onResult
+    ) {
+        try (elements) {
+            forkJoinStreaming(elements.iterator(), maxParallelism, function, onResult);
+        }
+    }
+
+    /**
+     * Same as {@link #forkJoinStreaming(Iterator, int, Function, BiConsumer)} reducing the results with a collector
+     * as tasks finish, in the order they finish. The collector is only used by the calling thread.
+     * Must be called inside an active Kanalarz context.
+     * @param elements items to process, consumed lazily and closed after the last task finishes
+     * @param maxParallelism max number of concurrent tasks; must be >= 1
+     * @param function function to execute per element
+     * @param collector collector the results are accumulated with
+     * @param <X> input type
+     * @param <Y> output type
+     * @param <A> accumulation type of the collector
+     * @param <R> result type
+     * @return result of the collector
+     */
+    public static <X, Y, A, R> R forkJoinStreaming(
+        Stream<X> elements,
+        int maxParallelism,
+        Function<X, Y> function,
+        Collector<? super Y, A, R> collector
+    ) {
+        var container = collector.supplier().get();
+        var accumulator = collector.accumulator();
+        try (elements) {
+            forkJoinStreaming(
+                elements.iterator(),
+                maxParallelism,
+                function,
+                (X element, Y result) -> accumulator.accept(container, result)
+            );
+        }
+        return collector.finisher().apply(container);
+    }
+
     /**
      * Concurrently consume all elements while preserving Kanalarz context propagation.
      * Must be called inside an active Kanalarz context.
@@ -903,35 +1674,86 @@ public class Kanalarz {
     private static class AutoCloseableContext implements AutoCloseable {
 
         private final KanalarzContext context;
+        private final ContextLeaseKeeper.@Nullable HeldLease lease;
+        @Nullable private final ScheduledFuture<?> deadlineTimer;
+        @Nullable private final StepReplayer stepReplayer;
+        private final Map<UUID, KanalarzContext> ownContexts;
 
         AutoCloseableContext(
             Map<String, String> metadata,
             @Nullable UUID resumesContext,
             EnumSet<Option> options,
+            @Nullable Durability durability,
+            @Nullable Instant deadline,
             @Nullable StepReplayer stepReplayer,
-            @Nullable String restoredBasePath
+            @Nullable ExecutionPath restoredBasePath,
+            @Nullable ContextLeaseKeeper leaseKeeper,
+            ContextLeaseKeeper.@Nullable HeldLease acquiredLease,
+            Map<UUID, KanalarzContext> ownContexts
         ) {
+            this.ownContexts = ownContexts;
+            this.stepReplayer = stepReplayer;
             context = new KanalarzContext(
                 resumesContext,
                 options,
+                durability != null
+                    ? durability
+                    : contextStack()
+                        .map(stack -> stack.context.durability())
+                        .orElse(Durability.SYNC),
                 contextStack()
                     .map(stack -> stack.context.stepReplayer())
                     .orElse(stepReplayer),
                 restoredBasePath
             );
             context.putAllMetadata(metadata);
+            var parentDeadline = contextStack().flatMap(stack -> stack.context.deadline()).orElse(null);
+            if (deadline == null || parentDeadline != null && parentDeadline.isBefore(deadline)) {
+                deadline = parentDeadline;
+            }
+            context.setDeadline(deadline);
+            // Root contexts and contexts resumed by id hold a lease, other nested contexts run under the lease of
+            // their root. Nested contexts keep the fencing token of the root, their events belong to it too.
+            var isRoot = contextStackOrNull() == null;
+            if (acquiredLease != null) {
+                lease = acquiredLease;
+            } else if (leaseKeeper != null && (isRoot || resumesContext != null)) {
+                lease = leaseKeeper.acquire(context.id());
+            } else {
+                lease = null;
+            }
+            if (lease != null && isRoot) {
+                context.putMetadata(KanalarzLeases.FENCING_TOKEN_METADATA_KEY, Long.toString(lease.fencingToken()));
+            }
             kanalarzContextThreadLocal.set(new ContextStack(context, contextStackOrNull()));
             contexts.put(context.id(), context);
+            ownContexts.put(context.id(), context);
+            deadlineTimer = deadline != null ? ContextDeadlines.schedule(context, deadline) : null;
         }
 
         public KanalarzContext context() {
             return Objects.requireNonNull(context);
         }
 
+        /**
+         * @return replayer created for this context, not the one inherited from a parent
+         */
+        @Nullable
+        public StepReplayer stepReplayer() {
+            return stepReplayer;
+        }
+
         @Override
         public void close() {
+            if (deadlineTimer != null) {
+                deadlineTimer.cancel(false);
+            }
             kanalarzContextThreadLocal.set(contextStackOrThrow().parents());
             contexts.remove(context.id());
+            ownContexts.remove(context.id());
+            if (lease != null) {
+                lease.release();
+            }
         }
     }
 
@@ -985,4 +1807,30 @@ public class Kanalarz {
             EnumSet.of(SKIP_FAILED_ROLLBACKS, RETRY_FAILED_ROLLBACKS)
         );
     }
+
+    /**
+     * How step events are written to the {@link KanalarzPersistence} adapter.
+     * Reading the history for rollback or resume always waits for all pending events to be written first.
+     */
+    public enum Durability {
+        /**
+         * Every event is written on the step thread before the pipeline continues. This is the default.
+         */
+        SYNC,
+
+        /**
+         * Events are buffered and written in batches together with events of other running contexts using
+         * {@link KanalarzPersistence#stepEventsBatch(List)}. The step waits until the batch with its event is
+         * written, so events are as durable as with SYNC, but concurrent contexts share the writes.
+         */
+        GROUP_COMMIT,
+
+        /**
+         * Events are buffered and written in batches in the background, the step does not wait for them.
+         * Events not yet written are lost if the JVM dies. A failed write is logged and thrown from the next
+         * history read or finish of the contexts the event belongs to, for example when a rollback is about to
+         * start.
+         */
+        ASYNC,
+    }
 }
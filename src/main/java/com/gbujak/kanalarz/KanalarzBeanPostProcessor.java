@@ -63,8 +63,9 @@ class KanalarzBeanPostProcessor implements BeanPostProcessor {
             );
         }
 
+        Map<Method, StepInfoClasses.StepInfo> stepDispatch;
         try {
-            validateAndRegisterSteps(target, targetClass, stepsComponent);
+            stepDispatch = validateAndRegisterSteps(target, targetClass, stepsComponent);
         } catch (Exception e) {
             throw new RuntimeException(
                 "Failed to validate step in bean [%s] with identifier [%s]"
@@ -80,10 +81,8 @@ class KanalarzBeanPostProcessor implements BeanPostProcessor {
         proxyFactory.setTarget(target);
         proxyFactory.setProxyTargetClass(true);
         proxyFactory.addAdvice((MethodInterceptor) invocation -> {
-            var method = invocation.getMethod();
-            Step step = getMergedMethodAnnotation(method, targetClass, Step.class);
-            RollbackOnly rollbackOnly = getMergedMethodAnnotation(method, targetClass, RollbackOnly.class);
-            if (step == null && rollbackOnly == null) {
+            var stepInfo = stepDispatch.get(invocation.getMethod());
+            if (stepInfo == null) {
                 return invocation.proceed();
             } else {
                 var kanalarz = kanalarzAtomicRef.get();
@@ -91,9 +90,12 @@ class KanalarzBeanPostProcessor implements BeanPostProcessor {
                     kanalarz = kanalarzProvider.getObject();
                     kanalarzAtomicRef.compareAndSet(null, kanalarz);
                 }
-                return kanalarz.handleMethodInvocation(invocation, stepsComponent, step, rollbackOnly);
+                return kanalarz.handleMethodInvocation(invocation, stepInfo);
             }
         });
+        // The interceptor calls steps on the target directly, advice added to this proxy later would be skipped.
+        // Frozen, other post processors wrap the proxy in their own instead.
+        proxyFactory.setFrozen(true);
 
         var classLoader = targetClass.getClassLoader();
         if (classLoader == null) {
@@ -103,12 +105,14 @@ class KanalarzBeanPostProcessor implements BeanPostProcessor {
         return proxyFactory.getProxy(classLoader);
     }
 
-    private void validateAndRegisterSteps(
+    // Returns the method -> step table used by the interceptor, so calls don't need annotation lookups.
+    private Map<Method, StepInfoClasses.StepInfo> validateAndRegisterSteps(
         Object target,
         Class<?> targetClass,
         StepsHolder stepsHolder
     ) {
 
+        Map<Method, StepInfoClasses.StepInfo> stepDispatch = new HashMap<>();
         List<Method> methods = new ArrayList<>();
         ReflectionUtils.doWithMethods(targetClass, methods::add);
 
@@ -149,9 +153,10 @@ class KanalarzBeanPostProcessor implements BeanPostProcessor {
             }
 
             if (step != null) {
-                stepsRegistryProvider
+                var stepInfo = stepsRegistryProvider
                     .getObject()
                     .registerRollforwardStep(target, method, stepsHolder, step, returnIsSecret);
+                putStepDispatch(stepDispatch, method, targetClass, stepInfo);
             }
 
             if (rollback != null) {
@@ -161,9 +166,30 @@ class KanalarzBeanPostProcessor implements BeanPostProcessor {
             }
 
             if (rollbackOnly != null) {
-                stepsRegistryProvider
+                var markerInfo = stepsRegistryProvider
                     .getObject()
                     .registerRollbackOnlyStep(target, method, stepsHolder, rollbackOnly, returnIsSecret);
+                putStepDispatch(stepDispatch, method, targetClass, markerInfo);
+            }
+        }
+
+        return Map.copyOf(stepDispatch);
+    }
+
+    private static void putStepDispatch(
+        Map<Method, StepInfoClasses.StepInfo> stepDispatch,
+        Method method,
+        Class<?> targetClass,
+        StepInfoClasses.StepInfo stepInfo
+    ) {
+        stepDispatch.put(method, stepInfo);
+
+        // The proxy reports the method of the target class, but keep the interface declarations as well so a
+        // call is never silently let through without being handled as a step.
+        for (var iface : ClassUtils.getAllInterfacesForClassAsSet(targetClass)) {
+            var interfaceMethod = ReflectionUtils.findMethod(iface, method.getName(), method.getParameterTypes());
+            if (interfaceMethod != null) {
+                stepDispatch.putIfAbsent(interfaceMethod, stepInfo);
             }
         }
     }
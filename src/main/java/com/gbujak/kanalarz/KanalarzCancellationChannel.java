@@ -0,0 +1,71 @@
+package com.gbujak.kanalarz;
+
+import org.jspecify.annotations.NullMarked;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Interface to implement to cancel contexts running on other nodes. Optional, register a bean of this type to
+ * enable it.
+ * <p>
+ * {@link Kanalarz#requestCancel(UUID, boolean)} publishes a request through the channel when the context isn't
+ * running in this JVM. Every node polls the channel every {@link #pollInterval()} for requests targeting the
+ * contexts it runs and cancels them locally, so steps only check the local context state. Back it with a table
+ * in the same database as the persistence, or with a message broker.
+ */
+@NullMarked
+public interface KanalarzCancellationChannel {
+
+    /**
+     * Request to cancel a context.
+     * @param contextId context to cancel
+     * @param forceDeferRollback whether the rollback is deferred, like
+     *                           {@link Kanalarz#cancelContextForceDeferRollback(UUID)}
+     * @param requestedAt when the cancellation was requested, runs of the context started later ignore it
+     */
+    record CancelRequest(UUID contextId, boolean forceDeferRollback, Instant requestedAt) {
+
+        /**
+         * Validate the request.
+         * @param contextId context to cancel
+         * @param forceDeferRollback whether the rollback is deferred
+         * @param requestedAt when the cancellation was requested
+         */
+        public CancelRequest {
+            Objects.requireNonNull(contextId);
+            Objects.requireNonNull(requestedAt);
+        }
+    }
+
+    /**
+     * Publish a cancel request to all nodes.
+     * @param request cancel request
+     */
+    void publish(CancelRequest request);
+
+    /**
+     * Get the requests published for any of the given contexts and not acknowledged yet.
+     * @param contextIds ids of the contexts running on the polling node
+     * @return cancel requests
+     */
+    List<CancelRequest> poll(Set<UUID> contextIds);
+
+    /**
+     * Called after a request was applied or found to predate the context run, the channel can drop it.
+     * @param request request returned by {@link #poll(Set)}
+     */
+    void acknowledge(CancelRequest request);
+
+    /**
+     * How often the channel is polled, the upper bound of the latency of a cancellation on another node.
+     * @return poll interval
+     */
+    default Duration pollInterval() {
+        return Duration.ofSeconds(1);
+    }
+}
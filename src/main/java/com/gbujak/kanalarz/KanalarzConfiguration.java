@@ -18,13 +18,68 @@ public class KanalarzConfiguration {
         return new KanalarzStepsRegistry();
     }
 
+    @Bean
+    KanalarzPersistencePipeline kanalarzPersistencePipeline(
+        KanalarzPersistence persistence,
+        ObjectProvider<KanalarzPersistencePipelineSettings> settings
+    ) {
+        return new KanalarzPersistencePipeline(
+            new KanalarzPersistenceExceptionWrapper(persistence),
+            settings.getIfAvailable(KanalarzPersistencePipelineSettings::defaults)
+        );
+    }
+
     @Bean
     Kanalarz kanalarz(
         KanalarzStepsRegistry stepsRegistry,
         KanalarzSerialization serialization,
-        KanalarzPersistence persistence
+        KanalarzPersistencePipeline persistencePipeline,
+        ObjectProvider<KanalarzLeases> leases,
+        ObjectProvider<KanalarzCancellationChannel> cancellationChannel
+    ) {
+        return new Kanalarz(
+            stepsRegistry,
+            serialization,
+            persistencePipeline,
+            leases.getIfAvailable(),
+            cancellationChannel.getIfAvailable()
+        );
+    }
+
+    @Bean
+    KanalarzRecovery kanalarzRecovery(
+        Kanalarz kanalarz,
+        KanalarzPersistencePipeline persistencePipeline,
+        ObjectProvider<KanalarzRecoverySettings> settings
+    ) {
+        return new KanalarzRecovery(
+            kanalarz,
+            persistencePipeline,
+            settings.getIfAvailable(KanalarzRecoverySettings::defaults)
+        );
+    }
+
+    @Bean
+    KanalarzWorkers kanalarzWorkers(
+        Kanalarz kanalarz,
+        KanalarzSerialization serialization,
+        ObjectProvider<KanalarzWorkQueue> queue,
+        ObjectProvider<KanalarzWorkerSettings> settings
+    ) {
+        return new KanalarzWorkers(
+            kanalarz,
+            queue.getIfAvailable(),
+            new KanalarzSerializationExceptionWrapper(serialization),
+            settings.getIfAvailable(KanalarzWorkerSettings::defaults)
+        );
+    }
+
+    @Bean
+    KanalarzRollbacks kanalarzRollbacks(
+        Kanalarz kanalarz,
+        ObjectProvider<KanalarzRollbackSettings> settings
     ) {
-        return new Kanalarz(stepsRegistry, serialization, persistence);
+        return new KanalarzRollbacks(kanalarz, settings.getIfAvailable(KanalarzRollbackSettings::defaults));
     }
 
     @Bean
@@ -3,8 +3,10 @@ package com.gbujak.kanalarz;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 
+import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 
@@ -16,26 +18,49 @@ public class KanalarzContext {
 
     private final UUID id;
     private final EnumSet<Kanalarz.Option> options;
-    private final Map<String, String> metadata;
+    private final Kanalarz.Durability durability;
+    private final Metadata metadata;
     @Nullable private StepReplayer stepReplayer;
+    @Nullable private final ExecutionJournal journal;
     @Nullable private StepStack stepStack = null;
     private final AtomicReference<State> state;
     private final ExecutionContext executionContext;
+    private final Instant startedAt;
+    private final StepThreads stepThreads;
+    @Nullable private Instant deadline;
+    @Nullable private RollbackThrottle rollbackThrottle;
 
     KanalarzContext(
         @Nullable UUID resumesId,
         EnumSet<Kanalarz.Option> options,
         @Nullable StepReplayer stepReplayer,
-        @Nullable String restoredBasePath
+        @Nullable ExecutionPath restoredBasePath
+    ) {
+        this(resumesId, options, Kanalarz.Durability.SYNC, stepReplayer, restoredBasePath);
+    }
+
+    KanalarzContext(
+        @Nullable UUID resumesId,
+        EnumSet<Kanalarz.Option> options,
+        Kanalarz.Durability durability,
+        @Nullable StepReplayer stepReplayer,
+        @Nullable ExecutionPath restoredBasePath
     ) {
         this.id = resumesId != null
             ? resumesId
             : Kanalarz.timeOrderedEpochPlus1();
         
         this.options = options;
+        this.durability = durability;
         this.stepReplayer = stepReplayer;
-        this.metadata = new ConcurrentHashMap<>();
+        // A fresh context has no history before this run, its immediate rollback can use the journal.
+        this.journal = resumesId == null && !options.contains(Kanalarz.Option.DEFER_ROLLBACK)
+            ? new ExecutionJournal()
+            : null;
+        this.metadata = new Metadata();
         this.state = new AtomicReference<>(State.RUNNING);
+        this.startedAt = Instant.now();
+        this.stepThreads = new StepThreads();
 
         this.executionContext =
             restoredBasePath != null
@@ -48,11 +73,17 @@ public class KanalarzContext {
     private KanalarzContext(KanalarzContext other, ExecutionContext executionContext) {
         this.id = other.id;
         this.options = other.options;
+        this.durability = other.durability;
         this.stepReplayer = other.stepReplayer;
+        this.journal = other.journal;
         this.stepStack = other.stepStack;
         this.metadata = other.metadata;
         this.state = other.state;
         this.executionContext = executionContext;
+        this.startedAt = other.startedAt;
+        this.stepThreads = other.stepThreads;
+        this.deadline = other.deadline;
+        this.rollbackThrottle = other.rollbackThrottle;
     }
 
     KanalarzContext copy(ExecutionContext executionContext) {
@@ -76,6 +107,72 @@ public class KanalarzContext {
         return state.compareAndSet(expectedState, newState);
     }
 
+    Instant startedAt() {
+        return startedAt;
+    }
+
+    /**
+     * Get the deadline of the context. A nested context inherits the deadline of its parent if it's sooner than
+     * its own.
+     * @return deadline, empty if the context has none
+     */
+    public Optional<Instant> deadline() {
+        return Optional.ofNullable(deadline);
+    }
+
+    void setDeadline(@Nullable Instant deadline) {
+        this.deadline = deadline;
+    }
+
+    @Nullable
+    RollbackThrottle rollbackThrottle() {
+        return rollbackThrottle;
+    }
+
+    void setRollbackThrottle(@Nullable RollbackThrottle rollbackThrottle) {
+        this.rollbackThrottle = rollbackThrottle;
+    }
+
+    /**
+     * Cancel the context because its deadline passed and interrupt the threads executing its steps.
+     */
+    void deadlineExceeded() {
+        if (moveState(State.RUNNING, State.CANCELLED)) {
+            stepThreads.interruptAll();
+        }
+    }
+
+    void stepThreadStarted() {
+        stepThreads.started(Thread.currentThread());
+    }
+
+    /**
+     * @return whether the deadline interrupted the thread while it ran the step
+     */
+    boolean stepThreadFinished() {
+        return stepThreads.finished(Thread.currentThread());
+    }
+
+    /**
+     * Clear the deadline interrupt of the current thread and keep the deadline from interrupting it until
+     * {@link #resumeDeadlineInterrupt()}.
+     */
+    void holdDeadlineInterrupt() {
+        if (deadline != null) {
+            stepThreads.hold(Thread.currentThread());
+        }
+    }
+
+    /**
+     * Interrupt the current thread again if the deadline passed while its interrupt was held and it still runs a
+     * step.
+     */
+    void resumeDeadlineInterrupt() {
+        if (deadline != null) {
+            stepThreads.resume(Thread.currentThread());
+        }
+    }
+
     /**
      * Get context id.
      * @return context id
@@ -85,12 +182,12 @@ public class KanalarzContext {
     }
 
     /**
-     * Get a read-only metadata map view.
-     * @return An *unmodifiable* map with the entire context metadata. For performance reasons, the map is not cloned
-     * and can change over time. If that is not desirable, you should clone the map immediately before storing.
+     * Get the context metadata.
+     * @return An immutable snapshot of the entire context metadata. The snapshot is cached and only rebuilt after
+     * the metadata changes, so it's cheap to call repeatedly and safe to store.
      */
     public Map<String, String> fullMetadata() {
-        return Collections.unmodifiableMap(this.metadata);
+        return this.metadata.snapshot();
     }
 
     /**
@@ -159,6 +256,11 @@ public class KanalarzContext {
         stepReplayer = null;
     }
 
+    @Nullable
+    ExecutionJournal journal() {
+        return journal;
+    }
+
     /**
      * Check whether an execution option is enabled in this context.
      * @param option option to check
@@ -168,6 +270,14 @@ public class KanalarzContext {
         return options.contains(option);
     }
 
+    /**
+     * Get how step events of this context are written to the persistence adapter.
+     * @return durability of step events
+     */
+    public Kanalarz.Durability durability() {
+        return durability;
+    }
+
     <T extends @Nullable Object> T withNewStep(Function<StepStack, T> block) {
         stepStack = new StepStack(
             Kanalarz.timeOrderedEpochPlus1(),
@@ -195,6 +305,68 @@ public class KanalarzContext {
         }
     }
 
+    /**
+     * Threads executing steps of the context and its fork tasks, with the number of steps each one is nested in. A
+     * thread stays interruptible until its outermost step finishes. Only interrupts set by the deadline are cleared
+     * then, so the thread can go on to roll back. While a thread writes to the persistence or rolls back its
+     * interrupt is held, the deadline interrupts it again afterwards if it still runs a step.
+     */
+    private static final class StepThreads {
+
+        private final Map<Thread, Integer> running = new HashMap<>();
+        private final Map<Thread, Integer> held = new HashMap<>();
+        private final Set<Thread> interrupted = new HashSet<>();
+        private boolean interrupting = false;
+
+        synchronized void started(Thread thread) {
+            if (running.merge(thread, 1, Integer::sum) == 1 && interrupting && !held.containsKey(thread)) {
+                interrupted.add(thread);
+                thread.interrupt();
+            }
+        }
+
+        // Returns whether the thread was interrupted by the deadline.
+        synchronized boolean finished(Thread thread) {
+            var wasInterrupted = interrupted.contains(thread);
+            if (running.merge(thread, -1, Integer::sum) > 0) {
+                return wasInterrupted;
+            }
+            running.remove(thread);
+            if (interrupted.remove(thread)) {
+                Thread.interrupted();
+            }
+            return wasInterrupted;
+        }
+
+        synchronized void hold(Thread thread) {
+            held.merge(thread, 1, Integer::sum);
+            if (interrupted.remove(thread)) {
+                Thread.interrupted();
+            }
+        }
+
+        synchronized void resume(Thread thread) {
+            if (held.merge(thread, -1, Integer::sum) > 0) {
+                return;
+            }
+            held.remove(thread);
+            if (interrupting && running.containsKey(thread)) {
+                interrupted.add(thread);
+                thread.interrupt();
+            }
+        }
+
+        synchronized void interruptAll() {
+            interrupting = true;
+            for (var thread : running.keySet()) {
+                if (!held.containsKey(thread)) {
+                    interrupted.add(thread);
+                    thread.interrupt();
+                }
+            }
+        }
+    }
+
     /**
      * Runtime state of a context.
      */
@@ -219,7 +391,59 @@ public class KanalarzContext {
         ExecutionContext executionContext
     ) { }
 
-    String nextStepExecutionPath() {
+    /**
+     * Metadata shared by a context and its fork copies. Every change bumps the version, the immutable snapshot
+     * handed to persistence events is rebuilt lazily when its version is behind.
+     */
+    private static class Metadata {
+
+        private record Snapshot(long version, Map<String, String> values) {}
+
+        private final ConcurrentHashMap<String, String> values = new ConcurrentHashMap<>();
+        private final AtomicLong version = new AtomicLong();
+        private volatile Snapshot snapshot = new Snapshot(0, Map.of());
+
+        Map<String, String> snapshot() {
+            var current = snapshot;
+            var currentVersion = version.get();
+            if (current.version() == currentVersion) {
+                return current.values();
+            }
+            // The version is read before copying, so a concurrent change can only make the snapshot look stale.
+            current = new Snapshot(currentVersion, Map.copyOf(values));
+            snapshot = current;
+            return current.values();
+        }
+
+        @Nullable
+        String get(String key) {
+            return values.get(key);
+        }
+
+        @Nullable
+        String put(String key, String value) {
+            var previous = values.put(key, value);
+            version.incrementAndGet();
+            return previous;
+        }
+
+        void putAll(Map<String, String> metadata) {
+            if (metadata.isEmpty()) {
+                return;
+            }
+            values.putAll(metadata);
+            version.incrementAndGet();
+        }
+
+        @Nullable
+        String remove(String key) {
+            var removed = values.remove(key);
+            version.incrementAndGet();
+            return removed;
+        }
+    }
+
+    ExecutionPath nextStepExecutionPath() {
         return Optional.ofNullable(stepStack())
             .map(StepStack::parents)
             .map(StepStack::executionContext)
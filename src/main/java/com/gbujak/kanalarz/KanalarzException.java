@@ -4,6 +4,7 @@ import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 
 import java.util.Optional;
+import java.util.UUID;
 
 /**
  * Base runtime exception type for Kanalarz.
@@ -21,7 +22,8 @@ public sealed abstract class KanalarzException extends RuntimeException permits
     KanalarzException.KanalarzPersistenceException,
     KanalarzException.KanalarzNewStepBeforeReplayEndedException,
     KanalarzException.KanalarzNotAllStepsReplayedException,
-    KanalarzException.KanalarzNoContextException
+    KanalarzException.KanalarzNoContextException,
+    KanalarzException.KanalarzContextLeaseException
 {
 
     private KanalarzException(@Nullable String message, @Nullable Throwable cause) {
@@ -191,4 +193,18 @@ public sealed abstract class KanalarzException extends RuntimeException permits
             super("Trying to so something that requires a context outside of any active context", null);
         }
     }
+
+    /**
+     * The lease on the context couldn't be acquired, another node holds it or the leases adapter failed.
+     */
+    public final static class KanalarzContextLeaseException extends KanalarzException {
+        KanalarzContextLeaseException(UUID contextId, @Nullable RuntimeException e) {
+            super(
+                e == null
+                    ? "Context [%s] is leased by another node".formatted(contextId)
+                    : "Provided leases bean threw an exception: " + e.getMessage(),
+                e
+            );
+        }
+    }
 }
@@ -0,0 +1,75 @@
+package com.gbujak.kanalarz;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Interface to implement leases on context ids, so only one node at a time runs, resumes or rolls back a context.
+ * Optional, register a bean of this type to enable it.
+ * <p>
+ * A lease is acquired for every root context before it starts, and released after it finishes. A context resumed by
+ * id, nested or not, acquires it before its history is read. Other nested contexts run under the lease of their
+ * root. While the context runs the lease is renewed every third of its
+ * {@link Lease#ttl()}. If a renewal fails, the context is cancelled with
+ * {@link Kanalarz#cancelContextForceDeferRollback(UUID)}, the node that took over the lease is responsible for it.
+ * <p>
+ * The fencing token of the lease is put into the context metadata under {@link #FENCING_TOKEN_METADATA_KEY}, so it's
+ * part of every persisted step and lifecycle event of the context. A persistence that stores the highest token seen
+ * for a context can reject events from a node that lost its lease but didn't notice yet.
+ */
+@NullMarked
+public interface KanalarzLeases {
+
+    /**
+     * Metadata key of the fencing token of the lease the context runs under.
+     */
+    String FENCING_TOKEN_METADATA_KEY = "kanalarz-fencing-token";
+
+    /**
+     * Lease on a context id.
+     * @param contextId leased context id
+     * @param fencingToken token greater than the token of every earlier lease on the context
+     * @param ttl how long the lease is valid after it's acquired or renewed
+     */
+    record Lease(UUID contextId, long fencingToken, Duration ttl) {
+
+        /**
+         * Validate the lease.
+         * @param contextId leased context id
+         * @param fencingToken fencing token
+         * @param ttl lease validity
+         */
+        public Lease {
+            Objects.requireNonNull(contextId);
+            Objects.requireNonNull(ttl);
+            if (ttl.isNegative() || ttl.isZero()) {
+                throw new IllegalArgumentException("Illegal lease ttl: " + ttl);
+            }
+        }
+    }
+
+    /**
+     * Acquire the lease on a context id if nobody holds it or the lease expired.
+     * @param contextId context id
+     * @return acquired lease, or null if another holder has a valid lease
+     */
+    @Nullable
+    Lease tryAcquire(UUID contextId);
+
+    /**
+     * Extend the lease by its ttl.
+     * @param lease lease returned by {@link #tryAcquire(UUID)}
+     * @return false if the lease expired or was taken over
+     */
+    boolean renew(Lease lease);
+
+    /**
+     * Release the lease, does nothing if it was taken over.
+     * @param lease lease returned by {@link #tryAcquire(UUID)}
+     */
+    void release(Lease lease);
+}
@@ -3,6 +3,8 @@ package com.gbujak.kanalarz;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -21,10 +23,32 @@ import java.util.UUID;
  * <p>
  * A practical implementation pattern is shown in {@code TestPersistence}:
  * write start/completed events and reconstruct {@link StepExecutedInfo} by {@code stepId}.
+ * <p>
+ * Contexts running with {@link Kanalarz.Durability#GROUP_COMMIT} or {@link Kanalarz.Durability#ASYNC} have their
+ * events written in batches through {@link #stepEventsBatch(List)}, which adapters can override to write a batch
+ * with a single round-trip.
  */
 @NullMarked
 public interface KanalarzPersistence {
 
+    /**
+     * Step lifecycle event, either a {@link StepStartedEvent} or a {@link StepCompletedEvent}.
+     */
+    sealed interface StepEvent permits StepStartedEvent, StepCompletedEvent {
+
+        /**
+         * Get active context stack (root to leaf).
+         * @return active context stack
+         */
+        List<UUID> contexts();
+
+        /**
+         * Get unique step execution id.
+         * @return step execution id
+         */
+        UUID stepId();
+    }
+
     /**
      * Event emitted before a step method (or rollback method) executes.
      * @param contexts active context stack (root to leaf)
@@ -38,6 +62,9 @@ public interface KanalarzPersistence {
      * @param isFallible whether the executed step is fallible
      * @param isRollbackMarker whether this execution is rollback-only marker step
      * @param executionPath deterministic execution path for replay matching
+     * @param parametersFingerprint optional fingerprint of the call parameters produced by the serialization adapter
+     * @param batchedRollbackFor ids of the other rollforward steps rolled back by the same call of a batched rollback,
+     *                           empty unless this is a batched rollback
      */
     record StepStartedEvent(
         List<UUID> contexts,
@@ -50,8 +77,44 @@ public interface KanalarzPersistence {
         String serializedParameters,
         boolean isFallible,
         boolean isRollbackMarker,
-        String executionPath
-    ) {}
+        String executionPath,
+        @Nullable String parametersFingerprint,
+        List<UUID> batchedRollbackFor
+    ) implements StepEvent {
+
+        /**
+         * Event without a parameters fingerprint of a step that isn't a batched rollback.
+         * @param contexts active context stack (root to leaf)
+         * @param stepId unique step execution id
+         * @param parentStepId optional parent step id for nested step calls
+         * @param stepIsRollbackFor optional rollforward step id when this execution is a rollback
+         * @param metadata context metadata
+         * @param stepIdentifier globally unique step identifier
+         * @param description optional parsed step description
+         * @param serializedParameters serialized step call parameters
+         * @param isFallible whether the executed step is fallible
+         * @param isRollbackMarker whether this execution is rollback-only marker step
+         * @param executionPath deterministic execution path for replay matching
+         */
+        public StepStartedEvent(
+            List<UUID> contexts,
+            UUID stepId,
+            Optional<UUID> parentStepId,
+            Optional<UUID> stepIsRollbackFor,
+            Map<String, String> metadata,
+            String stepIdentifier,
+            @Nullable ParameterizedStepDescription description,
+            String serializedParameters,
+            boolean isFallible,
+            boolean isRollbackMarker,
+            String executionPath
+        ) {
+            this(
+                contexts, stepId, parentStepId, stepIsRollbackFor, metadata, stepIdentifier, description,
+                serializedParameters, isFallible, isRollbackMarker, executionPath, null, List.of()
+            );
+        }
+    }
 
     /**
      * Persist the event emitted before step execution.
@@ -74,6 +137,11 @@ public interface KanalarzPersistence {
      * @param failed whether execution failed
      * @param isRollbackMarker whether this execution is rollback-only marker step
      * @param executionPath deterministic execution path for replay matching
+     * @param parametersFingerprint optional fingerprint of the call parameters, should be persisted and returned in
+     *                              {@link StepExecutedInfo#parametersFingerprint()}
+     * @param batchedRollbackFor ids of the other rollforward steps rolled back by the same call of a batched rollback,
+     *                           empty unless this is a batched rollback. Should be persisted and returned in
+     *                           {@link StepExecutedInfo#batchedRollbackFor()}
      */
     record StepCompletedEvent(
         List<UUID> contexts,
@@ -86,8 +154,44 @@ public interface KanalarzPersistence {
         String serializedExecutionResult,
         boolean failed,
         boolean isRollbackMarker,
-        String executionPath
-    ) {}
+        String executionPath,
+        @Nullable String parametersFingerprint,
+        List<UUID> batchedRollbackFor
+    ) implements StepEvent {
+
+        /**
+         * Event without a parameters fingerprint of a step that isn't a batched rollback.
+         * @param contexts active context stack (root to leaf)
+         * @param stepId unique step execution id
+         * @param parentStepId optional parent step id for nested step calls
+         * @param stepIsRollbackFor optional rollforward step id when this execution is a rollback
+         * @param metadata context metadata snapshot
+         * @param stepIdentifier globally unique step identifier
+         * @param description optional parsed step description
+         * @param serializedExecutionResult serialized step result payload
+         * @param failed whether execution failed
+         * @param isRollbackMarker whether this execution is rollback-only marker step
+         * @param executionPath deterministic execution path for replay matching
+         */
+        public StepCompletedEvent(
+            List<UUID> contexts,
+            UUID stepId,
+            Optional<UUID> parentStepId,
+            Optional<UUID> stepIsRollbackFor,
+            Map<String, String> metadata,
+            String stepIdentifier,
+            @Nullable ParameterizedStepDescription description,
+            String serializedExecutionResult,
+            boolean failed,
+            boolean isRollbackMarker,
+            String executionPath
+        ) {
+            this(
+                contexts, stepId, parentStepId, stepIsRollbackFor, metadata, stepIdentifier, description,
+                serializedExecutionResult, failed, isRollbackMarker, executionPath, null, List.of()
+            );
+        }
+    }
 
     /**
      * Persist the event emitted after step execution.
@@ -97,6 +201,120 @@ public interface KanalarzPersistence {
      */
     void stepCompleted(StepCompletedEvent stepCompletedEvent);
 
+    /**
+     * Persist a batch of events, possibly coming from many contexts, in the given order.
+     * <p>
+     * The default implementation calls {@link #stepStarted(StepStartedEvent)} and
+     * {@link #stepCompleted(StepCompletedEvent)} for each event. Override it to write the whole batch at once,
+     * for example with a multi-row insert. If this throws, every event in the batch is considered not written.
+     * @param events events in the order they were emitted
+     */
+    default void stepEventsBatch(List<StepEvent> events) {
+        for (var event : events) {
+            switch (event) {
+                case StepStartedEvent started -> stepStarted(started);
+                case StepCompletedEvent completed -> stepCompleted(completed);
+            }
+        }
+    }
+
+    /**
+     * How a context body, or a {@code rollbackNow()} run, ended.
+     */
+    enum ContextOutcome {
+        /** The body returned, or the rollback run finished. */
+        SUCCEEDED,
+        /** The body threw, or the rollback run failed. */
+        FAILED,
+        /** The context was cancelled. */
+        CANCELLED
+    }
+
+    /**
+     * State of the rollback of a finished context.
+     */
+    enum ContextRollbackState {
+        /** The context succeeded, nothing to roll back. */
+        NOT_NEEDED,
+        /** All steps were rolled back. */
+        ROLLED_BACK,
+        /** A rollback step failed, the rollback can be retried with {@code rollbackNow()}. */
+        ROLLBACK_FAILED,
+        /** The context failed but wasn't rolled back (deferred rollback), roll it back with {@code rollbackNow()}. */
+        PENDING
+    }
+
+    /**
+     * Event emitted when a context starts, before its body runs.
+     * @param contextId context id
+     * @param parentContextId id of the context this one is nested in, or null for a root context
+     * @param resumed whether the context resumes a context id given by the caller
+     * @param rollbackOnly whether this is a {@code rollbackNow()} run of an earlier context
+     * @param metadata context metadata
+     * @param startedAt when the context started
+     */
+    record ContextStartedEvent(
+        UUID contextId,
+        @Nullable UUID parentContextId,
+        boolean resumed,
+        boolean rollbackOnly,
+        Map<String, String> metadata,
+        Instant startedAt
+    ) { }
+
+    /**
+     * Event emitted when a context finishes, after its rollback if it ran one. It's written after the step events of
+     * the context, including events of contexts running with {@link Kanalarz.Durability#ASYNC}.
+     * @param contextId context id
+     * @param parentContextId id of the context this one is nested in, or null for a root context
+     * @param rollbackOnly whether this was a {@code rollbackNow()} run of an earlier context
+     * @param outcome how the context ended
+     * @param rollbackState state of the rollback after the context ended
+     * @param metadata context metadata when the context finished
+     * @param startedAt when the context started
+     * @param duration how long the context ran, including its rollback
+     */
+    record ContextFinishedEvent(
+        UUID contextId,
+        @Nullable UUID parentContextId,
+        boolean rollbackOnly,
+        ContextOutcome outcome,
+        ContextRollbackState rollbackState,
+        Map<String, String> metadata,
+        Instant startedAt,
+        Duration duration
+    ) { }
+
+    /**
+     * Persist the event emitted when a context starts.
+     * <p>
+     * Together with {@link #contextFinished(ContextFinishedEvent)} it lets adapters keep a row per context with its
+     * current status, so dashboards and recovery jobs don't have to scan the step log. A context with a started
+     * event and no finished event is running, or its JVM died. The default implementation ignores it.
+     * @param contextStartedEvent event payload
+     */
+    default void contextStarted(ContextStartedEvent contextStartedEvent) { }
+
+    /**
+     * Persist the event emitted when a context finishes. The default implementation ignores it.
+     * @param contextFinishedEvent event payload
+     */
+    default void contextFinished(ContextFinishedEvent contextFinishedEvent) { }
+
+    /**
+     * Find root contexts that started and never finished, because their JVM died or they're still running.
+     * <p>
+     * A context is unfinished when its latest lifecycle event is a {@link ContextStartedEvent} with no
+     * {@link ContextStartedEvent#parentContextId()}. Nested contexts are recovered with their root. Used by
+     * {@link KanalarzRecovery}, the default implementation doesn't track lifecycle events and returns nothing.
+     * @param startedBefore only return contexts started before this instant
+     * @param limit max number of contexts to return
+     * @return latest started events of unfinished root contexts, oldest first
+     */
+    default List<ContextStartedEvent> getUnfinishedContexts(Instant startedBefore, int limit) {
+        return List.of();
+    }
+
     /**
      * Persisted representation of a completed step or rollback execution.
      * @param contexts context stack associated with execution
@@ -107,6 +325,10 @@ public interface KanalarzPersistence {
      * @param wasRollbackFor optional rollforward step id if this is a rollback execution
      * @param failed whether execution failed
      * @param executionPath deterministic execution path used by replay
+     * @param parametersFingerprint optional parameters fingerprint from the step events, lets replay match
+     *                              parameters without deserializing them
+     * @param batchedRollbackFor ids of the other rollforward steps rolled back together with {@code wasRollbackFor}
+     *                           by a batched rollback, empty otherwise
      */
     record StepExecutedInfo(
         List<UUID> contexts,
@@ -116,8 +338,39 @@ public interface KanalarzPersistence {
         Optional<UUID> parentStepId,
         Optional<UUID> wasRollbackFor,
         boolean failed,
-        String executionPath
-    ) {}
+        String executionPath,
+        @Nullable String parametersFingerprint,
+        List<UUID> batchedRollbackFor
+    ) {
+
+        /**
+         * Executed step without a parameters fingerprint that isn't a batched rollback, replay always compares its
+         * serialized parameters.
+         * @param contexts context stack associated with execution
+         * @param stepId unique step execution id
+         * @param stepIdentifier globally unique step identifier
+         * @param serializedExecutionResult serialized step result payload
+         * @param parentStepId optional parent step id
+         * @param wasRollbackFor optional rollforward step id if this is a rollback execution
+         * @param failed whether execution failed
+         * @param executionPath deterministic execution path used by replay
+         */
+        public StepExecutedInfo(
+            List<UUID> contexts,
+            UUID stepId,
+            String stepIdentifier,
+            String serializedExecutionResult,
+            Optional<UUID> parentStepId,
+            Optional<UUID> wasRollbackFor,
+            boolean failed,
+            String executionPath
+        ) {
+            this(
+                contexts, stepId, stepIdentifier, serializedExecutionResult, parentStepId, wasRollbackFor, failed,
+                executionPath, null, List.of()
+            );
+        }
+    }
 
     /**
      * Get a list of executed steps in the context with the given id, or within any nested contexts inside of that one.
@@ -138,4 +391,58 @@ public interface KanalarzPersistence {
      * @return ordered list of persisted step executions
      */
     List<StepExecutedInfo> getExecutedStepsInContextInOrderOfExecutionStarted(UUID contextId);
+
+    /**
+     * Direction of a history page read with {@link #getExecutedStepsPage(UUID, HistoryOrder, UUID, int)}.
+     */
+    enum HistoryOrder {
+        /** In order of execution start, like {@link #getExecutedStepsInContextInOrderOfExecutionStarted(UUID)}. */
+        OLDEST_FIRST,
+        /** In reverse order of execution start. */
+        NEWEST_FIRST
+    }
+
+    /**
+     * Page of a context history.
+     * @param steps steps of the page, in the requested order
+     * @param nextCursor cursor to pass for the next page, or null if this is the last page
+     */
+    record StepHistoryPage(List<StepExecutedInfo> steps, @Nullable UUID nextCursor) { }
+
+    /**
+     * Get a page of the history returned by {@link #getExecutedStepsInContextInOrderOfExecutionStarted(UUID)}.
+     * <p>
+     * Kanalarz reads the history in pages for rollback (newest first) and resume, so that contexts with long
+     * histories don't have to be loaded at once. The cursor is the {@link StepExecutedInfo#stepId()} of the last step
+     * of the previous page, and the page starts right after it in the requested order. Since step ids are UUIDv7,
+     * adapters can implement it as a keyset query on the step id, for example
+     * {@code WHERE step_id < :cursor ORDER BY step_id DESC LIMIT :limit}.
+     * <p>
+     * The default implementation reads the whole history and returns everything after the cursor as a single page,
+     * override it to keep long histories out of memory.
+     * @param contextId context id to query
+     * @param order order of the steps
+     * @param cursor {@link StepHistoryPage#nextCursor()} of the previous page, or null for the first page
+     * @param limit max number of steps the page should contain
+     * @return page of the history
+     */
+    default StepHistoryPage getExecutedStepsPage(
+        UUID contextId,
+        HistoryOrder order,
+        @Nullable UUID cursor,
+        int limit
+    ) {
+        var steps = getExecutedStepsInContextInOrderOfExecutionStarted(contextId);
+        if (order == HistoryOrder.NEWEST_FIRST) {
+            steps = steps.reversed();
+        }
+        if (cursor != null) {
+            int cursorIndex = 0;
+            while (cursorIndex < steps.size() && !steps.get(cursorIndex).stepId().equals(cursor)) {
+                cursorIndex++;
+            }
+            steps = steps.subList(Math.min(cursorIndex + 1, steps.size()), steps.size());
+        }
+        return new StepHistoryPage(steps, null);
+    }
 }
@@ -1,7 +1,9 @@
 package com.gbujak.kanalarz;
 
 import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
 
@@ -14,6 +16,23 @@ class KanalarzPersistenceExceptionWrapper implements KanalarzPersistence {
         this.persistence = persistence;
     }
 
+    /**
+     * @param persistence adapter, wrapped or not
+     * @return false if the adapter inherits the default {@link #getUnfinishedContexts(Instant, int)}, which never
+     * finds anything
+     */
+    static boolean tracksUnfinishedContexts(KanalarzPersistence persistence) {
+        var adapter = persistence instanceof KanalarzPersistenceExceptionWrapper wrapper
+            ? wrapper.persistence
+            : persistence;
+        try {
+            return adapter.getClass().getMethod("getUnfinishedContexts", Instant.class, int.class)
+                .getDeclaringClass() != KanalarzPersistence.class;
+        } catch (NoSuchMethodException e) {
+            throw new KanalarzException.KanalarzInternalError("Persistence adapter without getUnfinishedContexts", e);
+        }
+    }
+
     @Override
     public void stepStarted(StepStartedEvent stepStartedEvent) {
         try {
@@ -32,6 +51,42 @@ class KanalarzPersistenceExceptionWrapper implements KanalarzPersistence {
         }
     }
 
+    @Override
+    public void stepEventsBatch(List<StepEvent> events) {
+        try {
+            persistence.stepEventsBatch(events);
+        } catch (RuntimeException e) {
+            throw new KanalarzException.KanalarzPersistenceException(e);
+        }
+    }
+
+    @Override
+    public void contextStarted(ContextStartedEvent contextStartedEvent) {
+        try {
+            persistence.contextStarted(contextStartedEvent);
+        } catch (RuntimeException e) {
+            throw new KanalarzException.KanalarzPersistenceException(e);
+        }
+    }
+
+    @Override
+    public void contextFinished(ContextFinishedEvent contextFinishedEvent) {
+        try {
+            persistence.contextFinished(contextFinishedEvent);
+        } catch (RuntimeException e) {
+            throw new KanalarzException.KanalarzPersistenceException(e);
+        }
+    }
+
+    @Override
+    public List<ContextStartedEvent> getUnfinishedContexts(Instant startedBefore, int limit) {
+        try {
+            return persistence.getUnfinishedContexts(startedBefore, limit);
+        } catch (RuntimeException e) {
+            throw new KanalarzException.KanalarzPersistenceException(e);
+        }
+    }
+
     @Override
     public List<StepExecutedInfo> getExecutedStepsInContextInOrderOfExecutionStarted(UUID contextId) {
         try {
@@ -40,4 +95,18 @@ class KanalarzPersistenceExceptionWrapper implements KanalarzPersistence {
             throw new KanalarzException.KanalarzPersistenceException(e);
         }
     }
+
+    @Override
+    public StepHistoryPage getExecutedStepsPage(
+        UUID contextId,
+        HistoryOrder order,
+        @Nullable UUID cursor,
+        int limit
+    ) {
+        try {
+            return persistence.getExecutedStepsPage(contextId, order, cursor, limit);
+        } catch (RuntimeException e) {
+            throw new KanalarzException.KanalarzPersistenceException(e);
+        }
+    }
 }
@@ -0,0 +1,363 @@
+package com.gbujak.kanalarz;
+
+import com.gbujak.kanalarz.KanalarzPersistence.StepCompletedEvent;
+import com.gbujak.kanalarz.KanalarzPersistence.StepEvent;
+import com.gbujak.kanalarz.KanalarzPersistence.StepExecutedInfo;
+import com.gbujak.kanalarz.KanalarzPersistence.StepStartedEvent;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Sits between {@link Kanalarz} and the persistence adapter. Events of {@link Kanalarz.Durability#SYNC} contexts
+ * are written directly, events of other contexts go through a bounded buffer drained by a single writer thread
+ * that writes them in batches, in the order they were enqueued.
+ */
+@NullMarked
+class KanalarzPersistencePipeline implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(KanalarzPersistencePipeline.class);
+
+    private record PendingWrite(@Nullable StepEvent event, @Nullable CompletableFuture<Void> written) {}
+    private static final PendingWrite CLOSE = new PendingWrite(null, null);
+    static final int HISTORY_PAGE_SIZE = 1000;
+
+    private final KanalarzPersistence persistence;
+    private final KanalarzPersistencePipelineSettings settings;
+    private final BlockingQueue<PendingWrite> buffer;
+    private final AtomicLong pendingEvents = new AtomicLong();
+    // First failed asynchronous write by context id, every context of the failed event's stack is told.
+    private final Map<UUID, RuntimeException> asyncFailures = new ConcurrentHashMap<>();
+
+    // Guards closing against concurrent enqueues so nothing is left in the buffer after the writer stops.
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private boolean closed = false;
+    @Nullable private volatile Thread writer = null;
+
+    KanalarzPersistencePipeline(KanalarzPersistence persistence, KanalarzPersistencePipelineSettings settings) {
+        this.persistence = persistence;
+        this.settings = settings;
+        this.buffer = new ArrayBlockingQueue<>(settings.bufferCapacity());
+    }
+
+    void stepStarted(StepStartedEvent stepStartedEvent, Kanalarz.Durability durability) {
+        write(stepStartedEvent, durability);
+    }
+
+    void stepCompleted(StepCompletedEvent stepCompletedEvent, Kanalarz.Durability durability) {
+        write(stepCompletedEvent, durability);
+    }
+
+    void contextStarted(KanalarzPersistence.ContextStartedEvent contextStartedEvent) {
+        persistence.contextStarted(contextStartedEvent);
+    }
+
+    /**
+     * Waits until every step event enqueued before the call is written, so the finished event never precedes the
+     * steps of the context.
+     */
+    void contextFinished(KanalarzPersistence.ContextFinishedEvent contextFinishedEvent) {
+        awaitPendingWrites(contextFinishedEvent.contextId());
+        persistence.contextFinished(contextFinishedEvent);
+    }
+
+    boolean tracksUnfinishedContexts() {
+        return KanalarzPersistenceExceptionWrapper.tracksUnfinishedContexts(persistence);
+    }
+
+    List<KanalarzPersistence.ContextStartedEvent> unfinishedContexts(Instant startedBefore, int limit) {
+        return persistence.getUnfinishedContexts(startedBefore, limit);
+    }
+
+    /**
+     * Waits until every event enqueued before the call is written, then reads from the adapter.
+     * @throws KanalarzException.KanalarzPersistenceException if an asynchronous write of the context failed since the
+     * last read
+     */
+    List<StepExecutedInfo> getExecutedStepsInContextInOrderOfExecutionStarted(UUID contextId) {
+        awaitPendingWrites(contextId);
+        return persistence.getExecutedStepsInContextInOrderOfExecutionStarted(contextId);
+    }
+
+    /**
+     * Lazily reads the history of a context in pages of {@link #HISTORY_PAGE_SIZE}. Waits for pending writes before
+     * reading the first page.
+     */
+    Iterator<StepExecutedInfo> executedSteps(UUID contextId, KanalarzPersistence.HistoryOrder order) {
+        return new Iterator<>() {
+            private Iterator<StepExecutedInfo> page = Collections.emptyIterator();
+            private @Nullable UUID cursor = null;
+            private boolean lastPage = false;
+
+            @Override
+            public boolean hasNext() {
+                while (!page.hasNext() && !lastPage) {
+                    if (cursor == null) {
+                        awaitPendingWrites(contextId);
+                    }
+                    var next = persistence.getExecutedStepsPage(contextId, order, cursor, HISTORY_PAGE_SIZE);
+                    page = next.steps().iterator();
+                    cursor = next.nextCursor();
+                    lastPage = cursor == null;
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public StepExecutedInfo next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+        };
+    }
+
+    private void write(StepEvent event, Kanalarz.Durability durability) {
+        if (durability == Kanalarz.Durability.SYNC) {
+            writeDirectly(event);
+            return;
+        }
+
+        var written = durability == Kanalarz.Durability.GROUP_COMMIT ? new CompletableFuture<Void>() : null;
+        if (!enqueue(new PendingWrite(event, written))) {
+            // closed, nothing will drain the buffer anymore
+            writeDirectly(event);
+            return;
+        }
+
+        if (written != null) {
+            await(written);
+        }
+    }
+
+    private void writeDirectly(StepEvent event) {
+        switch (event) {
+            case StepStartedEvent started -> persistence.stepStarted(started);
+            case StepCompletedEvent completed -> persistence.stepCompleted(completed);
+        }
+    }
+
+    private void awaitPendingWrites(UUID contextId) {
+        if (pendingEvents.get() > 0) {
+            var flushed = new CompletableFuture<Void>();
+            if (enqueue(new PendingWrite(null, flushed))) {
+                await(flushed);
+            }
+        }
+
+        var failure = asyncFailures.remove(contextId);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private boolean enqueue(PendingWrite write) {
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            startWriterIfNeeded();
+            if (write.event() != null) {
+                pendingEvents.incrementAndGet();
+            }
+            putUninterruptibly(write);
+            return true;
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    private void putUninterruptibly(PendingWrite write) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    buffer.put(write);
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void await(CompletableFuture<Void> future) {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new KanalarzException.KanalarzInternalError("Persistence pipeline write failed", e.getCause());
+        }
+    }
+
+    private void startWriterIfNeeded() {
+        if (writer != null) {
+            return;
+        }
+        synchronized (this) {
+            if (writer == null) {
+                writer = Thread.ofPlatform()
+                    .name("kanalarz-persistence-pipeline")
+                    .daemon(true)
+                    .start(this::runWriter);
+            }
+        }
+    }
+
+    private void runWriter() {
+        var batch = new ArrayList<PendingWrite>(settings.maxBatchSize());
+        boolean stop = false;
+        while (!stop) {
+            try {
+                collectBatch(batch);
+            } catch (InterruptedException e) {
+                // Only close() stops the writer, an interrupt can't be allowed to strand waiting steps.
+                log.warn("Kanalarz persistence pipeline writer interrupted, ignoring");
+            }
+            stop = writeBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void collectBatch(List<PendingWrite> batch) throws InterruptedException {
+        var maxBatchSize = settings.maxBatchSize();
+        batch.add(buffer.take());
+        buffer.drainTo(batch, maxBatchSize - batch.size());
+
+        if (settings.maxBatchDelay().isZero()) {
+            return;
+        }
+
+        var deadline = System.nanoTime() + settings.maxBatchDelay().toNanos();
+        while (countEvents(batch) < maxBatchSize && !batch.contains(CLOSE)) {
+            var next = buffer.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            buffer.drainTo(batch, maxBatchSize - batch.size());
+        }
+    }
+
+    private static int countEvents(List<PendingWrite> batch) {
+        int count = 0;
+        for (var write : batch) {
+            if (write.event() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Returns true if the batch contained the close marker.
+    private boolean writeBatch(List<PendingWrite> batch) {
+        List<StepEvent> events = new ArrayList<>(batch.size());
+        for (var write : batch) {
+            if (write.event() != null) {
+                events.add(write.event());
+            }
+        }
+
+        RuntimeException failure = null;
+        if (!events.isEmpty()) {
+            try {
+                persistence.stepEventsBatch(events);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+
+        int failedAsyncWrites = 0;
+        boolean close = false;
+        for (var write : batch) {
+            if (write == CLOSE) {
+                close = true;
+                continue;
+            }
+            if (write.event() != null) {
+                pendingEvents.decrementAndGet();
+            }
+
+            var written = write.written();
+            if (written == null) {
+                if (failure != null && write.event() != null) {
+                    failedAsyncWrites++;
+                    for (var contextId : write.event().contexts()) {
+                        asyncFailures.putIfAbsent(contextId, failure);
+                    }
+                }
+            } else if (failure != null && write.event() != null) {
+                written.completeExceptionally(failure);
+            } else {
+                written.complete(null);
+            }
+        }
+
+        if (failedAsyncWrites > 0) {
+            log.error(
+                "Kanalarz failed to write [{}] step events of a batch of [{}] asynchronously",
+                failedAsyncWrites,
+                events.size(),
+                failure
+            );
+        }
+
+        return close;
+    }
+
+    /**
+     * Writes all buffered events and stops the writer. Events enqueued after closing are written directly.
+     */
+    @Override
+    public void close() {
+        Thread writerThread;
+        closeLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            writerThread = writer;
+            if (writerThread != null) {
+                putUninterruptibly(CLOSE);
+            }
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+
+        if (writerThread != null) {
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
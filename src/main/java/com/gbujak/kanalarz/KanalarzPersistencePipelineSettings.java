@@ -0,0 +1,51 @@
+package com.gbujak.kanalarz;
+
+import org.jspecify.annotations.NullMarked;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Settings of the write-behind pipeline that groups step events of contexts running with
+ * {@link Kanalarz.Durability#GROUP_COMMIT} or {@link Kanalarz.Durability#ASYNC} into batches.
+ * <p>
+ * Register a bean of this type to override the {@link #defaults()}.
+ * @param bufferCapacity max number of events waiting to be written, steps block when the buffer is full
+ * @param maxBatchSize max number of events passed to a single {@link KanalarzPersistence#stepEventsBatch} call
+ * @param maxBatchDelay how long the writer waits for more events before writing an incomplete batch,
+ *                      {@link Duration#ZERO} writes whatever accumulated while the previous batch was written
+ */
+@NullMarked
+public record KanalarzPersistencePipelineSettings(
+    int bufferCapacity,
+    int maxBatchSize,
+    Duration maxBatchDelay
+) {
+
+    /**
+     * Validate the settings.
+     * @param bufferCapacity max number of events waiting to be written
+     * @param maxBatchSize max number of events in one batch
+     * @param maxBatchDelay how long the writer waits for more events
+     */
+    public KanalarzPersistencePipelineSettings {
+        if (bufferCapacity < 1) {
+            throw new IllegalArgumentException("Illegal buffer capacity: " + bufferCapacity);
+        }
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Illegal max batch size: " + maxBatchSize);
+        }
+        Objects.requireNonNull(maxBatchDelay);
+        if (maxBatchDelay.isNegative()) {
+            throw new IllegalArgumentException("Illegal max batch delay: " + maxBatchDelay);
+        }
+    }
+
+    /**
+     * Default settings: 8192 buffered events, batches of up to 256 events, no batch delay.
+     * @return default settings
+     */
+    public static KanalarzPersistencePipelineSettings defaults() {
+        return new KanalarzPersistencePipelineSettings(8192, 256, Duration.ZERO);
+    }
+}
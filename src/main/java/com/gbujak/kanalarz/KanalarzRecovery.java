@@ -0,0 +1,156 @@
+package com.gbujak.kanalarz;
+
+import com.gbujak.kanalarz.KanalarzPersistence.ContextStartedEvent;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Finds contexts abandoned by a JVM that died mid-pipeline and finishes them.
+ * <p>
+ * A context is abandoned when its latest lifecycle event is a started event
+ * ({@link KanalarzPersistence#getUnfinishedContexts(Instant, int)}), it started at least
+ * {@link KanalarzRecoverySettings#minAge()} ago and it isn't running in this JVM. A context whose metadata names a
+ * resume handler under {@link #RESUME_HANDLER_METADATA_KEY} is passed to that handler, other contexts are rolled
+ * back with {@code rollbackNow()}. Oldest contexts are recovered first, at most
+ * {@link KanalarzRecoverySettings#maxParallelism()} at a time.
+ * <p>
+ * Abandoned contexts are only found through the lifecycle events, so the persistence adapter has to store
+ * {@link KanalarzPersistence#contextStarted(ContextStartedEvent)} and
+ * {@link KanalarzPersistence#contextFinished(KanalarzPersistence.ContextFinishedEvent)} events and override
+ * {@link KanalarzPersistence#getUnfinishedContexts(Instant, int)}. With an adapter that doesn't, a warning is logged
+ * on creation and {@link #recover()} never finds anything.
+ * <p>
+ * Kanalarz doesn't schedule recovery, call {@link #recover()} on startup or periodically.
+ */
+@NullMarked
+public class KanalarzRecovery {
+
+    private static final Logger log = LoggerFactory.getLogger(KanalarzRecovery.class);
+
+    /**
+     * Metadata key of the name of the resume handler a context is recovered with.
+     */
+    public static final String RESUME_HANDLER_METADATA_KEY = "kanalarz-resume-handler";
+
+    /**
+     * How an abandoned context was recovered.
+     */
+    public enum Action {
+        /** Passed to its resume handler. */
+        RESUMED,
+        /** Rolled back with {@code rollbackNow()}. */
+        ROLLED_BACK
+    }
+
+    /**
+     * Result of recovering one context.
+     * @param contextId context id
+     * @param action how the context was recovered
+     * @param failure exception thrown by the recovery, null if it succeeded
+     */
+    public record RecoveredContext(UUID contextId, Action action, @Nullable Throwable failure) { }
+
+    private final Kanalarz kanalarz;
+    private final KanalarzPersistencePipeline persistence;
+    private final KanalarzRecoverySettings settings;
+    private final Map<String, Consumer<ContextStartedEvent>> resumeHandlers = new ConcurrentHashMap<>();
+
+    KanalarzRecovery(Kanalarz kanalarz, KanalarzPersistencePipeline persistence, KanalarzRecoverySettings settings) {
+        this.kanalarz = kanalarz;
+        this.persistence = persistence;
+        this.settings = settings;
+        if (!persistence.tracksUnfinishedContexts()) {
+            log.warn(
+                "Kanalarz persistence adapter doesn't override getUnfinishedContexts, " +
+                    "recovery won't find abandoned contexts"
+            );
+        }
+    }
+
+    /**
+     * Register a handler for abandoned contexts with the given name in their {@link #RESUME_HANDLER_METADATA_KEY}
+     * metadata. The handler should rerun the pipeline with {@code newContext().resumes(contextId)}, usually with
+     * {@code consumeResumeReplay(...)}. An abandoned {@code rollbackNow()} run is always rolled back again.
+     * @param name handler name
+     * @param handler handler receiving the latest started event of the context
+     * @throws KanalarzException.KanalarzIllegalUsageException if a handler with the name is already registered
+     */
+    public void registerResumeHandler(String name, Consumer<ContextStartedEvent> handler) {
+        if (resumeHandlers.putIfAbsent(name, handler) != null) {
+            throw new KanalarzException.KanalarzIllegalUsageException(
+                "Resume handler [%s] is already registered".formatted(name)
+            );
+        }
+    }
+
+    /**
+     * Recover abandoned contexts, up to {@link KanalarzRecoverySettings#maxContextsPerScan()} of them. Blocks until
+     * all of them are recovered. A failed recovery doesn't stop the others, the context is found again by the next
+     * call unless its rollback ran and failed.
+     * @return recovered contexts, oldest first
+     */
+    public synchronized List<RecoveredContext> recover() {
+        var abandoned = persistence
+            .unfinishedContexts(Instant.now().minus(settings.minAge()), settings.maxContextsPerScan())
+            .stream()
+            .filter(it -> it.parentContextId() == null && !Kanalarz.isRunningInThisJvm(it.contextId()))
+            .sorted(Comparator.comparing(ContextStartedEvent::startedAt))
+            .toList();
+        if (abandoned.isEmpty()) {
+            return List.of();
+        }
+
+        var permits = new Semaphore(settings.maxParallelism());
+        var results = new ArrayList<Future<RecoveredContext>>(abandoned.size());
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (var context : abandoned) {
+                // Permits are handed out in submission order, so the oldest contexts start first.
+                permits.acquireUninterruptibly();
+                results.add(executor.submit(() -> {
+                    try {
+                        return recover(context);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+        }
+        return results.stream().map(Future::resultNow).toList();
+    }
+
+    private RecoveredContext recover(ContextStartedEvent context) {
+        var handlerName = context.rollbackOnly() ? null : context.metadata().get(RESUME_HANDLER_METADATA_KEY);
+        var action = handlerName != null ? Action.RESUMED : Action.ROLLED_BACK;
+        try {
+            if (handlerName != null) {
+                var handler = resumeHandlers.get(handlerName);
+                if (handler == null) {
+                    throw new KanalarzException.KanalarzIllegalUsageException(
+                        "No resume handler [%s] is registered".formatted(handlerName)
+                    );
+                }
+                handler.accept(context);
+            } else {
+                kanalarz.newContext().resumes(context.contextId()).rollbackNow();
+            }
+            return new RecoveredContext(context.contextId(), action, null);
+        } catch (Throwable e) {
+            log.warn("Kanalarz failed to recover context [{}] with action [{}]", context.contextId(), action, e);
+            return new RecoveredContext(context.contextId(), action, e);
+        }
+    }
+}
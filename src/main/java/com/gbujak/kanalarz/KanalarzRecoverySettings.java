@@ -0,0 +1,50 @@
+package com.gbujak.kanalarz;
+
+import org.jspecify.annotations.NullMarked;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Settings of {@link KanalarzRecovery}.
+ * <p>
+ * Register a bean of this type to override the {@link #defaults()}.
+ * @param minAge only contexts started at least this long ago are recovered, longer than any pipeline runs, so
+ *               contexts still running on other nodes aren't rolled back
+ * @param maxParallelism max number of contexts recovered at the same time
+ * @param maxContextsPerScan max number of contexts recovered by a single {@link KanalarzRecovery#recover()} call
+ */
+@NullMarked
+public record KanalarzRecoverySettings(
+    Duration minAge,
+    int maxParallelism,
+    int maxContextsPerScan
+) {
+
+    /**
+     * Validate the settings.
+     * @param minAge min age of a recovered context
+     * @param maxParallelism max number of contexts recovered at the same time
+     * @param maxContextsPerScan max number of contexts recovered by a single scan
+     */
+    public KanalarzRecoverySettings {
+        Objects.requireNonNull(minAge);
+        if (minAge.isNegative()) {
+            throw new IllegalArgumentException("Illegal min age: " + minAge);
+        }
+        if (maxParallelism < 1) {
+            throw new IllegalArgumentException("Illegal max parallelism: " + maxParallelism);
+        }
+        if (maxContextsPerScan < 1) {
+            throw new IllegalArgumentException("Illegal max contexts per scan: " + maxContextsPerScan);
+        }
+    }
+
+    /**
+     * Default settings: contexts started at least 10 minutes ago, 16 at a time, up to 1000 per scan.
+     * @return default settings
+     */
+    public static KanalarzRecoverySettings defaults() {
+        return new KanalarzRecoverySettings(Duration.ofMinutes(10), 16, 1000);
+    }
+}
@@ -0,0 +1,63 @@
+package com.gbujak.kanalarz;
+
+import org.jspecify.annotations.NullMarked;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Settings of {@link KanalarzRollbacks}.
+ * <p>
+ * Register a bean of this type to override the {@link #defaults()}.
+ * @param concurrency max number of contexts rolled back at the same time
+ * @param rateLimits max rollback calls per second by {@link com.gbujak.kanalarz.annotations.StepsHolder} identifier,
+ *                   shared by all contexts rolled back by the service; holders without a limit aren't limited
+ */
+@NullMarked
+public record KanalarzRollbackSettings(
+    int concurrency,
+    Map<String, Double> rateLimits
+) {
+
+    /**
+     * Validate the settings.
+     * @param concurrency max number of contexts rolled back at the same time
+     * @param rateLimits max rollback calls per second by steps holder
+     */
+    public KanalarzRollbackSettings {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Illegal concurrency: " + concurrency);
+        }
+        Objects.requireNonNull(rateLimits);
+        rateLimits.forEach((stepsHolder, perSecond) -> {
+            Objects.requireNonNull(stepsHolder);
+            if (perSecond == null || !(perSecond > 0) || perSecond.isInfinite()) {
+                throw new IllegalArgumentException(
+                    "Illegal rate limit of steps holder [%s]: %s".formatted(stepsHolder, perSecond)
+                );
+            }
+        });
+        rateLimits = Map.copyOf(rateLimits);
+    }
+
+    /**
+     * Default settings: 16 contexts at a time, no rate limits.
+     * @return default settings
+     */
+    public static KanalarzRollbackSettings defaults() {
+        return new KanalarzRollbackSettings(16, Map.of());
+    }
+
+    /**
+     * Copy the settings with a rate limit of a steps holder added or replaced.
+     * @param stepsHolder {@link com.gbujak.kanalarz.annotations.StepsHolder} identifier
+     * @param perSecond max rollback calls per second of the steps holder
+     * @return new settings
+     */
+    public KanalarzRollbackSettings withRateLimit(String stepsHolder, double perSecond) {
+        var newRateLimits = new HashMap<>(rateLimits);
+        newRateLimits.put(stepsHolder, perSecond);
+        return new KanalarzRollbackSettings(concurrency, newRateLimits);
+    }
+}
@@ -0,0 +1,217 @@
+package com.gbujak.kanalarz;
+
+import org.jspecify.annotations.NullMarked;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Rolls back contexts asynchronously, for example the contexts left with a pending rollback by
+ * {@link Kanalarz.Option#DEFER_ROLLBACK} after an incident.
+ * <p>
+ * {@link #submit(UUID)} queues the context and returns right away, at most
+ * {@link KanalarzRollbackSettings#concurrency()} contexts are rolled back at a time, each one with
+ * {@code newContext().resumes(contextId).rollbackNow()}. Rollback calls of steps holders with a
+ * {@link KanalarzRollbackSettings#rateLimits()} entry are spaced so that all contexts rolled back by the service
+ * together stay under the limit, so a system the rollbacks compensate in isn't flooded. {@link #progress()} tells how
+ * far the queued rollbacks got.
+ */
+@NullMarked
+public class KanalarzRollbacks implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(KanalarzRollbacks.class);
+
+    /**
+     * Progress of the contexts submitted to the service.
+     * @param submitted contexts submitted so far
+     * @param queued contexts waiting for a worker
+     * @param running contexts being rolled back
+     * @param succeeded contexts rolled back
+     * @param failed contexts that failed to roll back
+     * @param rollbackCalls rollback calls started so far by steps holder identifier
+     */
+    public record Progress(
+        long submitted,
+        long queued,
+        long running,
+        long succeeded,
+        long failed,
+        Map<String, Long> rollbackCalls
+    ) {
+
+        /**
+         * @return number of submitted contexts that didn't finish rolling back yet
+         */
+        public long remaining() {
+            return queued + running;
+        }
+    }
+
+    private final class Task implements Runnable {
+
+        private final UUID contextId;
+        private final Kanalarz.KanalarzContextBuilder builder;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        Task(UUID contextId, Kanalarz.KanalarzContextBuilder builder) {
+            this.contextId = contextId;
+            this.builder = builder;
+        }
+
+        @Override
+        public void run() {
+            queued.decrementAndGet();
+            running.incrementAndGet();
+            try {
+                builder.rollbackNow();
+                succeeded.incrementAndGet();
+                result.complete(null);
+            } catch (Throwable e) {
+                log.warn("Kanalarz context [{}] failed to roll back", contextId, e);
+                failed.incrementAndGet();
+                result.completeExceptionally(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        void cancel() {
+            queued.decrementAndGet();
+            result.cancel(false);
+        }
+    }
+
+    private final Kanalarz kanalarz;
+    private final RollbackThrottle throttle;
+    private final ThreadPoolExecutor workers;
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong running = new AtomicLong();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    KanalarzRollbacks(Kanalarz kanalarz, KanalarzRollbackSettings settings) {
+        this.kanalarz = kanalarz;
+        this.throttle = new RollbackThrottle(settings.rateLimits());
+        // Threads are started as contexts are submitted, an unused service has none.
+        this.workers = new ThreadPoolExecutor(
+            settings.concurrency(),
+            settings.concurrency(),
+            0,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            Thread.ofVirtual().name("kanalarz-rollback-", 0).factory()
+        );
+    }
+
+    /**
+     * Queue a rollback of a context.
+     * @param contextId id of the context to roll back
+     * @return future completed when the context is rolled back, completed exceptionally with the rollback failure
+     *         or cancelled if the service is closed before the rollback starts
+     * @throws IllegalStateException if the service is closed
+     * @see #submit(UUID, Consumer)
+     */
+    public CompletableFuture<Void> submit(UUID contextId) {
+        return submit(contextId, builder -> { });
+    }
+
+    /**
+     * Queue a rollback of a context configured like {@link Kanalarz.KanalarzContextBuilder#rollbackNow()}, for
+     * example with {@link Kanalarz.Option#RETRY_FAILED_ROLLBACKS} or
+     * {@link Kanalarz.KanalarzContextBuilder#parallelRollback(int)}.
+     * @param contextId id of the context to roll back
+     * @param configure configures the context builder before the rollback is queued
+     * @return future completed when the context is rolled back, completed exceptionally with the rollback failure
+     *         or cancelled if the service is closed before the rollback starts
+     * @throws IllegalStateException if the service is closed
+     */
+    public CompletableFuture<Void> submit(UUID contextId, Consumer<Kanalarz.KanalarzContextBuilder> configure) {
+        Objects.requireNonNull(contextId);
+        Objects.requireNonNull(configure);
+        var builder = kanalarz.newContext();
+        configure.accept(builder);
+        builder.resumes(contextId).rollbackThrottle(throttle);
+
+        var task = new Task(contextId, builder);
+        submitted.incrementAndGet();
+        queued.incrementAndGet();
+        synchronized (this) {
+            if (workers.isShutdown()) {
+                submitted.decrementAndGet();
+                queued.decrementAndGet();
+                throw new IllegalStateException("Kanalarz rollbacks already closed");
+            }
+            workers.execute(task);
+        }
+        return task.result;
+    }
+
+    /**
+     * Queue rollbacks of contexts in the given order.
+     * @param contextIds ids of the contexts to roll back
+     * @return futures by context id, in the given order
+     * @see #submit(UUID)
+     */
+    public Map<UUID, CompletableFuture<Void>> submitAll(Collection<UUID> contextIds) {
+        var result = new LinkedHashMap<UUID, CompletableFuture<Void>>();
+        for (var contextId : contextIds) {
+            result.put(contextId, submit(contextId));
+        }
+        return result;
+    }
+
+    /**
+     * Get the progress of the rollbacks. The counters are read one by one, so they may be slightly off from each
+     * other while contexts are rolled back.
+     * @return progress snapshot
+     */
+    public Progress progress() {
+        return new Progress(
+            submitted.get(),
+            queued.get(),
+            running.get(),
+            succeeded.get(),
+            failed.get(),
+            throttle.calls()
+        );
+    }
+
+    /**
+     * Stop taking new contexts, cancel the queued rollbacks and wait for the running ones to finish.
+     */
+    @Override
+    public void close() {
+        List<Runnable> cancelled = new ArrayList<>();
+        synchronized (this) {
+            if (workers.isShutdown()) {
+                return;
+            }
+            workers.shutdown();
+            workers.getQueue().drainTo(cancelled);
+        }
+        for (var task : cancelled) {
+            ((Task) task).cancel();
+        }
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.info("Kanalarz rollbacks waiting for {} running rollbacks to finish", running.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -17,6 +17,11 @@ import java.util.Map;
  * values serialized in {@link #serializeStepCalled(List, SerializeReturnInfo)} must be readable back by
  * {@link #deserializeParameters(String, List, Type)}, and argument comparison in
  * {@link #parametersAreEqualIgnoringReturn(String, String)} must match how arguments were serialized.
+ * <p>
+ * Kanalarz serializes a step call through {@link #serializeStepStarted(List)} and then
+ * {@link #serializeStepCompleted(SerializedParameters, SerializeReturnInfo)}. By default both delegate to
+ * {@link #serializeStepCalled(List, SerializeReturnInfo)}, which encodes the arguments twice. Adapters can override
+ * them to encode the arguments once and attach the return payload to the already encoded arguments.
  */
 @NullMarked
 public interface KanalarzSerialization {
@@ -52,7 +57,9 @@ public interface KanalarzSerialization {
     /**
      * Serialize step input, and optionally the return payload.
      * <p>
-     * Called twice per step lifecycle:
+     * Through the default {@link #serializeStepStarted(List)} and
+     * {@link #serializeStepCompleted(SerializedParameters, SerializeReturnInfo)} this is called twice per step
+     * lifecycle:
      * <ul>
      *     <li>Before execution: {@code returnInfo == null}, payload contains only call arguments.</li>
      *     <li>After execution: {@code returnInfo != null}, payload contains arguments and result/error.</li>
@@ -67,6 +74,66 @@ public interface KanalarzSerialization {
         @Nullable SerializeReturnInfo returnInfo
     );
 
+    /**
+     * Step arguments serialized once before execution, reused when the step completes.
+     * @param serialized serialized representation of the call arguments, same as
+     *                   {@link #serializeStepCalled(List, SerializeReturnInfo)} with {@code returnInfo == null}
+     * @param parametersInfo step parameters that were serialized
+     * @param encodedParameters optional adapter specific intermediate form of the encoded arguments
+     * @param fingerprint optional stable fingerprint of the call arguments, for example a 128-bit hash of their
+     *                    canonical encoding. Replay treats arguments with equal fingerprints as equal without calling
+     *                    {@link #parametersAreEqualIgnoringReturn(String, String)}, so equal fingerprints must only
+     *                    be produced for arguments that method considers equal. Different fingerprints still fall
+     *                    back to the full comparison.
+     */
+    record SerializedParameters(
+        String serialized,
+        List<SerializeParameterInfo> parametersInfo,
+        @Nullable Object encodedParameters,
+        @Nullable String fingerprint
+    ) {
+
+        /**
+         * Serialized arguments without a fingerprint.
+         * @param serialized serialized representation of the call arguments
+         * @param parametersInfo step parameters that were serialized
+         * @param encodedParameters optional adapter specific intermediate form of the encoded arguments
+         */
+        public SerializedParameters(
+            String serialized,
+            List<SerializeParameterInfo> parametersInfo,
+            @Nullable Object encodedParameters
+        ) {
+            this(serialized, parametersInfo, encodedParameters, null);
+        }
+    }
+
+    /**
+     * Serialize the step call arguments before execution.
+     * <p>
+     * The result is passed back to {@link #serializeStepCompleted(SerializedParameters, SerializeReturnInfo)}
+     * when the step completes. Implementations can keep their encoded arguments in
+     * {@link SerializedParameters#encodedParameters()} so they don't have to encode them again.
+     * @param parametersInfo step parameters
+     * @return serialized arguments
+     */
+    default SerializedParameters serializeStepStarted(List<SerializeParameterInfo> parametersInfo) {
+        return new SerializedParameters(serializeStepCalled(parametersInfo, null), parametersInfo, null);
+    }
+
+    /**
+     * Serialize the completed step call, arguments and the result/error.
+     * <p>
+     * Must produce the same payload as {@link #serializeStepCalled(List, SerializeReturnInfo)} would for the same
+     * arguments and return info.
+     * @param parameters arguments serialized by {@link #serializeStepStarted(List)}
+     * @param returnInfo return payload
+     * @return serialized representation
+     */
+    default String serializeStepCompleted(SerializedParameters parameters, SerializeReturnInfo returnInfo) {
+        return serializeStepCalled(parameters.parametersInfo(), returnInfo);
+    }
+
     /**
      * Parameter metadata used for deserialization.
      * @param name parameter name
@@ -93,7 +160,7 @@ public interface KanalarzSerialization {
      * Deserialize previously serialized step payload.
      * <p>
      * Expected input is the serialized payload produced from the completed step call (where {@code returnInfo} was
-     * present). Implementations must:
+     * present). Rollback only requests parameters declared by the rollback method. Implementations must:
      * <ul>
      *     <li>Return parameter values for all requested names in {@code parametersInfo}.</li>
      *     <li>Deserialize return value using {@code returnType}.</li>
@@ -110,9 +177,54 @@ public interface KanalarzSerialization {
         Type returnType
     );
 
+    /**
+     * Deserialized result of a step call, without its parameters.
+     * @param executionResult deserialized return value
+     * @param executionError deserialized execution error
+     */
+    record DeserializedResult(
+        @Nullable Object executionResult,
+        @Nullable Throwable executionError
+    ) {}
+
+    /**
+     * Deserialize only the result/error of a previously serialized step payload. Resume replay uses this, it
+     * never needs the parameters of a replayed step.
+     * <p>
+     * The default implementation calls {@link #deserializeParameters(String, List, Type)} without requesting any
+     * parameters. Override it if the adapter can skip decoding the parameters entirely.
+     * @param serialized serialized payload
+     * @param returnType return type to deserialize
+     * @return deserialized result
+     */
+    default DeserializedResult deserializeResult(String serialized, Type returnType) {
+        var result = deserializeParameters(serialized, List.of(), returnType);
+        return new DeserializedResult(result.executionResult(), result.executionError());
+    }
+
+    /**
+     * Deserialize only the requested parameters of a previously serialized step payload, without the result.
+     * Rollback uses this when the rollback method doesn't take the rollforward output, {@code parametersInfo} then
+     * only contains parameters declared by the rollback method.
+     * <p>
+     * The default implementation calls {@link #deserializeParameters(String, List, Type)} and drops the result.
+     * @param serialized serialized payload
+     * @param parametersInfo parameter metadata to deserialize
+     * @param returnType return type of the step, only needed by the default implementation
+     * @return deserialized parameter map
+     */
+    default Map<String, @Nullable Object> deserializeParametersOnly(
+        String serialized,
+        List<DeserializeParameterInfo> parametersInfo,
+        Type returnType
+    ) {
+        return deserializeParameters(serialized, parametersInfo, returnType).parameters();
+    }
+
     /**
      * Compare two serialized payloads by parameters only, ignoring return value and error payload.
-     * This is used during resume replay argument matching.
+     * This is used during resume replay argument matching, when either of the steps has no
+     * {@link SerializedParameters#fingerprint()} or the fingerprints differ.
      * <p>
      * Replay calls this with:
      * <ul>
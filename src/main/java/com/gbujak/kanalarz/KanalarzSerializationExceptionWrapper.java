@@ -5,6 +5,7 @@ import org.jspecify.annotations.Nullable;
 
 import java.lang.reflect.Type;
 import java.util.List;
+import java.util.Map;
 
 @NullMarked
 class KanalarzSerializationExceptionWrapper implements KanalarzSerialization {
@@ -27,6 +28,24 @@ class KanalarzSerializationExceptionWrapper implements KanalarzSerialization {
         }
     }
 
+    @Override
+    public SerializedParameters serializeStepStarted(List<SerializeParameterInfo> parametersInfo) {
+        try {
+            return serialization.serializeStepStarted(parametersInfo);
+        } catch (RuntimeException e) {
+            throw new KanalarzException.KanalarzSerializationException(e);
+        }
+    }
+
+    @Override
+    public String serializeStepCompleted(SerializedParameters parameters, SerializeReturnInfo returnInfo) {
+        try {
+            return serialization.serializeStepCompleted(parameters, returnInfo);
+        } catch (RuntimeException e) {
+            throw new KanalarzException.KanalarzSerializationException(e);
+        }
+    }
+
     @Override
     public DeserializeParametersResult deserializeParameters(
         String serialized,
@@ -40,6 +59,28 @@ class KanalarzSerializationExceptionWrapper implements KanalarzSerialization {
         }
     }
 
+    @Override
+    public DeserializedResult deserializeResult(String serialized, Type returnType) {
+        try {
+            return serialization.deserializeResult(serialized, returnType);
+        } catch (RuntimeException e) {
+            throw new KanalarzException.KanalarzSerializationException(e);
+        }
+    }
+
+    @Override
+    public Map<String, @Nullable Object> deserializeParametersOnly(
+        String serialized,
+        List<DeserializeParameterInfo> parametersInfo,
+        Type returnType
+    ) {
+        try {
+            return serialization.deserializeParametersOnly(serialized, parametersInfo, returnType);
+        } catch (RuntimeException e) {
+            throw new KanalarzException.KanalarzSerializationException(e);
+        }
+    }
+
     @Override
     public boolean parametersAreEqualIgnoringReturn(String left, String right) {
         try {
@@ -6,8 +6,12 @@ import com.gbujak.kanalarz.annotations.Step;
 import com.gbujak.kanalarz.annotations.StepsHolder;
 import org.jspecify.annotations.NullMarked;
 
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -19,7 +23,7 @@ class KanalarzStepsRegistry {
     private final Map<String, String> rollbackStepsForRollforwardSteps = new HashMap<>();
 
 
-    synchronized void registerRollforwardStep(
+    synchronized StepInfoClasses.StepInfo registerRollforwardStep(
         Object target,
         Method method,
         StepsHolder stepsHolder,
@@ -49,9 +53,10 @@ class KanalarzStepsRegistry {
             );
         }
         steps.put(stepIdentifier, stepInfo);
+        return stepInfo;
     }
 
-    synchronized void registerRollbackStep(
+    synchronized StepInfoClasses.StepInfo registerRollbackStep(
         Object target,
         Method method,
         StepsHolder stepsHolder,
@@ -75,10 +80,23 @@ class KanalarzStepsRegistry {
         var stepInfo = StepInfoClasses.StepInfo.createNew(target, method, stepsHolder, rollback, returnIsSecret);
         validateDescription(stepInfo);
 
+        var batched = rollback.batched();
+        if (batched && rollback.maxBatchSize() < 1) {
+            throw new RuntimeException(
+                "Batched rollback step [%s] has an illegal max batch size [%d]"
+                    .formatted(rollbackIdentifier, rollback.maxBatchSize())
+            );
+        }
+
         for (var param : stepInfo.paramsInfo) {
+            // A batched rollback takes a list of the rollforward values, element nullability isn't checked.
+            var paramType = batched ? batchElementType(rollbackIdentifier, param) : param.type;
             if (param.isRollforwardOutput) {
                 var expectedType = StepOut.unwrapStepOutType(rollforwardStep.returnType);
-                if (!param.type.equals(expectedType)) {
+                if (batched) {
+                    expectedType = boxed(expectedType);
+                }
+                if (!paramType.equals(expectedType)) {
                     throw new RuntimeException(
                         ("Rollback step [%s] declares a rollforward step [%s] output parameter [%s] but the return " +
                             "type of the rollforward step and that parameter don't match! (rollback param is [%s] " +
@@ -87,13 +105,13 @@ class KanalarzStepsRegistry {
                                 rollbackIdentifier,
                                 stepIdentifier,
                                 param.paramName,
-                                param.type.getTypeName(),
+                                paramType.getTypeName(),
                                 rollforwardStep.returnType.getTypeName(),
                                 expectedType.getTypeName()
                             )
                     );
                 }
-                if (param.isNonNullable != rollforwardStep.isReturnTypeNonNullable) {
+                if (!batched && param.isNonNullable != rollforwardStep.isReturnTypeNonNullable) {
                     throw new RuntimeException(
                         ("Rollback step [%s] declares a rollforward step [%s] output parameter [%s] but the return " +
                             "type of the rollforward step and that parameter have different nullability!")
@@ -119,7 +137,8 @@ class KanalarzStepsRegistry {
                 );
             }
 
-            if (!correspondingParam.get().type.equals(param.type)) {
+            var expectedType = batched ? boxed(correspondingParam.get().type) : correspondingParam.get().type;
+            if (!expectedType.equals(paramType)) {
                 throw new RuntimeException(
                     ("Rollback step [%s] declares a parameter [%s] from the rollforward step [%s] " +
                         "but the types are different! ([%s] and [%s])")
@@ -127,13 +146,13 @@ class KanalarzStepsRegistry {
                             rollbackIdentifier,
                             param.paramName,
                             stepIdentifier,
-                            param.type.getTypeName(),
-                            correspondingParam.get().type.getTypeName()
+                            paramType.getTypeName(),
+                            expectedType.getTypeName()
                         )
                 );
             }
 
-            if (!correspondingParam.get().isNonNullable == param.isNonNullable) {
+            if (!batched && !correspondingParam.get().isNonNullable == param.isNonNullable) {
                 throw new RuntimeException(
                     ("Rollback step [%s] declares a rollforward step [%s] parameter [%s] but the parameter " +
                         "type of the rollforward step and that parameter have different nullability!")
@@ -148,9 +167,10 @@ class KanalarzStepsRegistry {
 
         steps.put(rollbackIdentifier, stepInfo);
         rollbackStepsForRollforwardSteps.put(stepIdentifier, rollbackIdentifier);
+        return stepInfo;
     }
 
-    synchronized void registerRollbackOnlyStep(
+    synchronized StepInfoClasses.StepInfo registerRollbackOnlyStep(
         Object target,
         Method method,
         StepsHolder stepsHolder,
@@ -182,6 +202,27 @@ class KanalarzStepsRegistry {
         steps.put(stepIdentifier, step);
         steps.put(rollbackIdentifier, rollbackStep);
         rollbackStepsForRollforwardSteps.put(stepIdentifier, rollbackIdentifier);
+        // the marker is what gets dispatched when the method is called, the rollback is only looked up by identifier
+        return step;
+    }
+
+    private static Type batchElementType(String rollbackIdentifier, StepInfoClasses.ParamInfo param) {
+        if (
+            param.type instanceof ParameterizedType parameterizedType
+                && parameterizedType.getRawType().equals(List.class)
+        ) {
+            return parameterizedType.getActualTypeArguments()[0];
+        }
+        throw new RuntimeException(
+            "Batched rollback step [%s] parameter [%s] must be a List but is [%s]"
+                .formatted(rollbackIdentifier, param.paramName, param.type.getTypeName())
+        );
+    }
+
+    private static Type boxed(Type type) {
+        return type instanceof Class<?> clazz && clazz.isPrimitive()
+            ? MethodType.methodType(clazz).wrap().returnType()
+            : type;
     }
 
     private void validateDescription(StepInfoClasses.StepInfo stepInfo) {
@@ -204,16 +245,6 @@ class KanalarzStepsRegistry {
         }
     }
 
-    StepInfoClasses.StepInfo getStepInfoOrThrow(StepsHolder stepsHolder, Step step) {
-        var identifier = stepIdentifier(stepsHolder, step);
-        return getStepInfoOrThrow(identifier);
-    }
-
-    StepInfoClasses.StepInfo getStepInfoOrThrow(StepsHolder stepsHolder, RollbackOnly rollbackOnly) {
-        var identifier = stepIdentifier(stepsHolder, rollbackOnly);
-        return getStepInfoOrThrow(identifier);
-    }
-
     Optional<StepInfoClasses.StepInfo> getStepRollbackInfo(String stepIdentifier) {
         return Optional.of(stepIdentifier)
             .map(this.rollbackStepsForRollforwardSteps::get)
@@ -0,0 +1,79 @@
+package com.gbujak.kanalarz;
+
+import org.jspecify.annotations.NullMarked;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Interface to implement to store pipelines submitted through {@link KanalarzWorkers} until a worker runs them.
+ * Back it with a table in the same database as the persistence, or with a message broker.
+ */
+@NullMarked
+public interface KanalarzWorkQueue {
+
+    /**
+     * A submitted pipeline run.
+     * @param contextId id of the context the pipeline runs in
+     * @param pipeline name of the pipeline registered with {@link KanalarzWorkers#registerPipeline}
+     * @param serializedInput pipeline input serialized with {@link KanalarzSerialization}
+     * @param tenant tenant the work is submitted for, workers share claims fairly between tenants
+     * @param priority higher priorities are claimed first
+     * @param enqueuedAt when the work was submitted
+     */
+    record WorkItem(
+        UUID contextId,
+        String pipeline,
+        String serializedInput,
+        String tenant,
+        int priority,
+        Instant enqueuedAt
+    ) {
+
+        /**
+         * Validate the item.
+         * @param contextId context id
+         * @param pipeline pipeline name
+         * @param serializedInput serialized input
+         * @param tenant tenant
+         * @param priority priority
+         * @param enqueuedAt submission time
+         */
+        public WorkItem {
+            Objects.requireNonNull(contextId);
+            Objects.requireNonNull(pipeline);
+            Objects.requireNonNull(serializedInput);
+            Objects.requireNonNull(tenant);
+            Objects.requireNonNull(enqueuedAt);
+        }
+    }
+
+    /**
+     * Store a submitted item durably.
+     * @param item submitted item
+     */
+    void enqueue(WorkItem item);
+
+    /**
+     * Claim items for a worker. Claimed items aren't returned again until the visibility timeout passes, an item
+     * whose worker died is then claimed again.
+     * <p>
+     * Items are claimed highest priority first. Within a priority they are ordered by their position in the queue
+     * of their tenant, then by submission time, so a burst from one tenant doesn't starve the others. In SQL that
+     * is {@code ORDER BY priority DESC, ROW_NUMBER() OVER (PARTITION BY tenant, priority ORDER BY enqueued_at),
+     * enqueued_at}.
+     * @param limit max number of items to claim
+     * @param visibilityTimeout how long the claimed items stay invisible to other workers
+     * @return claimed items in the order they should run
+     */
+    List<WorkItem> claim(int limit, Duration visibilityTimeout);
+
+    /**
+     * Remove an item after its pipeline finished, successfully or not.
+     * @param item claimed item
+     */
+    void complete(WorkItem item);
+}
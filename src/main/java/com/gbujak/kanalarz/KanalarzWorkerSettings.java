@@ -0,0 +1,48 @@
+package com.gbujak.kanalarz;
+
+import org.jspecify.annotations.NullMarked;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Settings of {@link KanalarzWorkers}.
+ * @param concurrency max number of pipelines a worker pool runs at the same time
+ * @param pollInterval how long an idle worker pool waits before claiming again
+ * @param visibilityTimeout how long claimed items stay invisible to other workers, longer than any pipeline runs
+ */
+@NullMarked
+public record KanalarzWorkerSettings(
+    int concurrency,
+    Duration pollInterval,
+    Duration visibilityTimeout
+) {
+
+    /**
+     * Validate the settings.
+     * @param concurrency max number of running pipelines
+     * @param pollInterval idle poll interval
+     * @param visibilityTimeout claim visibility timeout
+     */
+    public KanalarzWorkerSettings {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Illegal concurrency: " + concurrency);
+        }
+        Objects.requireNonNull(pollInterval);
+        if (pollInterval.isNegative() || pollInterval.isZero()) {
+            throw new IllegalArgumentException("Illegal poll interval: " + pollInterval);
+        }
+        Objects.requireNonNull(visibilityTimeout);
+        if (visibilityTimeout.isNegative() || visibilityTimeout.isZero()) {
+            throw new IllegalArgumentException("Illegal visibility timeout: " + visibilityTimeout);
+        }
+    }
+
+    /**
+     * Default settings: 16 pipelines at a time, polled every second, claims visible again after 5 minutes.
+     * @return default settings
+     */
+    public static KanalarzWorkerSettings defaults() {
+        return new KanalarzWorkerSettings(16, Duration.ofSeconds(1), Duration.ofMinutes(5));
+    }
+}
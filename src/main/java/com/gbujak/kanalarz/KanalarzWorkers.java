@@ -0,0 +1,271 @@
+package com.gbujak.kanalarz;
+
+import com.gbujak.kanalarz.KanalarzSerialization.DeserializeParameterInfo;
+import com.gbujak.kanalarz.KanalarzSerialization.SerializeParameterInfo;
+import com.gbujak.kanalarz.KanalarzSerialization.SerializeReturnInfo;
+import com.gbujak.kanalarz.KanalarzWorkQueue.WorkItem;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Submits pipelines to a {@link KanalarzWorkQueue} and runs the queued pipelines on a pool of workers.
+ * <p>
+ * {@link #submit(String, Object, String, int)} enqueues the pipeline name and its serialized input and returns the
+ * context id right away. After {@link #start()} the pool claims items from the queue, at most
+ * {@link KanalarzWorkerSettings#concurrency()} running at a time, and runs each one with
+ * {@code newContext().resumes(contextId).consumeResumeReplay(...)}. An item claimed again after its worker died
+ * replays the steps that already completed instead of running them again. A pipeline that fails is rolled back
+ * like any other and its item is completed, the outcome is in the context lifecycle records.
+ * <p>
+ * Keep the visibility timeout shorter than {@link KanalarzRecoverySettings#minAge()}, so the queue hands an
+ * abandoned pipeline to another worker before recovery rolls it back. With {@link KanalarzLeases} configured an
+ * item claimed again while its pipeline still runs elsewhere is left in the queue.
+ */
+@NullMarked
+public class KanalarzWorkers implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(KanalarzWorkers.class);
+
+    /**
+     * Metadata key of the pipeline name of contexts run by the workers.
+     */
+    public static final String PIPELINE_METADATA_KEY = "kanalarz-pipeline";
+
+    /**
+     * Metadata key of the tenant of contexts run by the workers.
+     */
+    public static final String TENANT_METADATA_KEY = "kanalarz-tenant";
+
+    /**
+     * Tenant of work submitted without one.
+     */
+    public static final String DEFAULT_TENANT = "";
+
+    private static final String INPUT_PARAMETER_NAME = "input";
+
+    private record Pipeline<I>(Class<I> inputType, BiConsumer<KanalarzContext, I> body) {
+
+        void run(KanalarzContext context, @Nullable Object input) {
+            body.accept(context, inputType.cast(input));
+        }
+    }
+
+    private final Kanalarz kanalarz;
+    @Nullable private final KanalarzWorkQueue queue;
+    private final KanalarzSerialization serialization;
+    private final KanalarzWorkerSettings settings;
+    private final Map<String, Pipeline<?>> pipelines = new ConcurrentHashMap<>();
+    private final Semaphore permits;
+    @Nullable private Thread dispatcher;
+    @Nullable private ExecutorService workers;
+
+    KanalarzWorkers(
+        Kanalarz kanalarz,
+        @Nullable KanalarzWorkQueue queue,
+        KanalarzSerialization serialization,
+        KanalarzWorkerSettings settings
+    ) {
+        this.kanalarz = kanalarz;
+        this.queue = queue;
+        this.serialization = serialization;
+        this.settings = settings;
+        this.permits = new Semaphore(settings.concurrency());
+    }
+
+    /**
+     * Register a pipeline the workers of this node can run. Register every pipeline before {@link #start()}, an
+     * item of a pipeline that isn't registered is left for another node until its visibility timeout passes.
+     * @param name pipeline name
+     * @param inputType type the input is deserialized to
+     * @param body pipeline body, runs inside the context
+     * @param <I> input type
+     * @throws KanalarzException.KanalarzIllegalUsageException if a pipeline with the name is already registered
+     */
+    public <I> void registerPipeline(String name, Class<I> inputType, BiConsumer<KanalarzContext, I> body) {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(inputType);
+        Objects.requireNonNull(body);
+        if (pipelines.putIfAbsent(name, new Pipeline<>(inputType, body)) != null) {
+            throw new KanalarzException.KanalarzIllegalUsageException(
+                "Pipeline [%s] is already registered".formatted(name)
+            );
+        }
+    }
+
+    /**
+     * Submit a pipeline run for the default tenant with priority 0.
+     * @param pipeline pipeline name
+     * @param input pipeline input
+     * @return id of the context the pipeline will run in
+     * @see #submit(String, Object, String, int)
+     */
+    public UUID submit(String pipeline, Object input) {
+        return submit(pipeline, input, DEFAULT_TENANT, 0);
+    }
+
+    /**
+     * Durably enqueue a pipeline run. The pipeline doesn't have to be registered on this node, any node with the
+     * pipeline registered runs it.
+     * @param pipeline pipeline name
+     * @param input pipeline input, serialized with {@link KanalarzSerialization}
+     * @param tenant tenant the run is submitted for
+     * @param priority higher priorities are claimed first
+     * @return id of the context the pipeline will run in
+     * @throws KanalarzException.KanalarzIllegalUsageException if there's no {@link KanalarzWorkQueue}
+     */
+    public UUID submit(String pipeline, Object input, String tenant, int priority) {
+        Objects.requireNonNull(pipeline);
+        Objects.requireNonNull(input);
+        Objects.requireNonNull(tenant);
+        var contextId = Kanalarz.timeOrderedEpochPlus1();
+        var serializedInput = serialization.serializeStepCalled(
+            List.of(new SerializeParameterInfo(INPUT_PARAMETER_NAME, input.getClass(), input, false)),
+            new SerializeReturnInfo(Void.class, null, null, false)
+        );
+        requireQueue().enqueue(
+            new WorkItem(contextId, pipeline, serializedInput, tenant, priority, Instant.now())
+        );
+        return contextId;
+    }
+
+    /**
+     * Start claiming and running queued pipelines.
+     * @throws KanalarzException.KanalarzIllegalUsageException if there's no {@link KanalarzWorkQueue}
+     * @throws IllegalStateException if the workers already started
+     */
+    public synchronized void start() {
+        var queue = requireQueue();
+        if (dispatcher != null) {
+            throw new IllegalStateException("Kanalarz workers already started");
+        }
+        var workers = Executors.newVirtualThreadPerTaskExecutor();
+        this.workers = workers;
+        dispatcher = Thread.ofPlatform()
+            .daemon()
+            .name("kanalarz-workers-dispatcher")
+            .start(() -> dispatch(queue, workers));
+    }
+
+    /**
+     * Stop claiming and wait for the running pipelines to finish.
+     */
+    @Override
+    public void close() {
+        Thread dispatcher;
+        ExecutorService workers;
+        synchronized (this) {
+            dispatcher = this.dispatcher;
+            workers = this.workers;
+            this.dispatcher = null;
+            this.workers = null;
+        }
+        if (dispatcher == null || workers == null) {
+            return;
+        }
+        dispatcher.interrupt();
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.close();
+    }
+
+    private void dispatch(KanalarzWorkQueue queue, ExecutorService workers) {
+        var pollIntervalNanos = settings.pollInterval().toNanos();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                permits.acquire();
+                var free = 1 + permits.drainPermits();
+
+                List<WorkItem> claimed;
+                try {
+                    claimed = queue.claim(free, settings.visibilityTimeout());
+                } catch (RuntimeException e) {
+                    log.warn("Kanalarz workers failed to claim from the work queue", e);
+                    claimed = List.of();
+                }
+
+                for (int i = claimed.size(); i < free; i++) {
+                    permits.release();
+                }
+                for (var item : claimed) {
+                    workers.execute(() -> {
+                        try {
+                            run(queue, item);
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                }
+                if (claimed.size() < free) {
+                    TimeUnit.NANOSECONDS.sleep(pollIntervalNanos);
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    private void run(KanalarzWorkQueue queue, WorkItem item) {
+        var pipeline = pipelines.get(item.pipeline());
+        if (pipeline == null) {
+            log.warn(
+                "Kanalarz workers claimed context [{}] of pipeline [{}] that isn't registered on this node",
+                item.contextId(),
+                item.pipeline()
+            );
+            return;
+        }
+
+        try {
+            var input = serialization.deserializeParametersOnly(
+                item.serializedInput(),
+                List.of(new DeserializeParameterInfo(INPUT_PARAMETER_NAME, pipeline.inputType())),
+                Void.class
+            ).get(INPUT_PARAMETER_NAME);
+            kanalarz.newContext()
+                .resumes(item.contextId())
+                .metadata(PIPELINE_METADATA_KEY, item.pipeline())
+                .metadata(TENANT_METADATA_KEY, item.tenant())
+                .consumeResumeReplay(context -> pipeline.run(context, input));
+        } catch (KanalarzException.KanalarzContextLeaseException e) {
+            log.info("Kanalarz context [{}] already runs on another node", item.contextId());
+            return;
+        } catch (KanalarzException.KanalarzPersistenceException e) {
+            log.warn("Kanalarz workers failed to persist context [{}], it will be claimed again", item.contextId(), e);
+            return;
+        } catch (Throwable e) {
+            log.warn("Kanalarz context [{}] of pipeline [{}] failed", item.contextId(), item.pipeline(), e);
+        }
+
+        try {
+            queue.complete(item);
+        } catch (RuntimeException e) {
+            log.warn("Kanalarz workers failed to complete context [{}] in the work queue", item.contextId(), e);
+        }
+    }
+
+    private KanalarzWorkQueue requireQueue() {
+        if (queue == null) {
+            throw new KanalarzException.KanalarzIllegalUsageException(
+                "Kanalarz workers need a KanalarzWorkQueue bean"
+            );
+        }
+        return queue;
+    }
+}
@@ -0,0 +1,97 @@
+package com.gbujak.kanalarz;
+
+import org.jspecify.annotations.NullMarked;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiPredicate;
+
+/**
+ * Rollbacks of a context arranged by the {@code forkJoin} tasks their steps ran in. Rollbacks are added newest
+ * first and a block keeps that order. Every task of a fork gets its own block, blocks of tasks of the same fork don't
+ * depend on each other and can be rolled back concurrently. Steps containing a fork started before it, so they come
+ * after the fork in the block and are rolled back after all of its tasks.
+ * <p>
+ * Consecutive rollbacks of a block that can be executed with a single call are kept in one {@link Batch}.
+ * @param <T> rollback
+ */
+@NullMarked
+final class RollbackPlan<T> {
+
+    sealed interface Unit<T> permits Batch, Fork { }
+
+    /**
+     * Rollbacks executed with a single call, newest first.
+     * @param rollbacks rollbacks of the batch, only ever more than one for batched rollback methods
+     */
+    record Batch<T>(List<T> rollbacks) implements Unit<T> { }
+
+    /**
+     * Rollbacks of steps that ran in the tasks of a single {@code forkJoin} call.
+     * @param forkTask path of the first task of the fork that was added
+     * @param tasks blocks by task index
+     */
+    record Fork<T>(ExecutionPath forkTask, Map<Integer, List<Unit<T>>> tasks) implements Unit<T> { }
+
+    private final List<Unit<T>> units = new ArrayList<>();
+    private final BiPredicate<List<T>, T> canJoinBatch;
+
+    /**
+     * @param canJoinBatch whether a rollback can be added to the end of a batch
+     */
+    RollbackPlan(BiPredicate<List<T>, T> canJoinBatch) {
+        this.canJoinBatch = canJoinBatch;
+    }
+
+    /**
+     * @return top level block, newest first
+     */
+    List<Unit<T>> units() {
+        return units;
+    }
+
+    /**
+     * Add a rollback older than all rollbacks added so far.
+     * @param rollback rollback to add
+     * @param path execution path of the step it rolls back
+     */
+    void add(T rollback, ExecutionPath path) {
+        add(units, rollback, path, 0);
+    }
+
+    private void add(List<Unit<T>> block, T rollback, ExecutionPath path, int depth) {
+        var forkTask = path.outermostForkTaskBelow(depth);
+        if (forkTask == null) {
+            if (
+                !block.isEmpty()
+                    && block.getLast() instanceof Batch<T> last
+                    && canJoinBatch.test(last.rollbacks(), rollback)
+            ) {
+                last.rollbacks().add(rollback);
+            } else {
+                var rollbacks = new ArrayList<T>();
+                rollbacks.add(rollback);
+                block.add(new Batch<>(rollbacks));
+            }
+            return;
+        }
+
+        // Steps of a fork run between its start and join, so they are next to each other in the history.
+        Fork<T> fork = null;
+        if (!block.isEmpty() && block.getLast() instanceof Fork<T> last && last.forkTask().isSameFork(forkTask)) {
+            fork = last;
+        }
+        if (fork == null) {
+            fork = new Fork<>(forkTask, new TreeMap<>());
+            block.add(fork);
+        }
+        add(
+            fork.tasks().computeIfAbsent(forkTask.taskIndex(), taskIndex -> new ArrayList<>()),
+            rollback,
+            path,
+            forkTask.depth()
+        );
+    }
+}
@@ -0,0 +1,79 @@
+package com.gbujak.kanalarz;
+
+import org.jspecify.annotations.NullMarked;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rate limits and counts the rollback calls of contexts rolled back by {@link KanalarzRollbacks}, by steps holder.
+ * Calls of a holder with a limit are spaced evenly, no matter how many contexts are rolled back at once. A batched
+ * rollback is a single call.
+ */
+@NullMarked
+final class RollbackThrottle {
+
+    private static final class Limiter {
+
+        private final long intervalNanos;
+        private long nextFreeNanos = System.nanoTime();
+
+        Limiter(double perSecond) {
+            this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / perSecond));
+        }
+
+        void acquire() {
+            long waitUntil;
+            synchronized (this) {
+                waitUntil = Math.max(System.nanoTime(), nextFreeNanos);
+                nextFreeNanos = waitUntil + intervalNanos;
+            }
+
+            // Rollbacks aren't interrupted, an interrupt is kept for whoever checks it next.
+            var interrupted = false;
+            for (long remaining; (remaining = waitUntil - System.nanoTime()) > 0; ) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(remaining);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private final Map<String, Limiter> limiters;
+    private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+
+    RollbackThrottle(Map<String, Double> rateLimits) {
+        var limiters = new TreeMap<String, Limiter>();
+        rateLimits.forEach((stepsHolder, perSecond) -> limiters.put(stepsHolder, new Limiter(perSecond)));
+        this.limiters = limiters;
+    }
+
+    /**
+     * Wait until a rollback of the steps holder is allowed to run and count it.
+     * @param stepsHolder steps holder identifier of the rollback method
+     */
+    void beforeRollback(String stepsHolder) {
+        var limiter = limiters.get(stepsHolder);
+        if (limiter != null) {
+            limiter.acquire();
+        }
+        calls.computeIfAbsent(stepsHolder, it -> new LongAdder()).increment();
+    }
+
+    /**
+     * @return number of rollback calls started so far by steps holder
+     */
+    Map<String, Long> calls() {
+        var result = new TreeMap<String, Long>();
+        calls.forEach((stepsHolder, count) -> result.put(stepsHolder, count.sum()));
+        return result;
+    }
+}
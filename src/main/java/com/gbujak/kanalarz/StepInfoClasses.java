@@ -4,11 +4,16 @@ import com.gbujak.kanalarz.annotations.*;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 @NullMarked
@@ -22,14 +27,40 @@ class StepInfoClasses {
         @Nullable RollbackOnly rollbackOnly;
         @Nullable ParameterizedStepDescription description;
         StepsHolder stepsHolder;
+        String identifier;
+        boolean fallible;
         Type returnType;
         boolean isReturnTypeNonNullable;
         List<ParamInfo> paramsInfo;
         boolean returnIsSecret;
         boolean rollbackMarker;
+        // (Object[])Object handle of the method bound to the target, null if the method isn't accessible to it.
+        @Nullable MethodHandle invoker;
 
         private StepInfo() {}
 
+        /**
+         * Call the method on the target without going through the Spring proxy.
+         * @param arguments method arguments
+         * @return method result
+         * @throws InvocationTargetException wrapping whatever the method threw
+         */
+        @Nullable
+        Object invoke(@Nullable Object[] arguments) throws InvocationTargetException {
+            if (invoker == null) {
+                try {
+                    return Objects.requireNonNull(method).invoke(target, arguments);
+                } catch (IllegalAccessException e) {
+                    throw new KanalarzException.KanalarzInternalError(e.getMessage(), e);
+                }
+            }
+            try {
+                return (Object) invoker.invokeExact(arguments);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+
         public static StepInfo createNew(
             Object target,
             Method method,
@@ -44,6 +75,8 @@ class StepInfoClasses {
                 step,
                 null,
                 null,
+                KanalarzStepsRegistry.stepIdentifier(stepsHolder, step),
+                step.fallible(),
                 returnIsSecret,
                 false
             );
@@ -63,6 +96,8 @@ class StepInfoClasses {
                 null,
                 rollback,
                 null,
+                KanalarzStepsRegistry.rollbackIdentifier(stepsHolder, rollback),
+                rollback.fallible(),
                 returnIsSecret,
                 false
             );
@@ -83,6 +118,8 @@ class StepInfoClasses {
                     null,
                     null,
                     rollbackOnly,
+                    KanalarzStepsRegistry.stepIdentifier(stepsHolder, rollbackOnly),
+                    false,
                     returnIsSecret,
                     true
                 ),
@@ -93,6 +130,8 @@ class StepInfoClasses {
                     null,
                     null,
                     rollbackOnly,
+                    KanalarzStepsRegistry.rollbackIdentifier(stepsHolder, rollbackOnly),
+                    rollbackOnly.fallible(),
                     returnIsSecret,
                     false
                 )
@@ -106,11 +145,15 @@ class StepInfoClasses {
             @Nullable Step step,
             @Nullable Rollback rollback,
             @Nullable RollbackOnly rollbackOnly,
+            String identifier,
+            boolean fallible,
             boolean returnIsSecret,
             boolean rollbackMarker
         ) {
             var stepInfo = new StepInfo();
             stepInfo.stepsHolder = stepsHolder;
+            stepInfo.identifier = identifier;
+            stepInfo.fallible = fallible;
             stepInfo.target = target;
             stepInfo.method = method;
             stepInfo.step = step;
@@ -127,6 +170,10 @@ class StepInfoClasses {
                         .orElse(null);
             }
 
+            if (!rollbackMarker) {
+                stepInfo.invoker = createInvoker(target, method);
+            }
+
             stepInfo.returnType = method.getGenericReturnType();
             stepInfo.isReturnTypeNonNullable = Utils.isReturnTypeNonNullable(method);
             stepInfo.paramsInfo = new ArrayList<>(method.getParameterCount());
@@ -137,6 +184,20 @@ class StepInfoClasses {
         }
     }
 
+    @Nullable
+    private static MethodHandle createInvoker(Object target, Method method) {
+        try {
+            method.trySetAccessible();
+            return MethodHandles.lookup()
+                .unreflect(method)
+                .bindTo(target)
+                .asSpreader(Object[].class, method.getParameterCount())
+                .asType(MethodType.methodType(Object.class, Object[].class));
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
     static class ParamInfo {
         String paramName;
         Type type;
@@ -5,22 +5,24 @@ import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 
 import java.util.*;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.stream.Collectors;
 
 @NullMarked
 class StepReplayer {
 
-    private final SequencedMap<String, StepExecutedInfo> executionPathToStep;
-    private final Set<String> replayed;
+    // Steps in the order they were executed, used for error messages.
+    private final List<StepExecutedInfo> steps;
+    // Steps sorted by execution path, so the nested steps of a step form a contiguous range right after it.
+    private final String[] sortedPaths;
+    private final StepExecutedInfo[] sortedSteps;
+    private final ReplayedSet replayed;
 
     private final KanalarzSerialization serialization;
     private final KanalarzStepsRegistry stepsRegistry;
     private volatile boolean poisoned = false;
 
-    private final Lock lock = new ReentrantLock();
-
     public StepReplayer(
         List<StepExecutedInfo> steps,
         KanalarzSerialization serialization,
@@ -29,28 +31,41 @@ class StepReplayer {
         this.serialization = serialization;
         this.stepsRegistry = stepsRegistry;
 
-        this.executionPathToStep = new LinkedHashMap<>(steps.size());
-        this.replayed = new HashSet<>(steps.size());
+        // a step executed again at the same path replaces the previous execution
+        var executionPathToStep = new LinkedHashMap<String, StepExecutedInfo>(steps.size());
         for (var step : steps) {
             executionPathToStep.put(step.executionPath(), step);
         }
+
+        this.steps = List.copyOf(executionPathToStep.sequencedValues());
+        this.sortedSteps = this.steps.toArray(new StepExecutedInfo[0]);
+        Arrays.sort(this.sortedSteps, Comparator.comparing(StepExecutedInfo::executionPath));
+        this.sortedPaths = new String[sortedSteps.length];
+        for (int i = 0; i < sortedSteps.length; i++) {
+            sortedPaths[i] = sortedSteps[i].executionPath();
+        }
+        this.replayed = new ReplayedSet(sortedSteps.length);
     }
 
-    public SearchResult findNextStep(String executionPath, String stepIdentifier, String serializedParametersInfo) {
+    public SearchResult findNextStep(
+        String executionPath,
+        String stepIdentifier,
+        KanalarzSerialization.SerializedParameters parameters
+    ) {
         if (poisoned) {
             throw new KanalarzException.KanalarzContextPoisonedException();
         }
 
-        lock.lock();
         try {
 
-            var step = executionPathToStep.get(executionPath);
-            if (step == null) {
+            var position = Arrays.binarySearch(sortedPaths, executionPath);
+            if (position < 0) {
                 throw new KanalarzException.KanalarzNewStepBeforeReplayEndedException(
                     "[%s] with execution path [%s] was called but following steps weren't yet replayed:\n%s"
                         .formatted(stepIdentifier, executionPath, unreplayedStepsInfo())
                 );
             }
+            var step = sortedSteps[position];
             if (!step.stepIdentifier().equals(stepIdentifier)) {
                 throw new KanalarzException.KanalarzNewStepBeforeReplayEndedException(
                     ("[%s] with execution path [%s] was called but expected [%s] to be called at this position. " +
@@ -58,24 +73,21 @@ class StepReplayer {
                         .formatted(stepIdentifier, executionPath, step.stepIdentifier(), unreplayedStepsInfo())
                 );
             }
-            if (!replayed.add(executionPath)) {
+            if (!replayed.add(position)) {
                 throw new KanalarzException.KanalarzInternalError(
                     "StepReplayer has been called with the same path multiple times: [%s]. Steps left:\n%s"
                         .formatted(executionPath, unreplayedStepsInfo()), null
                 );
             }
 
-            if (!serialization.parametersAreEqualIgnoringReturn(
-                step.serializedExecutionResult(),
-                serializedParametersInfo
-            )) {
+            if (!parametersMatch(step, parameters)) {
                 throw new KanalarzException.KanalarzNewStepBeforeReplayEndedException(
                     ("[%s] with execution path [%s] was called but different parameters than in the previous run. " +
                         "Expected [%s], but got [%s]").formatted(
                         stepIdentifier,
                         executionPath,
                         step.serializedExecutionResult(),
-                        serializedParametersInfo
+                        parameters.serialized()
                     )
                 );
             }
@@ -86,38 +98,41 @@ class StepReplayer {
 
             var stepInfo = stepsRegistry.getStepInfoOrThrow(step.stepIdentifier());
 
-            var result = new SearchResult.Found(serialization.deserializeParameters(
+            var result = new SearchResult.Found(serialization.deserializeResult(
                 step.serializedExecutionResult(),
-                Utils.makeDeserializeParamsInfo(stepInfo.paramsInfo),
                 stepInfo.returnType
             ).executionResult());
 
-            markChildrenAsReplayed(step.executionPath());
+            markChildrenAsReplayed(executionPath);
 
             return result;
 
         } catch (Throwable throwable) {
             poisoned = true;
             throw throwable;
-        } finally {
-            lock.unlock();
         }
     }
 
+    private boolean parametersMatch(StepExecutedInfo step, KanalarzSerialization.SerializedParameters parameters) {
+        var fingerprint = parameters.fingerprint();
+        if (fingerprint != null && fingerprint.equals(step.parametersFingerprint())) {
+            return true;
+        }
+        return serialization.parametersAreEqualIgnoringReturn(
+            step.serializedExecutionResult(),
+            parameters.serialized()
+        );
+    }
+
     public boolean isDone() {
         if (poisoned) {
             return false;
         }
 
-        lock.lock();
-        try {
-            // Performance optimization:
-            // the replayed set can only hold elements from the executionPathToStep keyset
-            // therefore Set.equals can be replaced with a size equality check.
-            return replayed.size() == executionPathToStep.size();
-        } finally {
-            lock.unlock();
-        }
+        // Performance optimization:
+        // the replayed set can only hold positions of persisted steps
+        // therefore Set.equals can be replaced with a size equality check.
+        return replayed.size() == sortedSteps.length;
     }
 
     sealed interface SearchResult {
@@ -127,20 +142,83 @@ class StepReplayer {
     }
 
     public String unreplayedStepsInfo() {
-        return executionPathToStep.sequencedValues().stream()
-            .filter(it -> !replayed.contains(it.executionPath()))
+        var unreplayed = new ArrayList<StepExecutedInfo>();
+        for (var step : steps) {
+            if (!replayed.contains(Arrays.binarySearch(sortedPaths, step.executionPath()))) {
+                unreplayed.add(step);
+            }
+        }
+
+        return unreplayed.stream()
             .map(it -> "\t- [%s] with identifier [%s]".formatted(it.executionPath(), it.stepIdentifier()))
             .limit(10)
             .collect(Collectors.joining("\n")) +
-            (executionPathToStep.size() > 10
-                ? "\n\t and [" + (executionPathToStep.size() - 10) + "]more..."
+            (unreplayed.size() > 10
+                ? "\n\t and [" + (unreplayed.size() - 10) + "]more..."
                 :  "");
     }
 
     private void markChildrenAsReplayed(String parentPath) {
-        String prefix = parentPath + ".";
-        executionPathToStep.keySet().stream()
-            .filter(path -> path.startsWith(prefix))
-            .forEach(replayed::add);
+        // '/' directly follows '.', so [parent + ".", parent + "/") is exactly the range of nested paths
+        var from = lowerBound(parentPath + ".");
+        var to = lowerBound(parentPath + "/");
+        replayed.addRange(from, to);
+    }
+
+    private int lowerBound(String path) {
+        var position = Arrays.binarySearch(sortedPaths, path);
+        return position >= 0 ? position : -(position + 1);
+    }
+
+    /**
+     * Lock-free set of replayed step positions. Fork branches replay disjoint ranges of positions concurrently,
+     * so instead of locking, every word of the bitset is updated with compare-and-set.
+     */
+    private static class ReplayedSet {
+
+        private final AtomicLongArray words;
+        private final AtomicInteger size = new AtomicInteger();
+
+        ReplayedSet(int capacity) {
+            this.words = new AtomicLongArray((capacity + 63) >>> 6);
+        }
+
+        boolean add(int position) {
+            return setBits(position >>> 6, 1L << position) == 1;
+        }
+
+        void addRange(int from, int to) {
+            for (int position = from; position < to; ) {
+                int word = position >>> 6;
+                int wordEnd = Math.min(to, (word + 1) << 6);
+                long mask = (-1L >>> (64 - (wordEnd - position))) << position;
+                setBits(word, mask);
+                position = wordEnd;
+            }
+        }
+
+        boolean contains(int position) {
+            return (words.get(position >>> 6) & (1L << position)) != 0;
+        }
+
+        int size() {
+            return size.get();
+        }
+
+        // Returns the number of bits that weren't set before.
+        private int setBits(int word, long mask) {
+            while (true) {
+                long current = words.get(word);
+                long updated = current | mask;
+                if (current == updated) {
+                    return 0;
+                }
+                if (words.compareAndSet(word, current, updated)) {
+                    int added = Long.bitCount(updated & ~current);
+                    size.addAndGet(added);
+                    return added;
+                }
+            }
+        }
     }
 }
@@ -16,8 +16,11 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @NullMarked
 class Utils {
@@ -212,6 +215,20 @@ class Utils {
             .orElse(null);
     }
 
+    static <T, R> Iterator<R> mapIterator(Iterator<T> iterator, Function<T, R> mapper) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public R next() {
+                return mapper.apply(iterator.next());
+            }
+        };
+    }
+
     static ArrayList<KanalarzSerialization.SerializeParameterInfo> makeSerializeParametersInfo(
         @Nullable Object[] arguments,
         StepInfoClasses.StepInfo stepInfo
@@ -239,6 +256,20 @@ class Utils {
             .toList();
     }
 
+    static List<KanalarzSerialization.DeserializeParameterInfo>
+    makeDeserializeParamsInfo(
+        List<StepInfoClasses.ParamInfo> rollforwardParamsInfo,
+        List<StepInfoClasses.ParamInfo> rollbackParamsInfo
+    ) {
+        var usedNames = rollbackParamsInfo.stream()
+            .filter(it -> !it.isRollforwardOutput)
+            .map(it -> it.paramName)
+            .collect(Collectors.toSet());
+        return makeDeserializeParamsInfo(
+            rollforwardParamsInfo.stream().filter(it -> usedNames.contains(it.paramName)).toList()
+        );
+    }
+
     @Nullable
     static Object voidOrUnitValue(Type type) {
         if (type.equals(void.class) || type.equals(Void.class)) {
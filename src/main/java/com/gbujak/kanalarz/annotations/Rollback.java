@@ -12,6 +12,10 @@ import java.lang.annotation.*;
  * Rollforward output can be injected with {@link RollforwardOut}.
  * Types and nullability are validated when the Spring context starts.
  * <p>
+ * A {@link #batched()} rollback rolls back many rollforwards with one call. Each of its parameters is a
+ * {@link java.util.List} of the values of the matching rollforward parameter (or output), one element per rolled back
+ * step, newest first.
+ * <p>
  * <b>If history is persisted, keep rollback signatures backward compatible for already stored steps.</b>
  */
 @Retention(RetentionPolicy.RUNTIME)
@@ -34,4 +38,18 @@ public @interface Rollback {
      * @return true when rollback should be treated as fallible
      */
     boolean fallible() default false;
+
+    /**
+     * If true, consecutive rollforwards of this step in the same context and fork task are rolled back with a single
+     * call and a single pair of rollback events. Every parameter must be a {@link java.util.List} of the rollforward
+     * parameter type, primitives boxed.
+     * @return true when rollback takes a batch of rollforwards
+     */
+    boolean batched() default false;
+
+    /**
+     * Max number of rollforwards in a single call of a {@link #batched()} rollback.
+     * @return max batch size, must be at least 1
+     */
+    int maxBatchSize() default 1000;
 }
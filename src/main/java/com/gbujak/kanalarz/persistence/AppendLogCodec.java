@@ -0,0 +1,419 @@
+package com.gbujak.kanalarz.persistence;
+
+import com.gbujak.kanalarz.KanalarzPersistence.ContextFinishedEvent;
+import com.gbujak.kanalarz.KanalarzPersistence.ContextOutcome;
+import com.gbujak.kanalarz.KanalarzPersistence.ContextRollbackState;
+import com.gbujak.kanalarz.KanalarzPersistence.ContextStartedEvent;
+import com.gbujak.kanalarz.KanalarzPersistence.StepCompletedEvent;
+import com.gbujak.kanalarz.KanalarzPersistence.StepStartedEvent;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary format of the append log. A record is a header of the payload length and its CRC32C, both ints,
+ * followed by the payload. Step events:
+ * <pre>
+ * byte type (1 started, 2 completed)
+ * uuid stepId
+ * int contextCount, uuid[] contexts
+ * optional uuid parentStepId
+ * optional uuid stepIsRollbackFor
+ * int metadataCount, (string key, string value)[] metadata
+ * string stepIdentifier
+ * string serializedParameters or serializedExecutionResult
+ * byte flags (1 fallible or failed, 2 rollback marker)
+ * string executionPath
+ * nullable string parametersFingerprint
+ * int batchedCount, uuid[] batchedRollbackFor
+ * </pre>
+ * Context lifecycle events:
+ * <pre>
+ * byte type (3 started, 4 finished)
+ * uuid contextId
+ * optional uuid parentContextId
+ * byte flags (1 resumed, 2 rollback only)
+ * int metadataCount, (string key, string value)[] metadata
+ * long startedAt epoch second, int startedAt nano
+ * finished only: byte outcome ordinal, byte rollbackState ordinal, long duration nanos
+ * </pre>
+ * Strings are an int byte length (-1 for null) followed by UTF-8 bytes, optionals a byte presence flag.
+ * Step descriptions aren't stored, they come from the step annotations.
+ */
+@NullMarked
+final class AppendLogCodec {
+
+    static final int HEADER_SIZE = 8;
+
+    private static final byte STARTED = 1;
+    private static final byte COMPLETED = 2;
+    private static final byte CONTEXT_STARTED = 3;
+    private static final byte CONTEXT_FINISHED = 4;
+    private static final byte FLAG_RESUMED = 1;
+    private static final byte FLAG_ROLLBACK_ONLY = 2;
+    private static final byte FLAG_FALLIBLE_OR_FAILED = 1;
+    private static final byte FLAG_ROLLBACK_MARKER = 2;
+
+    private AppendLogCodec() { }
+
+    /**
+     * Encode a step event or a context lifecycle event into a record.
+     * @param event event to encode
+     * @return record with its header
+     */
+    static byte[] encode(Object event) {
+        var writer = new Writer();
+        writer.skip(HEADER_SIZE);
+        switch (event) {
+            case StepStartedEvent started -> {
+                writer.writeByte(STARTED);
+                writeCommon(writer, started.stepId(), started.contexts(), started.parentStepId(),
+                    started.stepIsRollbackFor(), started.metadata(), started.stepIdentifier());
+                writer.writeString(started.serializedParameters());
+                writer.writeByte(flags(started.isFallible(), started.isRollbackMarker()));
+                writer.writeString(started.executionPath());
+                writer.writeString(started.parametersFingerprint());
+                writeUuids(writer, started.batchedRollbackFor());
+            }
+            case StepCompletedEvent completed -> {
+                writer.writeByte(COMPLETED);
+                writeCommon(writer, completed.stepId(), completed.contexts(), completed.parentStepId(),
+                    completed.stepIsRollbackFor(), completed.metadata(), completed.stepIdentifier());
+                writer.writeString(completed.serializedExecutionResult());
+                writer.writeByte(flags(completed.failed(), completed.isRollbackMarker()));
+                writer.writeString(completed.executionPath());
+                writer.writeString(completed.parametersFingerprint());
+                writeUuids(writer, completed.batchedRollbackFor());
+            }
+            case ContextStartedEvent started -> {
+                writer.writeByte(CONTEXT_STARTED);
+                writeContextCommon(writer, started.contextId(), started.parentContextId(), started.resumed(),
+                    started.rollbackOnly(), started.metadata(), started.startedAt());
+            }
+            case ContextFinishedEvent finished -> {
+                writer.writeByte(CONTEXT_FINISHED);
+                writeContextCommon(writer, finished.contextId(), finished.parentContextId(), false,
+                    finished.rollbackOnly(), finished.metadata(), finished.startedAt());
+                writer.writeByte((byte) finished.outcome().ordinal());
+                writer.writeByte((byte) finished.rollbackState().ordinal());
+                writer.writeLong(finished.duration().toNanos());
+            }
+            default -> throw new IllegalArgumentException("Not an append log event: " + event.getClass());
+        }
+
+        var record = writer.toByteArray();
+        var payloadLength = record.length - HEADER_SIZE;
+        var crc = new CRC32C();
+        crc.update(record, HEADER_SIZE, payloadLength);
+        ByteBuffer.wrap(record).putInt(payloadLength).putInt((int) crc.getValue());
+        return record;
+    }
+
+    /**
+     * Check the record at the buffer position and move the position past it.
+     * @param buffer buffer positioned at a record header
+     * @return payload of the record, or null if the record is incomplete or corrupted
+     */
+    @Nullable
+    static ByteBuffer readRecord(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE) {
+            return null;
+        }
+        var start = buffer.position();
+        var payloadLength = buffer.getInt(start);
+        var expectedCrc = buffer.getInt(start + 4);
+        if (payloadLength <= 0 || payloadLength > buffer.remaining() - HEADER_SIZE) {
+            return null;
+        }
+
+        var payload = buffer.slice(start + HEADER_SIZE, payloadLength);
+        var crc = new CRC32C();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != expectedCrc) {
+            return null;
+        }
+
+        buffer.position(start + HEADER_SIZE + payloadLength);
+        return payload;
+    }
+
+    /**
+     * Decode a payload returned by {@link #readRecord(ByteBuffer)}.
+     * @param payload record payload
+     * @return decoded step event without a description, or context lifecycle event
+     * @throws IllegalStateException if the payload isn't a valid event
+     */
+    static Record decode(ByteBuffer payload) {
+        try {
+            var type = payload.get();
+            if (type == CONTEXT_STARTED || type == CONTEXT_FINISHED) {
+                return decodeContextEvent(type, payload);
+            }
+            var stepId = readUuid(payload);
+            var contextCount = payload.getInt();
+            var contexts = new ArrayList<UUID>(contextCount);
+            for (int i = 0; i < contextCount; i++) {
+                contexts.add(readUuid(payload));
+            }
+            var parentStepId = readOptionalUuid(payload);
+            var stepIsRollbackFor = readOptionalUuid(payload);
+            var metadata = readMetadata(payload);
+            var stepIdentifier = readNonNullString(payload);
+            var serialized = readNonNullString(payload);
+            var flags = payload.get();
+            var executionPath = readNonNullString(payload);
+            var parametersFingerprint = readString(payload);
+            var batchedRollbackFor = readUuids(payload);
+
+            return switch (type) {
+                case STARTED -> new StepStartedEvent(
+                    List.copyOf(contexts),
+                    stepId,
+                    parentStepId,
+                    stepIsRollbackFor,
+                    metadata,
+                    stepIdentifier,
+                    null,
+                    serialized,
+                    (flags & FLAG_FALLIBLE_OR_FAILED) != 0,
+                    (flags & FLAG_ROLLBACK_MARKER) != 0,
+                    executionPath,
+                    parametersFingerprint,
+                    batchedRollbackFor
+                );
+                case COMPLETED -> new StepCompletedEvent(
+                    List.copyOf(contexts),
+                    stepId,
+                    parentStepId,
+                    stepIsRollbackFor,
+                    metadata,
+                    stepIdentifier,
+                    null,
+                    serialized,
+                    (flags & FLAG_FALLIBLE_OR_FAILED) != 0,
+                    (flags & FLAG_ROLLBACK_MARKER) != 0,
+                    executionPath,
+                    parametersFingerprint,
+                    batchedRollbackFor
+                );
+                default -> throw new IllegalStateException("Unknown append log record type: " + type);
+            };
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalStateException("Malformed append log record", e);
+        }
+    }
+
+    private static Record decodeContextEvent(byte type, ByteBuffer payload) {
+        var contextId = readUuid(payload);
+        var parentContextId = readOptionalUuid(payload).orElse(null);
+        var flags = payload.get();
+        var metadata = readMetadata(payload);
+        var startedAt = Instant.ofEpochSecond(payload.getLong(), payload.getInt());
+        if (type == CONTEXT_STARTED) {
+            return new ContextStartedEvent(
+                contextId,
+                parentContextId,
+                (flags & FLAG_RESUMED) != 0,
+                (flags & FLAG_ROLLBACK_ONLY) != 0,
+                metadata,
+                startedAt
+            );
+        }
+        return new ContextFinishedEvent(
+            contextId,
+            parentContextId,
+            (flags & FLAG_ROLLBACK_ONLY) != 0,
+            ContextOutcome.values()[payload.get()],
+            ContextRollbackState.values()[payload.get()],
+            metadata,
+            startedAt,
+            Duration.ofNanos(payload.getLong())
+        );
+    }
+
+    private static void writeContextCommon(
+        Writer writer,
+        UUID contextId,
+        @Nullable UUID parentContextId,
+        boolean resumed,
+        boolean rollbackOnly,
+        Map<String, String> metadata,
+        Instant startedAt
+    ) {
+        writer.writeUuid(contextId);
+        writer.writeOptionalUuid(Optional.ofNullable(parentContextId));
+        writer.writeByte((byte) ((resumed ? FLAG_RESUMED : 0) | (rollbackOnly ? FLAG_ROLLBACK_ONLY : 0)));
+        writeMetadata(writer, metadata);
+        writer.writeLong(startedAt.getEpochSecond());
+        writer.writeInt(startedAt.getNano());
+    }
+
+    private static void writeCommon(
+        Writer writer,
+        UUID stepId,
+        List<UUID> contexts,
+        Optional<UUID> parentStepId,
+        Optional<UUID> stepIsRollbackFor,
+        Map<String, String> metadata,
+        String stepIdentifier
+    ) {
+        writer.writeUuid(stepId);
+        writer.writeInt(contexts.size());
+        for (var context : contexts) {
+            writer.writeUuid(context);
+        }
+        writer.writeOptionalUuid(parentStepId);
+        writer.writeOptionalUuid(stepIsRollbackFor);
+        writeMetadata(writer, metadata);
+        writer.writeString(stepIdentifier);
+    }
+
+    private static void writeUuids(Writer writer, List<UUID> uuids) {
+        writer.writeInt(uuids.size());
+        for (var uuid : uuids) {
+            writer.writeUuid(uuid);
+        }
+    }
+
+    private static List<UUID> readUuids(ByteBuffer buffer) {
+        var count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / 16) {
+            throw new IllegalArgumentException("Illegal uuid count: " + count);
+        }
+        var uuids = new UUID[count];
+        for (int i = 0; i < count; i++) {
+            uuids[i] = readUuid(buffer);
+        }
+        return List.of(uuids);
+    }
+
+    private static void writeMetadata(Writer writer, Map<String, String> metadata) {
+        writer.writeInt(metadata.size());
+        for (var entry : metadata.entrySet()) {
+            writer.writeString(entry.getKey());
+            writer.writeString(entry.getValue());
+        }
+    }
+
+    private static Map<String, String> readMetadata(ByteBuffer buffer) {
+        var metadataCount = buffer.getInt();
+        if (metadataCount < 0) {
+            throw new IllegalArgumentException("Illegal metadata count: " + metadataCount);
+        }
+        var metadata = new HashMap<String, String>(Math.min(metadataCount, buffer.remaining()) * 2);
+        for (int i = 0; i < metadataCount; i++) {
+            metadata.put(readNonNullString(buffer), readNonNullString(buffer));
+        }
+        return Map.copyOf(metadata);
+    }
+
+    private static byte flags(boolean fallibleOrFailed, boolean rollbackMarker) {
+        return (byte) ((fallibleOrFailed ? FLAG_FALLIBLE_OR_FAILED : 0) | (rollbackMarker ? FLAG_ROLLBACK_MARKER : 0));
+    }
+
+    private static UUID readUuid(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    private static Optional<UUID> readOptionalUuid(ByteBuffer buffer) {
+        return buffer.get() != 0 ? Optional.of(readUuid(buffer)) : Optional.empty();
+    }
+
+    @Nullable
+    private static String readString(ByteBuffer buffer) {
+        var length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Illegal string length: " + length);
+        }
+        var bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String readNonNullString(ByteBuffer buffer) {
+        var result = readString(buffer);
+        if (result == null) {
+            throw new IllegalArgumentException("Unexpected null string");
+        }
+        return result;
+    }
+
+    private static final class Writer {
+
+        private byte[] bytes = new byte[256];
+        private int size = 0;
+
+        void skip(int count) {
+            ensureCapacity(count);
+            size += count;
+        }
+
+        void writeByte(byte value) {
+            ensureCapacity(1);
+            bytes[size++] = value;
+        }
+
+        void writeInt(int value) {
+            ensureCapacity(4);
+            ByteBuffer.wrap(bytes, size, 4).putInt(value);
+            size += 4;
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(8);
+            ByteBuffer.wrap(bytes, size, 8).putLong(value);
+            size += 8;
+        }
+
+        void writeUuid(UUID value) {
+            ensureCapacity(16);
+            ByteBuffer.wrap(bytes, size, 16)
+                .putLong(value.getMostSignificantBits())
+                .putLong(value.getLeastSignificantBits());
+            size += 16;
+        }
+
+        void writeOptionalUuid(Optional<UUID> value) {
+            writeByte((byte) (value.isPresent() ? 1 : 0));
+            value.ifPresent(this::writeUuid);
+        }
+
+        void writeString(@Nullable String value) {
+            if (value == null) {
+                writeInt(-1);
+                return;
+            }
+            var encoded = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(encoded.length);
+            ensureCapacity(encoded.length);
+            System.arraycopy(encoded, 0, bytes, size, encoded.length);
+            size += encoded.length;
+        }
+
+        byte[] toByteArray() {
+            return size == bytes.length ? bytes : Arrays.copyOf(bytes, size);
+        }
+
+        private void ensureCapacity(int additional) {
+            if (size + additional > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + additional));
+            }
+        }
+    }
+}
@@ -0,0 +1,605 @@
+package com.gbujak.kanalarz.persistence;
+
+import com.gbujak.kanalarz.KanalarzPersistence;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * {@link KanalarzPersistence} that appends step events to a log of segment files in a local directory, for
+ * single-node deployments without a database.
+ * <p>
+ * Events are appended through a {@link FileChannel}, with a new segment started once the active one exceeds
+ * {@link AppendLogPersistenceSettings#segmentSize()}. With {@link AppendLogPersistenceSettings#fsync()} every write
+ * waits for the log to be forced to the storage device, writers that arrive while a force is running share the
+ * next one. Batches from {@link com.gbujak.kanalarz.Kanalarz.Durability#GROUP_COMMIT} contexts are appended with
+ * a single write and a single force.
+ * <p>
+ * Every context keeps an in-memory index of its steps in the order they started, and a completed event is joined
+ * with its started event when it's written. Reading the history of a context reads only its completed events,
+ * steps that started but never completed are left out. History pages decode only the records of the page. Context
+ * lifecycle events are appended to the same log, the started events of unfinished root contexts are kept in memory
+ * for {@link #getUnfinishedContexts(Instant, int)}.
+ * <p>
+ * Steps run on interruptible threads and {@link FileChannel} closes itself when a thread is interrupted during I/O.
+ * A segment closed that way is reopened and the I/O retried with the interrupt held back until it's done, so an
+ * interrupted caller never closes the log for the others.
+ * <p>
+ * On startup all segments are scanned to rebuild the index. A torn or corrupted record at the end of the last
+ * segment, left by a crash during a write, is truncated. Segments are never deleted.
+ * <p>
+ * Close it to release the files, Spring does that for a bean.
+ */
+@NullMarked
+public final class AppendLogPersistence implements KanalarzPersistence, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(AppendLogPersistence.class);
+
+    // Location of a record: segment number in the high bits, offset in the segment in the low bits.
+    private static final int OFFSET_BITS = 40;
+    private static final int RECOVERY_BUFFER_SIZE = 1024 * 1024;
+    private static final int MAX_RECORD_SIZE = Integer.MAX_VALUE - 8;
+    static final long MAX_SEGMENT_SIZE = (1L << OFFSET_BITS) - 1;
+
+    private interface SegmentIo<T> {
+        T run(FileChannel channel) throws IOException;
+    }
+
+    private static final class StepLocation {
+        final UUID stepId;
+        long completed = -1;
+
+        StepLocation(UUID stepId) {
+            this.stepId = stepId;
+        }
+    }
+
+    private final AppendLogPersistenceSettings settings;
+    // Channels of all segments by segment number, the last one is appended to.
+    private final List<FileChannel> segments = new CopyOnWriteArrayList<>();
+
+    // Guards appends and the index, reads hold it only to copy the locations of a context.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<UUID, List<StepLocation>> contextSteps = new HashMap<>();
+    private final Map<UUID, StepLocation> startedSteps = new HashMap<>();
+    // Latest started events of root contexts without a finished event after them.
+    private final Map<UUID, ContextStartedEvent> unfinishedContexts = new LinkedHashMap<>();
+    private long activeSegmentSize;
+    private long appendedBytes = 0;
+
+    private final ReentrantLock forceLock = new ReentrantLock();
+    // Guards replacing a segment channel closed by an interrupt against closing the log.
+    private final ReentrantLock reopenLock = new ReentrantLock();
+    private volatile long durableBytes = 0;
+    private volatile boolean closed = false;
+
+    /**
+     * Open the log in the settings directory, creating it if needed, and recover the index from existing segments.
+     * @param settings log settings
+     * @throws UncheckedIOException if the log can't be opened
+     * @throws IllegalStateException if a segment other than the last one is corrupted
+     */
+    public AppendLogPersistence(AppendLogPersistenceSettings settings) {
+        this.settings = settings;
+        try {
+            Files.createDirectories(settings.directory());
+            recover();
+        } catch (IOException e) {
+            closeSegments();
+            throw new UncheckedIOException("Failed to open the append log in " + settings.directory(), e);
+        } catch (RuntimeException e) {
+            closeSegments();
+            throw e;
+        }
+    }
+
+    @Override
+    public void stepStarted(StepStartedEvent stepStartedEvent) {
+        append(List.of(stepStartedEvent));
+    }
+
+    @Override
+    public void stepCompleted(StepCompletedEvent stepCompletedEvent) {
+        append(List.of(stepCompletedEvent));
+    }
+
+    @Override
+    public void stepEventsBatch(List<StepEvent> events) {
+        append(events);
+    }
+
+    @Override
+    public void contextStarted(ContextStartedEvent contextStartedEvent) {
+        append(List.of(contextStartedEvent));
+    }
+
+    @Override
+    public void contextFinished(ContextFinishedEvent contextFinishedEvent) {
+        append(List.of(contextFinishedEvent));
+    }
+
+    @Override
+    public List<ContextStartedEvent> getUnfinishedContexts(Instant startedBefore, int limit) {
+        lock.readLock().lock();
+        try {
+            return unfinishedContexts.values().stream()
+                .filter(it -> it.startedAt().isBefore(startedBefore))
+                .sorted(Comparator.comparing(ContextStartedEvent::startedAt))
+                .limit(limit)
+                .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<StepExecutedInfo> getExecutedStepsInContextInOrderOfExecutionStarted(UUID contextId) {
+        long[] completedLocations;
+        lock.readLock().lock();
+        try {
+            var steps = contextSteps.getOrDefault(contextId, List.of());
+            completedLocations = new long[steps.size()];
+            int count = 0;
+            for (var step : steps) {
+                if (step.completed != -1) {
+                    completedLocations[count++] = step.completed;
+                }
+            }
+            completedLocations = Arrays.copyOf(completedLocations, count);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        var result = new ArrayList<StepExecutedInfo>(completedLocations.length);
+        for (var location : completedLocations) {
+            result.add(readCompleted(location));
+        }
+        return result;
+    }
+
+    @Override
+    public StepHistoryPage getExecutedStepsPage(
+        UUID contextId,
+        HistoryOrder order,
+        @Nullable UUID cursor,
+        int limit
+    ) {
+        long[] completedLocations;
+        UUID nextCursor = null;
+        lock.readLock().lock();
+        try {
+            var steps = contextSteps.getOrDefault(contextId, List.of());
+            int direction = order == HistoryOrder.NEWEST_FIRST ? -1 : 1;
+            int index;
+            if (cursor == null) {
+                index = direction > 0 ? 0 : steps.size() - 1;
+            } else {
+                var cursorIndex = HistoryCursors.indexOf(steps, cursor, it -> it.stepId);
+                if (cursorIndex == -1) {
+                    return new StepHistoryPage(List.of(), null);
+                }
+                index = cursorIndex + direction;
+            }
+
+            completedLocations = new long[Math.min(limit, steps.size())];
+            int count = 0;
+            while (index >= 0 && index < steps.size() && count < limit) {
+                var step = steps.get(index);
+                if (step.completed != -1) {
+                    completedLocations[count++] = step.completed;
+                }
+                index += direction;
+            }
+            completedLocations = Arrays.copyOf(completedLocations, count);
+            if (index >= 0 && index < steps.size()) {
+                nextCursor = steps.get(index - direction).stepId;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        var result = new ArrayList<StepExecutedInfo>(completedLocations.length);
+        for (var location : completedLocations) {
+            result.add(readCompleted(location));
+        }
+        return new StepHistoryPage(result, nextCursor);
+    }
+
+    private StepExecutedInfo readCompleted(long location) {
+        if (!(readEvent(location) instanceof StepCompletedEvent completed)) {
+            throw new IllegalStateException("Append log index points to a record that isn't a completed event");
+        }
+        return new StepExecutedInfo(
+            completed.contexts(),
+            completed.stepId(),
+            completed.stepIdentifier(),
+            completed.serializedExecutionResult(),
+            completed.parentStepId(),
+            completed.stepIsRollbackFor(),
+            completed.failed(),
+            completed.executionPath(),
+            completed.parametersFingerprint(),
+            completed.batchedRollbackFor()
+        );
+    }
+
+    private void append(List<?> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        var records = new ArrayList<byte[]>(events.size());
+        int batchSize = 0;
+        for (var event : events) {
+            var record = AppendLogCodec.encode(event);
+            records.add(record);
+            batchSize += record.length;
+        }
+        var batch = ByteBuffer.allocate(batchSize);
+        records.forEach(batch::put);
+        batch.flip();
+
+        long appendedUpTo;
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Append log is closed");
+            }
+            if (activeSegmentSize >= settings.segmentSize()) {
+                startNewSegment();
+            }
+            var segmentNumber = segments.size() - 1;
+            var batchPosition = activeSegmentSize;
+            withSegment(segmentNumber, channel -> {
+                // A retry after an interrupt writes the whole batch again over the same bytes.
+                batch.rewind();
+                var position = batchPosition;
+                while (batch.hasRemaining()) {
+                    position += channel.write(batch, position);
+                }
+                return null;
+            });
+
+            var recordPosition = activeSegmentSize;
+            for (int i = 0; i < events.size(); i++) {
+                index(events.get(i), location(segmentNumber, recordPosition));
+                recordPosition += records.get(i).length;
+            }
+            activeSegmentSize = batchPosition + batchSize;
+            appendedBytes += batchSize;
+            appendedUpTo = appendedBytes;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to the append log", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (settings.fsync()) {
+            awaitDurable(appendedUpTo);
+        }
+    }
+
+    // Group fsync: the first writer to get the lock forces everything appended so far, writers queued behind it
+    // find their bytes already durable.
+    private void awaitDurable(long appendedUpTo) {
+        if (durableBytes >= appendedUpTo) {
+            return;
+        }
+        forceLock.lock();
+        try {
+            if (durableBytes >= appendedUpTo) {
+                return;
+            }
+            int segmentNumber;
+            long target;
+            lock.readLock().lock();
+            try {
+                segmentNumber = segments.size() - 1;
+                target = appendedBytes;
+            } finally {
+                lock.readLock().unlock();
+            }
+            // Previous segments were forced when the next one started.
+            force(segmentNumber);
+            durableBytes = target;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to force the append log", e);
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    private void index(Object event, long location) {
+        switch (event) {
+            case StepStartedEvent started -> {
+                var step = new StepLocation(started.stepId());
+                startedSteps.put(started.stepId(), step);
+                for (var context : started.contexts()) {
+                    contextSteps.computeIfAbsent(context, ignored -> new ArrayList<>()).add(step);
+                }
+            }
+            case StepCompletedEvent completed -> {
+                var step = startedSteps.remove(completed.stepId());
+                if (step == null) {
+                    // completed without a started event, keep it at the position it was written at
+                    step = new StepLocation(completed.stepId());
+                    for (var context : completed.contexts()) {
+                        contextSteps.computeIfAbsent(context, ignored -> new ArrayList<>()).add(step);
+                    }
+                }
+                step.completed = location;
+            }
+            case ContextStartedEvent started -> {
+                if (started.parentContextId() == null) {
+                    // Re-inserted so the map stays in order of the latest start.
+                    unfinishedContexts.remove(started.contextId());
+                    unfinishedContexts.put(started.contextId(), started);
+                }
+            }
+            case ContextFinishedEvent finished -> unfinishedContexts.remove(finished.contextId());
+            default -> throw new IllegalArgumentException("Not an append log event: " + event.getClass());
+        }
+    }
+
+    private Record readEvent(long location) {
+        var position = location & MAX_SEGMENT_SIZE;
+        try {
+            var record = withSegment((int) (location >>> OFFSET_BITS), channel -> {
+                var header = ByteBuffer.allocate(AppendLogCodec.HEADER_SIZE);
+                readFully(channel, header, position);
+                var buffer = ByteBuffer.allocate(AppendLogCodec.HEADER_SIZE + header.getInt(0));
+                readFully(channel, buffer, position);
+                return buffer;
+            });
+            record.flip();
+            var payload = AppendLogCodec.readRecord(record);
+            if (payload == null) {
+                throw new IllegalStateException("Corrupted append log record at " + position);
+            }
+            return AppendLogCodec.decode(payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the append log", e);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of an append log segment");
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> segmentFiles;
+        try (Stream<Path> files = Files.list(settings.directory())) {
+            segmentFiles = files
+                .filter(it -> it.getFileName().toString().matches("\\d{20}\\.log"))
+                .sorted()
+                .toList();
+        }
+
+        for (int segmentNumber = 0; segmentNumber < segmentFiles.size(); segmentNumber++) {
+            var file = segmentFiles.get(segmentNumber);
+            if (!file.equals(segmentPath(segmentNumber))) {
+                throw new IllegalStateException("Append log segment is missing: " + segmentPath(segmentNumber));
+            }
+            var channel = openSegment(file);
+            segments.add(channel);
+
+            var validSize = recoverSegment(channel, segmentNumber);
+            var size = channel.size();
+            if (validSize < size) {
+                if (segmentNumber != segmentFiles.size() - 1) {
+                    throw new IllegalStateException(
+                        "Append log segment %s is corrupted at %d".formatted(file, validSize)
+                    );
+                }
+                log.warn("Truncating torn append log tail of [{}] bytes in [{}]", size - validSize, file);
+                channel.truncate(validSize);
+                channel.force(true);
+            }
+            activeSegmentSize = validSize;
+            appendedBytes += validSize;
+        }
+
+        if (segments.isEmpty()) {
+            segments.add(openSegment(segmentPath(0)));
+            activeSegmentSize = 0;
+        }
+        durableBytes = appendedBytes;
+    }
+
+    // Returns the size of the valid prefix of the segment. Reads through the channel instead of mapping the
+    // segment, so segments of any size are recovered and no mapping outlives the recovery.
+    private long recoverSegment(FileChannel channel, int segmentNumber) throws IOException {
+        var size = channel.size();
+        var buffer = ByteBuffer.allocate(RECOVERY_BUFFER_SIZE).flip();
+        long position = 0;
+        while (position < size) {
+            if (buffer.remaining() < AppendLogCodec.HEADER_SIZE) {
+                buffer = fill(channel, buffer, position, AppendLogCodec.HEADER_SIZE);
+                if (buffer.remaining() < AppendLogCodec.HEADER_SIZE) {
+                    return position;
+                }
+            }
+            var recordSize = AppendLogCodec.HEADER_SIZE + (long) buffer.getInt(buffer.position());
+            if (recordSize <= AppendLogCodec.HEADER_SIZE || recordSize > Math.min(size - position, MAX_RECORD_SIZE)) {
+                return position;
+            }
+            if (buffer.remaining() < recordSize) {
+                buffer = fill(channel, buffer, position, (int) recordSize);
+            }
+
+            var payload = AppendLogCodec.readRecord(buffer);
+            if (payload == null) {
+                return position;
+            }
+            Record event;
+            try {
+                event = AppendLogCodec.decode(payload);
+            } catch (IllegalStateException e) {
+                return position;
+            }
+            index(event, location(segmentNumber, position));
+            position += recordSize;
+        }
+        return size;
+    }
+
+    // Keeps the unread bytes of the buffer, which start at the given segment position, and reads after them until
+    // the buffer is full or the segment ends. Grows the buffer if it can't hold minRemaining bytes.
+    private static ByteBuffer fill(
+        FileChannel channel,
+        ByteBuffer buffer,
+        long position,
+        int minRemaining
+    ) throws IOException {
+        if (buffer.capacity() < minRemaining) {
+            var grown = ByteBuffer.allocate(
+                Math.max(minRemaining, (int) Math.min(2L * buffer.capacity(), MAX_RECORD_SIZE))
+            );
+            buffer = grown.put(buffer);
+        } else {
+            buffer.compact();
+        }
+        // The first buffered byte is at the given position.
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.flip();
+    }
+
+    private void startNewSegment() throws IOException {
+        if (settings.fsync()) {
+            force(segments.size() - 1);
+        }
+        segments.add(openSegment(segmentPath(segments.size())));
+        activeSegmentSize = 0;
+    }
+
+    private void force(int segmentNumber) throws IOException {
+        withSegment(segmentNumber, channel -> {
+            channel.force(false);
+            return null;
+        });
+    }
+
+    // Runs the I/O on the segment channel. If the channel was closed by an interrupt, of this thread or of another
+    // one using the channel at the same time, reopens the segment and retries with this thread's interrupt cleared,
+    // then restores the interrupt.
+    private <T> T withSegment(int segmentNumber, SegmentIo<T> io) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                var channel = segments.get(segmentNumber);
+                try {
+                    return io.run(channel);
+                } catch (ClosedChannelException e) {
+                    interrupted |= Thread.interrupted();
+                    if (!reopenSegment(segmentNumber, channel)) {
+                        throw e;
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Returns false if the log is closed.
+    private boolean reopenSegment(int segmentNumber, FileChannel closedChannel) throws IOException {
+        reopenLock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            if (segments.get(segmentNumber) == closedChannel && !closedChannel.isOpen()) {
+                log.warn("Reopening append log segment [{}] closed by an interrupted thread", segmentNumber);
+                segments.set(segmentNumber, openSegment(segmentPath(segmentNumber)));
+            }
+            return true;
+        } finally {
+            reopenLock.unlock();
+        }
+    }
+
+    private FileChannel openSegment(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private Path segmentPath(int segmentNumber) {
+        return settings.directory().resolve("%020d.log".formatted(segmentNumber));
+    }
+
+    private static long location(int segmentNumber, long position) {
+        return ((long) segmentNumber << OFFSET_BITS) | position;
+    }
+
+    /**
+     * Force and close all segments. Writes after closing throw.
+     */
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            try {
+                if (settings.fsync() && !segments.isEmpty()) {
+                    force(segments.size() - 1);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to force the append log", e);
+            } finally {
+                reopenLock.lock();
+                try {
+                    closed = true;
+                    closeSegments();
+                } finally {
+                    reopenLock.unlock();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void closeSegments() {
+        for (var segment : segments) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                log.warn("Failed to close an append log segment", e);
+            }
+        }
+    }
+}
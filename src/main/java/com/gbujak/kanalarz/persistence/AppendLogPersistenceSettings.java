@@ -0,0 +1,43 @@
+package com.gbujak.kanalarz.persistence;
+
+import org.jspecify.annotations.NullMarked;
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * Settings of {@link AppendLogPersistence}.
+ * @param directory directory holding the log segments, created if it doesn't exist
+ * @param segmentSize size in bytes after which a new segment is started, a segment can exceed it by one batch
+ * @param fsync whether a write returns only after the log is forced to the storage device. Concurrent writers share
+ *              a single force. When false, written events survive a JVM crash but not an OS crash or power loss.
+ */
+@NullMarked
+public record AppendLogPersistenceSettings(
+    Path directory,
+    long segmentSize,
+    boolean fsync
+) {
+
+    /**
+     * Validate the settings.
+     * @param directory directory holding the log segments
+     * @param segmentSize size in bytes after which a new segment is started
+     * @param fsync whether writes are forced to the storage device
+     */
+    public AppendLogPersistenceSettings {
+        Objects.requireNonNull(directory);
+        if (segmentSize < 1 || segmentSize > AppendLogPersistence.MAX_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Illegal segment size: " + segmentSize);
+        }
+    }
+
+    /**
+     * Default settings: 64 MiB segments, fsync on every write.
+     * @param directory directory holding the log segments
+     * @return default settings
+     */
+    public static AppendLogPersistenceSettings defaults(Path directory) {
+        return new AppendLogPersistenceSettings(directory, 64L * 1024 * 1024, true);
+    }
+}
@@ -0,0 +1,47 @@
+package com.gbujak.kanalarz.persistence;
+
+import org.jspecify.annotations.NullMarked;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Cursor lookup for the in-process adapters, which keep the steps of a context in a list in start order.
+ */
+@NullMarked
+final class HistoryCursors {
+
+    private HistoryCursors() { }
+
+    /**
+     * Find the position of the cursor step. Step ids are UUIDv7 so the list is almost sorted by them, steps started
+     * concurrently can be written slightly out of order, in which case it falls back to a linear search.
+     * @param steps steps in start order
+     * @param cursor step id to find
+     * @param stepId gets the step id of a list element
+     * @return index of the step, or -1 if it's not in the list
+     */
+    static <T> int indexOf(List<T> steps, UUID cursor, Function<T, UUID> stepId) {
+        int low = 0;
+        int high = steps.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = stepId.apply(steps.get(middle)).compareTo(cursor);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+
+        for (int i = steps.size() - 1; i >= 0; i--) {
+            if (stepId.apply(steps.get(i)).equals(cursor)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
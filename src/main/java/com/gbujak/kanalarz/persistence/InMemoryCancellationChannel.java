@@ -0,0 +1,71 @@
+package com.gbujak.kanalarz.persistence;
+
+import com.gbujak.kanalarz.KanalarzCancellationChannel;
+import org.jspecify.annotations.NullMarked;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * {@link KanalarzCancellationChannel} kept in memory, for tests and for several
+ * {@link com.gbujak.kanalarz.Kanalarz} instances in one JVM. Requests are kept until they're acknowledged.
+ */
+@NullMarked
+public final class InMemoryCancellationChannel implements KanalarzCancellationChannel {
+
+    private final Duration pollInterval;
+    private final Map<UUID, List<CancelRequest>> requests = new HashMap<>();
+
+    /**
+     * Create a channel polled at the given interval.
+     * @param pollInterval poll interval
+     */
+    public InMemoryCancellationChannel(Duration pollInterval) {
+        Objects.requireNonNull(pollInterval);
+        if (pollInterval.isNegative() || pollInterval.isZero()) {
+            throw new IllegalArgumentException("Illegal poll interval: " + pollInterval);
+        }
+        this.pollInterval = pollInterval;
+    }
+
+    @Override
+    public synchronized void publish(CancelRequest request) {
+        requests.computeIfAbsent(request.contextId(), ignored -> new ArrayList<>()).add(request);
+    }
+
+    @Override
+    public synchronized List<CancelRequest> poll(Set<UUID> contextIds) {
+        var result = new ArrayList<CancelRequest>();
+        if (requests.size() < contextIds.size()) {
+            requests.forEach((contextId, contextRequests) -> {
+                if (contextIds.contains(contextId)) {
+                    result.addAll(contextRequests);
+                }
+            });
+        } else {
+            for (var contextId : contextIds) {
+                result.addAll(requests.getOrDefault(contextId, List.of()));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void acknowledge(CancelRequest request) {
+        var contextRequests = requests.get(request.contextId());
+        if (contextRequests != null && contextRequests.remove(request) && contextRequests.isEmpty()) {
+            requests.remove(request.contextId());
+        }
+    }
+
+    @Override
+    public Duration pollInterval() {
+        return pollInterval;
+    }
+}
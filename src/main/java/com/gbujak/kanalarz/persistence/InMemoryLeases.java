@@ -0,0 +1,74 @@
+package com.gbujak.kanalarz.persistence;
+
+import com.gbujak.kanalarz.KanalarzLeases;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link KanalarzLeases} kept in memory, for tests and for several {@link com.gbujak.kanalarz.Kanalarz} instances
+ * in one JVM. Fencing tokens come from a single counter, so they grow across all contexts.
+ */
+@NullMarked
+public final class InMemoryLeases implements KanalarzLeases {
+
+    private record Holder(long fencingToken, long expiresAtNanos) { }
+
+    private final Duration ttl;
+    private final LongSupplier nanoTime;
+    private final Map<UUID, Holder> holders = new HashMap<>();
+    private long lastFencingToken = 0;
+
+    /**
+     * Create leases valid for the given time after they're acquired or renewed.
+     * @param ttl lease validity
+     */
+    public InMemoryLeases(Duration ttl) {
+        this(ttl, System::nanoTime);
+    }
+
+    InMemoryLeases(Duration ttl, LongSupplier nanoTime) {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Illegal lease ttl: " + ttl);
+        }
+        this.ttl = ttl;
+        this.nanoTime = nanoTime;
+    }
+
+    @Override
+    @Nullable
+    public synchronized Lease tryAcquire(UUID contextId) {
+        var now = nanoTime.getAsLong();
+        var holder = holders.get(contextId);
+        if (holder != null && now - holder.expiresAtNanos() < 0) {
+            return null;
+        }
+        var fencingToken = ++lastFencingToken;
+        holders.put(contextId, new Holder(fencingToken, now + ttl.toNanos()));
+        return new Lease(contextId, fencingToken, ttl);
+    }
+
+    @Override
+    public synchronized boolean renew(Lease lease) {
+        var now = nanoTime.getAsLong();
+        var holder = holders.get(lease.contextId());
+        if (holder == null || holder.fencingToken() != lease.fencingToken() || now - holder.expiresAtNanos() >= 0) {
+            return false;
+        }
+        holders.put(lease.contextId(), new Holder(lease.fencingToken(), now + ttl.toNanos()));
+        return true;
+    }
+
+    @Override
+    public synchronized void release(Lease lease) {
+        var holder = holders.get(lease.contextId());
+        if (holder != null && holder.fencingToken() == lease.fencingToken()) {
+            holders.remove(lease.contextId());
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.gbujak.kanalarz.persistence;
+
+import com.gbujak.kanalarz.KanalarzPersistence;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link KanalarzPersistence} keeping the step history in memory, for pipelines that only need rollback inside the
+ * running process and are never resumed after a restart.
+ * <p>
+ * Every context keeps its steps in the order they started, and a completed event is joined with its started event
+ * by the step id when it's written. Reading the history of a context returns only its completed steps, history
+ * pages are read by the position of the cursor step.
+ * <p>
+ * Contexts without running steps are evicted when they've been idle for longer than
+ * {@link InMemoryPersistenceSettings#idleTimeout()}. Finished contexts, the ones whose last started event is followed
+ * by a finished event, are also evicted least recently used first when there are more than
+ * {@link InMemoryPersistenceSettings#maxContexts()} contexts or their history takes more than
+ * {@link InMemoryPersistenceSettings#maxBytes()}. Contexts still running, paused between steps or not, only expire,
+ * so their rollback never sees a partial history. Resuming an evicted context starts it from scratch and a deferred
+ * rollback of an evicted context rolls back nothing, so size the limits above the time contexts are expected to
+ * wait for a deferred rollback.
+ */
+@NullMarked
+public final class InMemoryPersistence implements KanalarzPersistence {
+
+    // Rough size of a step and its bookkeeping without the strings, used for the memory budget.
+    private static final long STEP_OVERHEAD_BYTES = 256;
+
+    private static final class StoredStep {
+        final UUID stepId;
+        final List<UUID> contexts;
+        final long startedBytes;
+        @Nullable StepExecutedInfo completed = null;
+
+        StoredStep(UUID stepId, List<UUID> contexts, long startedBytes) {
+            this.stepId = stepId;
+            this.contexts = contexts;
+            this.startedBytes = startedBytes;
+        }
+    }
+
+    private static final class ContextSteps {
+        final List<StoredStep> steps = new ArrayList<>();
+        int runningSteps = 0;
+        // Set by a finished event, cleared when the context starts again.
+        boolean finished = false;
+        long bytes = 0;
+        long lastAccessNanos;
+
+        ContextSteps(long lastAccessNanos) {
+            this.lastAccessNanos = lastAccessNanos;
+        }
+    }
+
+    private final InMemoryPersistenceSettings settings;
+    private final LongSupplier nanoTime;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // In access order, the least recently used context first.
+    private final LinkedHashMap<UUID, ContextSteps> contexts = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<UUID, StoredStep> runningSteps = new HashMap<>();
+    private long bytes = 0;
+
+    /**
+     * Create a persistence with the given limits.
+     * @param settings eviction limits
+     */
+    public InMemoryPersistence(InMemoryPersistenceSettings settings) {
+        this(settings, System::nanoTime);
+    }
+
+    InMemoryPersistence(InMemoryPersistenceSettings settings, LongSupplier nanoTime) {
+        this.settings = settings;
+        this.nanoTime = nanoTime;
+    }
+
+    @Override
+    public void stepStarted(StepStartedEvent stepStartedEvent) {
+        lock.lock();
+        try {
+            started(stepStartedEvent, nanoTime.getAsLong());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void stepCompleted(StepCompletedEvent stepCompletedEvent) {
+        lock.lock();
+        try {
+            completed(stepCompletedEvent, nanoTime.getAsLong());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void stepEventsBatch(List<StepEvent> events) {
+        lock.lock();
+        try {
+            var now = nanoTime.getAsLong();
+            for (var event : events) {
+                switch (event) {
+                    case StepStartedEvent started -> started(started, now);
+                    case StepCompletedEvent completed -> completed(completed, now);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void contextStarted(ContextStartedEvent contextStartedEvent) {
+        lock.lock();
+        try {
+            var now = nanoTime.getAsLong();
+            touch(contextStartedEvent.contextId(), now).finished = false;
+            evict(now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void contextFinished(ContextFinishedEvent contextFinishedEvent) {
+        lock.lock();
+        try {
+            var context = contexts.get(contextFinishedEvent.contextId());
+            if (context != null) {
+                context.finished = true;
+            }
+            evict(nanoTime.getAsLong());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<StepExecutedInfo> getExecutedStepsInContextInOrderOfExecutionStarted(UUID contextId) {
+        lock.lock();
+        try {
+            var now = nanoTime.getAsLong();
+            evict(now);
+            var context = contexts.get(contextId);
+            if (context == null) {
+                return List.of();
+            }
+            context.lastAccessNanos = now;
+            var result = new ArrayList<StepExecutedInfo>(context.steps.size());
+            for (var step : context.steps) {
+                if (step.completed != null) {
+                    result.add(step.completed);
+                }
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public StepHistoryPage getExecutedStepsPage(
+        UUID contextId,
+        HistoryOrder order,
+        @Nullable UUID cursor,
+        int limit
+    ) {
+        lock.lock();
+        try {
+            var now = nanoTime.getAsLong();
+            evict(now);
+            var context = contexts.get(contextId);
+            if (context == null) {
+                return new StepHistoryPage(List.of(), null);
+            }
+            context.lastAccessNanos = now;
+
+            var steps = context.steps;
+            int direction = order == HistoryOrder.NEWEST_FIRST ? -1 : 1;
+            int index;
+            if (cursor == null) {
+                index = direction > 0 ? 0 : steps.size() - 1;
+            } else {
+                var cursorIndex = HistoryCursors.indexOf(steps, cursor, it -> it.stepId);
+                if (cursorIndex == -1) {
+                    return new StepHistoryPage(List.of(), null);
+                }
+                index = cursorIndex + direction;
+            }
+
+            var result = new ArrayList<StepExecutedInfo>(Math.min(limit, steps.size()));
+            while (index >= 0 && index < steps.size() && result.size() < limit) {
+                var step = steps.get(index);
+                if (step.completed != null) {
+                    result.add(step.completed);
+                }
+                index += direction;
+            }
+            var hasMore = index >= 0 && index < steps.size();
+            return new StepHistoryPage(result, hasMore ? steps.get(index - direction).stepId : null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void started(StepStartedEvent event, long now) {
+        var step = new StoredStep(event.stepId(), event.contexts(), STEP_OVERHEAD_BYTES);
+        runningSteps.put(event.stepId(), step);
+        for (var contextId : step.contexts) {
+            var context = touch(contextId, now);
+            context.steps.add(step);
+            context.runningSteps++;
+            addBytes(context, step.startedBytes);
+        }
+        evict(now);
+    }
+
+    private void completed(StepCompletedEvent event, long now) {
+        var info = new StepExecutedInfo(
+            event.contexts(),
+            event.stepId(),
+            event.stepIdentifier(),
+            event.serializedExecutionResult(),
+            event.parentStepId(),
+            event.stepIsRollbackFor(),
+            event.failed(),
+            event.executionPath(),
+            event.parametersFingerprint(),
+            event.batchedRollbackFor()
+        );
+        var completedBytes = completedBytes(info);
+
+        var step = runningSteps.remove(event.stepId());
+        var wasRunning = step != null;
+        if (step == null) {
+            // completed without a started event, keep it at the position it was written at
+            step = new StoredStep(event.stepId(), event.contexts(), 0);
+        }
+        step.completed = info;
+
+        for (var contextId : step.contexts) {
+            var context = touch(contextId, now);
+            if (wasRunning) {
+                context.runningSteps--;
+            } else {
+                context.steps.add(step);
+            }
+            addBytes(context, completedBytes - step.startedBytes);
+        }
+        evict(now);
+    }
+
+    private ContextSteps touch(UUID contextId, long now) {
+        var context = contexts.computeIfAbsent(contextId, ignored -> new ContextSteps(now));
+        context.lastAccessNanos = now;
+        return context;
+    }
+
+    private void addBytes(ContextSteps context, long delta) {
+        context.bytes += delta;
+        bytes += delta;
+    }
+
+    private void evict(long now) {
+        var idleTimeoutNanos = settings.idleTimeout().toNanos();
+        var iterator = contexts.values().iterator();
+        while (iterator.hasNext()) {
+            var context = iterator.next();
+            var expired = now - context.lastAccessNanos > idleTimeoutNanos;
+            var overLimit = contexts.size() > settings.maxContexts() || bytes > settings.maxBytes();
+            if (!expired && !overLimit) {
+                // the rest of the contexts were used more recently
+                return;
+            }
+            // Over the limits only finished contexts are evicted, the scan goes on past unfinished ones.
+            if (context.runningSteps == 0 && (expired || context.finished)) {
+                bytes -= context.bytes;
+                iterator.remove();
+            }
+        }
+    }
+
+    private static long completedBytes(StepExecutedInfo info) {
+        var chars = info.stepIdentifier().length()
+            + info.serializedExecutionResult().length()
+            + info.executionPath().length()
+            + (info.parametersFingerprint() != null ? info.parametersFingerprint().length() : 0);
+        return STEP_OVERHEAD_BYTES + 16L * (info.contexts().size() + info.batchedRollbackFor().size()) + 2L * chars;
+    }
+}
@@ -0,0 +1,49 @@
+package com.gbujak.kanalarz.persistence;
+
+import org.jspecify.annotations.NullMarked;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Settings of {@link InMemoryPersistence}. Only contexts without running steps are evicted, the limits can be
+ * exceeded while more contexts are running.
+ * @param maxContexts max number of contexts kept, least recently used are evicted first
+ * @param idleTimeout how long a context is kept after its last step event or history read
+ * @param maxBytes approximate max memory used by the kept step history, least recently used contexts are evicted
+ *                 first
+ */
+@NullMarked
+public record InMemoryPersistenceSettings(
+    int maxContexts,
+    Duration idleTimeout,
+    long maxBytes
+) {
+
+    /**
+     * Validate the settings.
+     * @param maxContexts max number of contexts kept
+     * @param idleTimeout how long an idle context is kept
+     * @param maxBytes approximate max memory used by the step history
+     */
+    public InMemoryPersistenceSettings {
+        if (maxContexts < 1) {
+            throw new IllegalArgumentException("Illegal max contexts: " + maxContexts);
+        }
+        Objects.requireNonNull(idleTimeout);
+        if (idleTimeout.isNegative() || idleTimeout.isZero()) {
+            throw new IllegalArgumentException("Illegal idle timeout: " + idleTimeout);
+        }
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Illegal max bytes: " + maxBytes);
+        }
+    }
+
+    /**
+     * Default settings: up to 10000 contexts kept for 1 hour, 256 MiB of step history.
+     * @return default settings
+     */
+    public static InMemoryPersistenceSettings defaults() {
+        return new InMemoryPersistenceSettings(10_000, Duration.ofHours(1), 256L * 1024 * 1024);
+    }
+}
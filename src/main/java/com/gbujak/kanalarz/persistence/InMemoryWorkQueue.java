@@ -0,0 +1,93 @@
+package com.gbujak.kanalarz.persistence;
+
+import com.gbujak.kanalarz.KanalarzWorkQueue;
+import org.jspecify.annotations.NullMarked;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link KanalarzWorkQueue} kept in memory, for tests and for several {@link com.gbujak.kanalarz.Kanalarz}
+ * instances in one JVM. Nothing survives a restart, use a durable queue in production.
+ */
+@NullMarked
+public final class InMemoryWorkQueue implements KanalarzWorkQueue {
+
+    private record Queued(WorkItem item, long invisibleUntilNanos) { }
+
+    private record Ranked(WorkItem item, int tenantRank) { }
+
+    private record Lane(String tenant, int priority) { }
+
+    private static final Comparator<Ranked> CLAIM_ORDER = Comparator
+        .comparingInt((Ranked it) -> -it.item().priority())
+        .thenComparingInt(Ranked::tenantRank)
+        .thenComparing(it -> it.item().enqueuedAt());
+
+    private final LongSupplier nanoTime;
+    private final Map<UUID, Queued> queued = new LinkedHashMap<>();
+
+    /**
+     * Create an empty queue.
+     */
+    public InMemoryWorkQueue() {
+        this(System::nanoTime);
+    }
+
+    InMemoryWorkQueue(LongSupplier nanoTime) {
+        this.nanoTime = nanoTime;
+    }
+
+    @Override
+    public synchronized void enqueue(WorkItem item) {
+        if (queued.putIfAbsent(item.contextId(), new Queued(item, Long.MIN_VALUE)) != null) {
+            throw new IllegalArgumentException("Context [%s] is already queued".formatted(item.contextId()));
+        }
+    }
+
+    @Override
+    public synchronized List<WorkItem> claim(int limit, Duration visibilityTimeout) {
+        var now = nanoTime.getAsLong();
+        var laneSizes = new HashMap<Lane, Integer>();
+        var visible = new ArrayList<Ranked>();
+        for (var entry : queued.values()) {
+            if (entry.invisibleUntilNanos() != Long.MIN_VALUE && now - entry.invisibleUntilNanos() < 0) {
+                continue;
+            }
+            var item = entry.item();
+            var rank = laneSizes.merge(new Lane(item.tenant(), item.priority()), 1, Integer::sum);
+            visible.add(new Ranked(item, rank));
+        }
+
+        var invisibleUntil = now + visibilityTimeout.toNanos();
+        var claimed = visible.stream()
+            .sorted(CLAIM_ORDER)
+            .limit(limit)
+            .map(Ranked::item)
+            .toList();
+        for (var item : claimed) {
+            queued.put(item.contextId(), new Queued(item, invisibleUntil));
+        }
+        return claimed;
+    }
+
+    @Override
+    public synchronized void complete(WorkItem item) {
+        queued.remove(item.contextId());
+    }
+
+    /**
+     * Number of queued items, claimed or not.
+     * @return queue size
+     */
+    public synchronized int size() {
+        return queued.size();
+    }
+}
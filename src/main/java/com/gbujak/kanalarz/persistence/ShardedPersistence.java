@@ -0,0 +1,281 @@
+package com.gbujak.kanalarz.persistence;
+
+import com.gbujak.kanalarz.KanalarzPersistence;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link KanalarzPersistence} that spreads contexts across several delegate persistences, so step events of
+ * different pipelines are written to different storage instances.
+ * <p>
+ * Every context is owned by one shard, picked by consistent hashing of the context id. A step event is written to
+ * the owner of every context in {@link StepStartedEvent#contexts()}, so a pipeline without nested contexts is
+ * written only to the shard of its root context, and the history of a context is always read from its owner alone.
+ * The completed event of a step is written to the same shards as its started event, context lifecycle events are
+ * written to the owner of the context. While rebalancing, a finished event is also written to the previous owner.
+ * <p>
+ * Adding or removing a shard moves only the contexts whose owner changes, roughly {@code 1/N} of them. To rebalance
+ * without copying histories first, pass the shard list from before the change as {@code previousShards}: new events
+ * go to the new owner, and reads of a context whose owner changed merge the histories of both owners by step id.
+ * Drop the previous shards once the moved histories are copied or no longer needed.
+ */
+@NullMarked
+public final class ShardedPersistence implements KanalarzPersistence {
+
+    private static final int VIRTUAL_NODES_PER_SHARD = 128;
+
+    /**
+     * Delegate persistence with a stable name. The name, not the position in the list, determines which contexts
+     * the shard owns.
+     * @param name unique shard name
+     * @param persistence delegate persistence
+     */
+    public record Shard(String name, KanalarzPersistence persistence) {
+
+        /**
+         * Validate the shard.
+         * @param name unique shard name
+         * @param persistence delegate persistence
+         */
+        public Shard {
+            Objects.requireNonNull(name);
+            Objects.requireNonNull(persistence);
+        }
+    }
+
+    private final HashRing ring;
+    @Nullable private final HashRing previousRing;
+    // Current and previous shards, each once.
+    private final List<Shard> allShards;
+    // Shards the started event of a running step was written to.
+    private final Map<UUID, List<Shard>> runningStepShards = new ConcurrentHashMap<>();
+
+    /**
+     * Create a router over the given shards.
+     * @param shards shards with unique names
+     */
+    public ShardedPersistence(List<Shard> shards) {
+        this(shards, null);
+    }
+
+    /**
+     * Create a router over the given shards while rebalancing from the previous shard list.
+     * @param shards shards with unique names
+     * @param previousShards shards before the change, or null when not rebalancing
+     */
+    public ShardedPersistence(List<Shard> shards, @Nullable List<Shard> previousShards) {
+        this.ring = new HashRing(shards);
+        this.previousRing = previousShards != null ? new HashRing(previousShards) : null;
+        var allShards = new LinkedHashSet<>(shards);
+        if (previousShards != null) {
+            allShards.addAll(previousShards);
+        }
+        this.allShards = List.copyOf(allShards);
+    }
+
+    /**
+     * Get the shard owning a context.
+     * @param contextId context id
+     * @return shard the history of the context is written to
+     */
+    public Shard shardFor(UUID contextId) {
+        return ring.owner(contextId);
+    }
+
+    @Override
+    public void stepStarted(StepStartedEvent stepStartedEvent) {
+        var shards = shardsFor(stepStartedEvent.contexts());
+        runningStepShards.put(stepStartedEvent.stepId(), shards);
+        for (var shard : shards) {
+            shard.persistence().stepStarted(stepStartedEvent);
+        }
+    }
+
+    @Override
+    public void stepCompleted(StepCompletedEvent stepCompletedEvent) {
+        for (var shard : completedShards(stepCompletedEvent)) {
+            shard.persistence().stepCompleted(stepCompletedEvent);
+        }
+    }
+
+    @Override
+    public void stepEventsBatch(List<StepEvent> events) {
+        Map<Shard, List<StepEvent>> batches = new LinkedHashMap<>();
+        for (var event : events) {
+            List<Shard> shards = switch (event) {
+                case StepStartedEvent started -> {
+                    var startedShards = shardsFor(started.contexts());
+                    runningStepShards.put(started.stepId(), startedShards);
+                    yield startedShards;
+                }
+                case StepCompletedEvent completed -> completedShards(completed);
+            };
+            for (var shard : shards) {
+                batches.computeIfAbsent(shard, ignored -> new ArrayList<>()).add(event);
+            }
+        }
+        batches.forEach((shard, batch) -> shard.persistence().stepEventsBatch(batch));
+    }
+
+    @Override
+    public void contextStarted(ContextStartedEvent contextStartedEvent) {
+        ring.owner(contextStartedEvent.contextId()).persistence().contextStarted(contextStartedEvent);
+    }
+
+    @Override
+    public void contextFinished(ContextFinishedEvent contextFinishedEvent) {
+        var owner = ring.owner(contextFinishedEvent.contextId());
+        owner.persistence().contextFinished(contextFinishedEvent);
+        // Also finishes a moved context on the shard it may have been started on.
+        var previousOwner = previousRing != null ? previousRing.owner(contextFinishedEvent.contextId()) : owner;
+        if (!previousOwner.equals(owner)) {
+            previousOwner.persistence().contextFinished(contextFinishedEvent);
+        }
+    }
+
+    @Override
+    public List<ContextStartedEvent> getUnfinishedContexts(Instant startedBefore, int limit) {
+        Map<UUID, ContextStartedEvent> unfinished = new HashMap<>();
+        for (var shard : allShards) {
+            for (var started : shard.persistence().getUnfinishedContexts(startedBefore, limit)) {
+                unfinished.merge(started.contextId(), started,
+                    (first, second) -> first.startedAt().isAfter(second.startedAt()) ? first : second);
+            }
+        }
+        return unfinished.values().stream()
+            .sorted(Comparator.comparing(ContextStartedEvent::startedAt))
+            .limit(limit)
+            .toList();
+    }
+
+    @Override
+    public List<StepExecutedInfo> getExecutedStepsInContextInOrderOfExecutionStarted(UUID contextId) {
+        var owner = ring.owner(contextId);
+        var previousOwner = previousRing != null ? previousRing.owner(contextId) : owner;
+        var steps = owner.persistence().getExecutedStepsInContextInOrderOfExecutionStarted(contextId);
+        if (previousOwner.equals(owner)) {
+            return steps;
+        }
+
+        var previousSteps =
+            previousOwner.persistence().getExecutedStepsInContextInOrderOfExecutionStarted(contextId);
+        var merged = new ArrayList<StepExecutedInfo>(previousSteps.size() + steps.size());
+        Set<UUID> seen = new HashSet<>();
+        for (var step : previousSteps) {
+            if (seen.add(step.stepId())) {
+                merged.add(step);
+            }
+        }
+        for (var step : steps) {
+            if (seen.add(step.stepId())) {
+                merged.add(step);
+            }
+        }
+        // Step ids are UUIDv7, ordered by execution start.
+        merged.sort(Comparator.comparing(StepExecutedInfo::stepId));
+        return merged;
+    }
+
+    @Override
+    public StepHistoryPage getExecutedStepsPage(
+        UUID contextId,
+        HistoryOrder order,
+        @Nullable UUID cursor,
+        int limit
+    ) {
+        var owner = ring.owner(contextId);
+        if (previousRing == null || previousRing.owner(contextId).equals(owner)) {
+            return owner.persistence().getExecutedStepsPage(contextId, order, cursor, limit);
+        }
+        // A moved context, merge the full histories of both owners.
+        return KanalarzPersistence.super.getExecutedStepsPage(contextId, order, cursor, limit);
+    }
+
+    private List<Shard> shardsFor(List<UUID> contexts) {
+        if (contexts.size() == 1) {
+            return List.of(ring.owner(contexts.getFirst()));
+        }
+        var shards = new ArrayList<Shard>(1);
+        for (var contextId : contexts) {
+            var shard = ring.owner(contextId);
+            if (!shards.contains(shard)) {
+                shards.add(shard);
+            }
+        }
+        return shards;
+    }
+
+    private List<Shard> completedShards(StepCompletedEvent event) {
+        var shards = runningStepShards.remove(event.stepId());
+        // Unknown after a restart, the contexts of both events are the same except for rollbacks.
+        return shards != null ? shards : shardsFor(event.contexts());
+    }
+
+    private static final class HashRing {
+
+        private final long[] positions;
+        private final Shard[] owners;
+
+        HashRing(List<Shard> shards) {
+            if (shards.isEmpty()) {
+                throw new IllegalArgumentException("At least one shard is required");
+            }
+            if (shards.stream().map(Shard::name).distinct().count() != shards.size()) {
+                throw new IllegalArgumentException("Shard names must be unique");
+            }
+
+            record Node(long position, Shard shard) { }
+            var nodes = new ArrayList<Node>(shards.size() * VIRTUAL_NODES_PER_SHARD);
+            for (var shard : shards) {
+                for (int i = 0; i < VIRTUAL_NODES_PER_SHARD; i++) {
+                    var node = UUID.nameUUIDFromBytes((shard.name() + "#" + i).getBytes(StandardCharsets.UTF_8));
+                    nodes.add(new Node(node.getMostSignificantBits(), shard));
+                }
+            }
+            // Ties between names are broken by name so every instance builds the same ring.
+            nodes.sort(Comparator.comparingLong(Node::position).thenComparing(it -> it.shard().name()));
+
+            positions = new long[nodes.size()];
+            owners = new Shard[nodes.size()];
+            for (int i = 0; i < nodes.size(); i++) {
+                positions[i] = nodes.get(i).position();
+                owners[i] = nodes.get(i).shard();
+            }
+        }
+
+        Shard owner(UUID contextId) {
+            var hash = mix(contextId.getMostSignificantBits() ^ mix(contextId.getLeastSignificantBits()));
+            var index = Arrays.binarySearch(positions, hash);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return owners[index == positions.length ? 0 : index];
+        }
+
+        // Finalizer of MurmurHash3, UUIDv7 ids share their leading timestamp bits.
+        private static long mix(long value) {
+            value ^= value >>> 33;
+            value *= 0xff51afd7ed558ccdL;
+            value ^= value >>> 33;
+            value *= 0xc4ceb9fe1a85ec53L;
+            value ^= value >>> 33;
+            return value;
+        }
+    }
+}
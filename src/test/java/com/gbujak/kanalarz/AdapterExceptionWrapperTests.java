@@ -3,11 +3,14 @@ package com.gbujak.kanalarz;
 import org.junit.jupiter.api.Test;
 
 import java.lang.reflect.Type;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class AdapterExceptionWrapperTests {
@@ -46,6 +49,85 @@ class AdapterExceptionWrapperTests {
             .hasMessageContaining("Provided serialization bean threw an exception");
     }
 
+    @Test
+    void shouldWrapSerializationExceptionFromSerializeStepStarted() {
+        KanalarzSerialization serialization = new KanalarzSerialization() {
+            @Override
+            public String serializeStepCalled(
+                List<SerializeParameterInfo> parametersInfo,
+                SerializeReturnInfo returnInfo
+            ) {
+                return "";
+            }
+
+            @Override
+            public SerializedParameters serializeStepStarted(List<SerializeParameterInfo> parametersInfo) {
+                throw new RuntimeException("serialize-started-failed");
+            }
+
+            @Override
+            public DeserializeParametersResult deserializeParameters(
+                String serialized,
+                List<DeserializeParameterInfo> parametersInfo,
+                Type returnType
+            ) {
+                return new DeserializeParametersResult(Map.of(), null, null);
+            }
+
+            @Override
+            public boolean parametersAreEqualIgnoringReturn(String left, String right) {
+                return left.equals(right);
+            }
+        };
+
+        var wrapped = new KanalarzSerializationExceptionWrapper(serialization);
+
+        assertThatThrownBy(() -> wrapped.serializeStepStarted(List.of()))
+            .isExactlyInstanceOf(KanalarzException.KanalarzSerializationException.class)
+            .hasCauseExactlyInstanceOf(RuntimeException.class)
+            .hasMessageContaining("serialize-started-failed");
+    }
+
+    @Test
+    void shouldBridgeSinglePassSerializationToSerializeStepCalled() {
+        List<String> calls = new ArrayList<>();
+        KanalarzSerialization serialization = new KanalarzSerialization() {
+            @Override
+            public String serializeStepCalled(
+                List<SerializeParameterInfo> parametersInfo,
+                SerializeReturnInfo returnInfo
+            ) {
+                calls.add(returnInfo == null ? "params" : "params+return");
+                return returnInfo == null ? "p" : "p+r";
+            }
+
+            @Override
+            public DeserializeParametersResult deserializeParameters(
+                String serialized,
+                List<DeserializeParameterInfo> parametersInfo,
+                Type returnType
+            ) {
+                return new DeserializeParametersResult(Map.of(), null, null);
+            }
+
+            @Override
+            public boolean parametersAreEqualIgnoringReturn(String left, String right) {
+                return left.equals(right);
+            }
+        };
+
+        var wrapped = new KanalarzSerializationExceptionWrapper(serialization);
+        var parameters = wrapped.serializeStepStarted(List.of());
+        var completed = wrapped.serializeStepCompleted(
+            parameters,
+            new KanalarzSerialization.SerializeReturnInfo(String.class, "value", null, false)
+        );
+
+        assertThat(parameters.serialized()).isEqualTo("p");
+        assertThat(completed).isEqualTo("p+r");
+        assertThat(calls).containsExactly("params", "params+return");
+    }
+
     @Test
     void shouldWrapSerializationExceptionFromDeserialize() {
         KanalarzSerialization serialization = new KanalarzSerialization() {
@@ -80,6 +162,82 @@ class AdapterExceptionWrapperTests {
             .hasMessageContaining("Provided serialization bean threw an exception");
     }
 
+    @Test
+    void shouldBridgeSelectiveDeserializationToDeserializeParameters() {
+        List<List<String>> requestedParameters = new ArrayList<>();
+        KanalarzSerialization serialization = new KanalarzSerialization() {
+            @Override
+            public String serializeStepCalled(
+                List<SerializeParameterInfo> parametersInfo,
+                SerializeReturnInfo returnInfo
+            ) {
+                return "";
+            }
+
+            @Override
+            public DeserializeParametersResult deserializeParameters(
+                String serialized,
+                List<DeserializeParameterInfo> parametersInfo,
+                Type returnType
+            ) {
+                requestedParameters.add(parametersInfo.stream().map(DeserializeParameterInfo::name).toList());
+                return new DeserializeParametersResult(Map.of("used", "value"), "result", null);
+            }
+
+            @Override
+            public boolean parametersAreEqualIgnoringReturn(String left, String right) {
+                return left.equals(right);
+            }
+        };
+
+        var wrapped = new KanalarzSerializationExceptionWrapper(serialization);
+        var result = wrapped.deserializeResult("", String.class);
+        var parameters = wrapped.deserializeParametersOnly(
+            "",
+            List.of(new KanalarzSerialization.DeserializeParameterInfo("used", String.class)),
+            String.class
+        );
+
+        assertThat(result.executionResult()).isEqualTo("result");
+        assertThat(result.executionError()).isNull();
+        assertThat(parameters).containsExactly(Map.entry("used", "value"));
+        assertThat(requestedParameters).containsExactly(List.of(), List.of("used"));
+    }
+
+    @Test
+    void shouldWrapSerializationExceptionFromDeserializeResult() {
+        KanalarzSerialization serialization = new KanalarzSerialization() {
+            @Override
+            public String serializeStepCalled(
+                List<SerializeParameterInfo> parametersInfo,
+                SerializeReturnInfo returnInfo
+            ) {
+                return "";
+            }
+
+            @Override
+            public DeserializeParametersResult deserializeParameters(
+                String serialized,
+                List<DeserializeParameterInfo> parametersInfo,
+                Type returnType
+            ) {
+                throw new RuntimeException("deserialize-result-failed");
+            }
+
+            @Override
+            public boolean parametersAreEqualIgnoringReturn(String left, String right) {
+                return left.equals(right);
+            }
+        };
+
+        var wrapped = new KanalarzSerializationExceptionWrapper(serialization);
+
+        assertThatThrownBy(() -> wrapped.deserializeResult("", String.class))
+            .isExactlyInstanceOf(KanalarzException.KanalarzSerializationException.class)
+            .hasCauseExactlyInstanceOf(RuntimeException.class)
+            .hasMessageContaining("deserialize-result-failed");
+    }
+
     @Test
     void shouldWrapPersistenceExceptionFromRead() {
         KanalarzPersistence persistence = new KanalarzPersistence() {
@@ -142,4 +300,45 @@ class AdapterExceptionWrapperTests {
             .hasCauseExactlyInstanceOf(RuntimeException.class)
             .hasMessageContaining("Provided persistence bean threw an exception");
     }
+
+    @Test
+    void shouldDetectAdaptersNotTrackingUnfinishedContexts() {
+        KanalarzPersistence untracked = new KanalarzPersistence() {
+            @Override
+            public void stepStarted(StepStartedEvent stepStartedEvent) { }
+
+            @Override
+            public void stepCompleted(StepCompletedEvent stepCompletedEvent) { }
+
+            @Override
+            public List<StepExecutedInfo> getExecutedStepsInContextInOrderOfExecutionStarted(UUID contextId) {
+                return List.of();
+            }
+        };
+        KanalarzPersistence tracked = new KanalarzPersistence() {
+            @Override
+            public void stepStarted(StepStartedEvent stepStartedEvent) { }
+
+            @Override
+            public void stepCompleted(StepCompletedEvent stepCompletedEvent) { }
+
+            @Override
+            public List<StepExecutedInfo> getExecutedStepsInContextInOrderOfExecutionStarted(UUID contextId) {
+                return List.of();
+            }
+
+            @Override
+            public List<ContextStartedEvent> getUnfinishedContexts(Instant startedBefore, int limit) {
+                return List.of();
+            }
+        };
+
+        assertThat(KanalarzPersistenceExceptionWrapper.tracksUnfinishedContexts(untracked)).isFalse();
+        assertThat(KanalarzPersistenceExceptionWrapper.tracksUnfinishedContexts(
+            new KanalarzPersistenceExceptionWrapper(untracked)
+        )).isFalse();
+        assertThat(KanalarzPersistenceExceptionWrapper.tracksUnfinishedContexts(
+            new KanalarzPersistenceExceptionWrapper(tracked)
+        )).isTrue();
+    }
 }
@@ -0,0 +1,120 @@
+package com.gbujak.kanalarz;
+
+import com.gbujak.kanalarz.annotations.Rollback;
+import com.gbujak.kanalarz.annotations.RollforwardOut;
+import com.gbujak.kanalarz.annotations.Step;
+import com.gbujak.kanalarz.annotations.StepsHolder;
+import com.gbujak.kanalarz.testimplementations.TestPersistence;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.stereotype.Component;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+
+@Service
+class BatchedRollbackTestService {
+
+    final List<String> items = new ArrayList<>();
+    final List<List<String>> removedBatches = new ArrayList<>();
+
+    int add(String item) {
+        items.add(item);
+        return items.size() - 1;
+    }
+
+    void removeAll(List<String> batch) {
+        items.removeAll(batch);
+        removedBatches.add(batch);
+    }
+
+    void clear() {
+        items.clear();
+        removedBatches.clear();
+    }
+}
+
+@Component
+@StepsHolder("batched-rollback-steps")
+class BatchedRollbackTestSteps {
+
+    @Autowired private BatchedRollbackTestService service;
+
+    @Step("add")
+    int add(String item) {
+        return service.add(item);
+    }
+
+    @Rollback(value = "add", batched = true, maxBatchSize = 100)
+    void rollbackAdd(List<String> item, @RollforwardOut List<Integer> index) {
+        assertThat(index).hasSameSizeAs(item);
+        service.removeAll(item);
+    }
+}
+
+@SpringBootTest
+public class BatchedRollbackTests {
+
+    @Autowired Kanalarz kanalarz;
+    @Autowired KanalarzPersistence kanalarzPersistence;
+    @Autowired BatchedRollbackTestSteps steps;
+    @Autowired BatchedRollbackTestService service;
+
+    @BeforeEach
+    void beforeEach() {
+        service.clear();
+    }
+
+    @Test
+    void rollsBackInBatches() {
+        var items = IntStream.range(0, 250).mapToObj(it -> "item-" + it).toList();
+
+        assertThatThrownBy(() ->
+            kanalarz.newContext().consume(ctx -> {
+                items.forEach(steps::add);
+                throw new RuntimeException("test");
+            })
+        ).isExactlyInstanceOf(KanalarzException.KanalarzThrownOutsideOfStepException.class);
+
+        assertThat(service.items).isEmpty();
+        assertThat(service.removedBatches).extracting(List::size).containsExactly(100, 100, 50);
+        assertThat(service.removedBatches.getFirst().getFirst()).isEqualTo("item-249");
+        assertThat(service.removedBatches.getLast().getLast()).isEqualTo("item-0");
+    }
+
+    @Test
+    void batchIsRecordedAsRolledBack() {
+        var contextId = UUID.randomUUID();
+        var items = IntStream.range(0, 150).mapToObj(it -> "item-" + it).toList();
+
+        assertThatThrownBy(() ->
+            kanalarz.newContext().resumes(contextId).option(Kanalarz.Option.DEFER_ROLLBACK).consume(ctx -> {
+                items.forEach(steps::add);
+                throw new RuntimeException("test");
+            })
+        ).isExactlyInstanceOf(KanalarzException.KanalarzThrownOutsideOfStepException.class);
+
+        kanalarz.newContext().resumes(contextId).rollbackNow();
+        kanalarz.newContext().resumes(contextId).rollbackNow();
+
+        assertThat(service.items).isEmpty();
+        assertThat(service.removedBatches).extracting(List::size).containsExactly(100, 50);
+
+        var persistence = (TestPersistence) kanalarzPersistence;
+        var rollbacks = persistence.stepCompletedEvents.stream()
+            .filter(it -> it.contexts().contains(contextId))
+            .filter(it -> it.stepIsRollbackFor().isPresent())
+            .toList();
+        assertThat(rollbacks)
+            .extracting(it -> it.batchedRollbackFor().size())
+            .containsExactly(99, 49);
+    }
+}
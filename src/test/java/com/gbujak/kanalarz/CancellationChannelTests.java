@@ -0,0 +1,111 @@
+package com.gbujak.kanalarz;
+
+import com.gbujak.kanalarz.annotations.Rollback;
+import com.gbujak.kanalarz.annotations.Step;
+import com.gbujak.kanalarz.annotations.StepsHolder;
+import com.gbujak.kanalarz.persistence.InMemoryCancellationChannel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.stereotype.Component;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+
+@Service
+class CancellationChannelTestService {
+
+    final List<String> items = Collections.synchronizedList(new ArrayList<>());
+}
+
+@Component
+@StepsHolder("cancellation-channel-steps")
+class CancellationChannelTestSteps {
+
+    @Autowired private CancellationChannelTestService service;
+
+    @Step("add")
+    void add(String item) {
+        service.items.add(item);
+    }
+
+    @Rollback("add")
+    void rollbackAdd(String item) {
+        service.items.remove(item);
+    }
+}
+
+@SpringBootTest
+public class CancellationChannelTests {
+
+    @TestConfiguration
+    static class CancellationChannelConfig {
+
+        @Bean
+        InMemoryCancellationChannel inMemoryCancellationChannel() {
+            return new InMemoryCancellationChannel(Duration.ofMillis(20));
+        }
+    }
+
+    @Autowired Kanalarz kanalarz;
+    @Autowired InMemoryCancellationChannel channel;
+    @Autowired CancellationChannelTestSteps steps;
+    @Autowired CancellationChannelTestService service;
+
+    @BeforeEach
+    void beforeEach() {
+        service.items.clear();
+    }
+
+    @Test
+    void requestPublishedByAnotherNodeCancelsRunningContext() {
+        assertThatThrownBy(() ->
+            kanalarz.newContext().consume(ctx -> {
+                steps.add("before");
+                channel.publish(new KanalarzCancellationChannel.CancelRequest(ctx.id(), false, Instant.now()));
+
+                var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (ctx.state() == KanalarzContext.State.RUNNING && System.nanoTime() < deadline) {
+                    Thread.onSpinWait();
+                }
+                steps.add("after");
+            })
+        ).isExactlyInstanceOf(KanalarzException.KanalarzContextCancelledException.class);
+
+        assertThat(service.items).isEmpty();
+    }
+
+    @Test
+    void closedPollerStopsPolling() throws InterruptedException {
+        var polls = new AtomicInteger();
+        var poller = new ContextCancellationPoller(channel, () -> {
+            polls.incrementAndGet();
+            return Map.of();
+        });
+
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (polls.get() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        poller.close();
+        Thread.sleep(50);
+        var pollsAfterClose = polls.get();
+        Thread.sleep(100);
+
+        assertThat(pollsAfterClose).isPositive();
+        assertThat(polls.get()).isEqualTo(pollsAfterClose);
+    }
+}
@@ -4,13 +4,17 @@ import com.gbujak.kanalarz.annotations.Rollback;
 import com.gbujak.kanalarz.annotations.RollforwardOut;
 import com.gbujak.kanalarz.annotations.Step;
 import com.gbujak.kanalarz.annotations.StepsHolder;
+import com.gbujak.kanalarz.testimplementations.TestPersistence;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
@@ -47,6 +51,7 @@ class CancellingTestsService {
 class CancellingTestsSteps {
 
     @Autowired private CancellingTestsService service;
+    @Autowired @Lazy private CancellingTestsSteps self;
 
     @Step("set-value")
     String setValue(String value) {
@@ -57,6 +62,44 @@ class CancellingTestsSteps {
     void rollbackSetValue(@RollforwardOut String oldValue) {
         service.setValue(oldValue);
     }
+
+    @Step("sleep")
+    void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Step("set-value-after-sleep")
+    String setValueAfterSleep(String value, long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            // keep going, but let the caller see the interrupt
+            Thread.currentThread().interrupt();
+        }
+        return service.setValue(value);
+    }
+
+    @Step("sleep-then-set-value-after-sleep")
+    void sleepThenSetValueAfterSleep(String value, long millis) {
+        self.setValueAfterSleep(value, millis);
+        if (Thread.currentThread().isInterrupted()) {
+            throw new IllegalStateException("interrupted");
+        }
+    }
+
+    @Step("set-value-and-sleep")
+    void setValueAndSleep(String value, long millis) {
+        self.setValue(value);
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
 
 @SpringBootTest
@@ -270,4 +313,72 @@ public class CancellingTests {
                 .hasSize(2);
         }
     }
+
+    @Test
+    void shouldCancelAndInterruptStepAfterDeadline() {
+        var contextId = UUID.randomUUID();
+        var started = System.nanoTime();
+
+        assertThatThrownBy(() ->
+            kanalarz.newContext().resumes(contextId).deadline(Duration.ofMillis(100)).consume(ctx -> {
+                steps.setValue("test");
+                steps.sleep(TimeUnit.MINUTES.toMillis(1));
+                steps.setValue("test-2");
+            })
+        ).isExactlyInstanceOf(KanalarzException.KanalarzContextCancelledException.class);
+
+        assertThat(System.nanoTime() - started).isLessThan(TimeUnit.SECONDS.toNanos(10));
+        assertThat(Thread.currentThread().isInterrupted()).isFalse();
+        assertThat(service.value).isNull();
+    }
+
+    @Test
+    void shouldInterruptStepAfterItsNestedStepReturned() {
+        var contextId = UUID.randomUUID();
+        var started = System.nanoTime();
+
+        assertThatThrownBy(() ->
+            kanalarz.newContext().resumes(contextId).deadline(Duration.ofMillis(100)).consume(ctx ->
+                steps.setValueAndSleep("test", TimeUnit.MINUTES.toMillis(1))
+            )
+        ).isExactlyInstanceOf(KanalarzException.KanalarzContextCancelledException.class);
+
+        assertThat(System.nanoTime() - started).isLessThan(TimeUnit.SECONDS.toNanos(10));
+        assertThat(Thread.currentThread().isInterrupted()).isFalse();
+        assertThat(service.value).isNull();
+    }
+
+    @Test
+    void shouldWriteNestedStepEventsWithoutTheDeadlineInterrupt() {
+        var contextId = UUID.randomUUID();
+
+        assertThatThrownBy(() ->
+            kanalarz.newContext().resumes(contextId).deadline(Duration.ofMillis(100)).consume(ctx ->
+                steps.sleepThenSetValueAfterSleep("test", 300)
+            )
+        ).isExactlyInstanceOf(KanalarzException.KanalarzContextCancelledException.class);
+
+        var testPersistence = (TestPersistence) persistence;
+        var contextSteps = testPersistence.stepCompletedEvents.stream()
+            .filter(it -> it.contexts().contains(contextId))
+            .map(KanalarzPersistence.StepCompletedEvent::stepId)
+            .toList();
+        assertThat(contextSteps).hasSizeGreaterThanOrEqualTo(2);
+        assertThat(testPersistence.stepsWrittenWhileInterrupted).doesNotContainAnyElementsOf(contextSteps);
+        assertThat(Thread.currentThread().isInterrupted()).isFalse();
+        assertThat(service.value).isNull();
+    }
+
+    @Test
+    void shouldPassDeadlineToNestedContextsAndForkTasks() {
+        assertThatThrownBy(() ->
+            kanalarz.newContext().deadline(Duration.ofMillis(100)).consume(ctx -> {
+                var deadline = ctx.deadline().orElseThrow();
+                kanalarz.newContext().deadline(Duration.ofHours(1)).consume(nested ->
+                    assertThat(nested.deadline()).contains(deadline)
+                );
+                Kanalarz.forkConsume(List.of(1, 2), ignored -> steps.sleep(TimeUnit.MINUTES.toMillis(1)));
+            })
+        ).isInstanceOf(KanalarzException.class);
+    }
 }
@@ -11,18 +11,24 @@ import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
 
 @Component
 class ConcurrentTestService {
     List<Integer> valueHistory = new ArrayList<>();
+    List<Integer> rolledBack = Collections.synchronizedList(new ArrayList<>());
+    AtomicInteger rollbacksRunning = new AtomicInteger();
+    AtomicInteger maxRollbacksRunning = new AtomicInteger();
     int value = 0;
     Lock lock = new ReentrantLock();
 
@@ -46,9 +52,19 @@ class ConcurrentTestService {
         }
     }
 
+    void trackedUndoAdd(int value) {
+        maxRollbacksRunning.accumulateAndGet(rollbacksRunning.incrementAndGet(), Math::max);
+        try { Thread.sleep(5); } catch (InterruptedException ignored) { }
+        undoAdd(value);
+        rolledBack.add(value);
+        rollbacksRunning.decrementAndGet();
+    }
+
     public void clear() {
         value = 0;
         valueHistory.clear();
+        rolledBack.clear();
+        maxRollbacksRunning.set(0);
     }
 }
 
@@ -77,6 +93,16 @@ class ConcurrentTestSteps {
         service.undoAdd(value);
     }
 
+    @Step("add-tracked")
+    void addTracked(int value) {
+        service.add(value);
+    }
+
+    @Rollback("add-tracked")
+    void addTrackedRollback(int value) {
+        service.trackedUndoAdd(value);
+    }
+
     @Step("add-all-concurrently")
     void addAllConcurrently(List<Integer> values) {
         Kanalarz.forkConsume(values, self::add);
@@ -231,4 +257,117 @@ public class ConcurrentTests {
             .hasSize(values.size() * 2);
         assertThat(service.value).isZero();
     }
+
+    @Test
+    void parallelRollbackTest() {
+        var contextId = UUID.randomUUID();
+        var values = IntStream.range(0, 100).boxed().toList();
+        kanalarz.newContext().resumes(contextId).consume(ctx -> {
+            steps.addTracked(100_000);
+            Kanalarz.forkConsume(values, value -> {
+                steps.addTracked(value);
+                steps.addTracked(value + 1_000);
+            });
+            steps.addTracked(200_000);
+        });
+
+        kanalarz.newContext().resumes(contextId).parallelRollback(8).rollbackNow();
+
+        assertThat(service.value).isZero();
+        assertThat(service.maxRollbacksRunning.get()).isBetween(2, 8);
+        assertThat(service.rolledBack).hasSize(values.size() * 2 + 2);
+        assertThat(service.rolledBack.getFirst()).isEqualTo(200_000);
+        assertThat(service.rolledBack.getLast()).isEqualTo(100_000);
+        for (var value : values) {
+            assertThat(service.rolledBack.indexOf(value + 1_000)).isLessThan(service.rolledBack.indexOf(value));
+        }
+        assertThat(persistence.getExecutedStepsInContextInOrderOfExecutionStarted(contextId))
+            .hasSize((values.size() * 2 + 2) * 2);
+    }
+
+    @Test
+    void streamingForkJoinTest() {
+        var contextId = UUID.randomUUID();
+        var pulled = new AtomicInteger();
+        var handled = new AtomicInteger();
+        var maxAhead = new AtomicInteger();
+        var sum = new AtomicInteger();
+
+        kanalarz.newContext().resumes(contextId).consume(ctx -> {
+            var values = IntStream.range(0, 1_000).boxed().iterator();
+            Kanalarz.forkJoinStreaming(
+                Utils.mapIterator(values, value -> {
+                    maxAhead.accumulateAndGet(pulled.incrementAndGet() - handled.get(), Math::max);
+                    return value;
+                }),
+                8,
+                value -> {
+                    steps.add(value);
+                    return value;
+                },
+                (value, result) -> {
+                    assertThat(result).isEqualTo(value);
+                    sum.addAndGet(result);
+                    handled.incrementAndGet();
+                }
+            );
+        });
+
+        var expectedSum = IntStream.range(0, 1_000).sum();
+        assertThat(handled.get()).isEqualTo(1_000);
+        assertThat(maxAhead.get()).isBetween(1, 8);
+        assertThat(sum.get()).isEqualTo(expectedSum);
+        assertThat(service.value).isEqualTo(expectedSum);
+
+        // Same elements resume-replay the same fork tasks, whichever variant runs them.
+        var replayedSum = kanalarz.newContext().resumes(contextId).startResumeReplay(ctx ->
+            Kanalarz.forkJoinStreaming(
+                IntStream.range(0, 1_000).boxed(),
+                4,
+                value -> {
+                    steps.add(value);
+                    return value;
+                },
+                Collectors.summingInt(Integer::intValue)
+            )
+        );
+
+        assertThat(replayedSum).isEqualTo(expectedSum);
+        assertThat(service.value).isEqualTo(expectedSum);
+        assertThat(persistence.getExecutedStepsInContextInOrderOfExecutionStarted(contextId)).hasSize(1_000);
+
+        kanalarz.newContext().resumes(contextId).rollbackNow();
+
+        assertThat(service.value).isZero();
+    }
+
+    @Test
+    void streamingForkJoinShouldWaitForTasksAndCloseStreamOnCallbackError() {
+        var running = new AtomicInteger();
+        var closed = new AtomicBoolean(false);
+
+        kanalarz.newContext().consume(ctx ->
+            assertThatThrownBy(() -> Kanalarz.forkJoinStreaming(
+                IntStream.range(0, 100).boxed().onClose(() -> closed.set(true)),
+                8,
+                value -> {
+                    running.incrementAndGet();
+                    try {
+                        steps.add(value);
+                        return value;
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                },
+                (value, result) -> {
+                    throw new AssertionError("on-result-failed");
+                }
+            ))
+                .isExactlyInstanceOf(AssertionError.class)
+                .hasMessage("on-result-failed")
+        );
+
+        assertThat(running.get()).isZero();
+        assertThat(closed.get()).isTrue();
+    }
 }
@@ -0,0 +1,161 @@
+package com.gbujak.kanalarz;
+
+import com.gbujak.kanalarz.annotations.Rollback;
+import com.gbujak.kanalarz.annotations.Step;
+import com.gbujak.kanalarz.annotations.StepsHolder;
+import com.gbujak.kanalarz.persistence.InMemoryLeases;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.stereotype.Component;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+
+@Service
+class ContextLeaseTestService {
+
+    final List<String> items = Collections.synchronizedList(new ArrayList<>());
+}
+
+@Component
+@StepsHolder("context-lease-steps")
+class ContextLeaseTestSteps {
+
+    @Autowired private ContextLeaseTestService service;
+
+    @Step("add")
+    void add(String item) {
+        service.items.add(item);
+    }
+
+    @Rollback("add")
+    void rollbackAdd(String item) {
+        service.items.remove(item);
+    }
+}
+
+class RevocableLeases implements KanalarzLeases {
+
+    private final InMemoryLeases delegate = new InMemoryLeases(Duration.ofMillis(300));
+    volatile boolean renewable = true;
+
+    @Override
+    @Nullable
+    public Lease tryAcquire(UUID contextId) {
+        return delegate.tryAcquire(contextId);
+    }
+
+    @Override
+    public boolean renew(Lease lease) {
+        return renewable && delegate.renew(lease);
+    }
+
+    @Override
+    public void release(Lease lease) {
+        delegate.release(lease);
+    }
+}
+
+@SpringBootTest
+public class ContextLeaseTests {
+
+    @TestConfiguration
+    static class LeasesConfig {
+
+        @Bean
+        RevocableLeases revocableLeases() {
+            return new RevocableLeases();
+        }
+    }
+
+    @Autowired Kanalarz kanalarz;
+    @Autowired RevocableLeases leases;
+    @Autowired ContextLeaseTestSteps steps;
+    @Autowired ContextLeaseTestService service;
+
+    @BeforeEach
+    void beforeEach() {
+        leases.renewable = true;
+        service.items.clear();
+    }
+
+    @Test
+    void heldContextCannotBeResumedOrRolledBack() {
+        var contextId = UUID.randomUUID();
+        var running = new CountDownLatch(1);
+        var finish = new CountDownLatch(1);
+        var holder = CompletableFuture.runAsync(() ->
+            kanalarz.newContext().resumes(contextId).consume(ctx -> {
+                steps.add("held");
+                running.countDown();
+                awaitUninterruptibly(finish);
+            })
+        );
+        awaitUninterruptibly(running);
+
+        try {
+            assertThatThrownBy(() ->
+                kanalarz.newContext().resumes(contextId).consume(ctx -> steps.add("resumed"))
+            ).isExactlyInstanceOf(KanalarzException.KanalarzContextLeaseException.class);
+            assertThatThrownBy(() ->
+                kanalarz.newContext().resumes(contextId).rollbackNow()
+            ).isExactlyInstanceOf(KanalarzException.KanalarzContextLeaseException.class);
+            assertThatThrownBy(() ->
+                kanalarz.newContext().consume(ctx ->
+                    kanalarz.newContext().resumes(contextId).consume(nested -> steps.add("nested"))
+                )
+            ).isExactlyInstanceOf(KanalarzException.KanalarzThrownOutsideOfStepException.class)
+                .hasCauseInstanceOf(KanalarzException.KanalarzContextLeaseException.class);
+        } finally {
+            finish.countDown();
+        }
+        holder.join();
+
+        assertThat(service.items).containsExactly("held");
+        kanalarz.newContext().resumes(contextId).rollbackNow();
+        assertThat(service.items).isEmpty();
+    }
+
+    @Test
+    void lostLeaseCancelsContextWithDeferredRollback() {
+        assertThatThrownBy(() ->
+            kanalarz.newContext().consume(ctx -> {
+                steps.add("before");
+                leases.renewable = false;
+                try {
+                    Thread.sleep(Duration.ofSeconds(1));
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                steps.add("after");
+            })
+        ).isInstanceOfSatisfying(
+            KanalarzException.KanalarzContextCancelledException.class,
+            e -> assertThat(e.forceDeferRollback()).isTrue()
+        );
+
+        assertThat(service.items).containsExactly("before");
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.gbujak.kanalarz;
+
+import com.gbujak.kanalarz.KanalarzPersistence.ContextFinishedEvent;
+import com.gbujak.kanalarz.KanalarzPersistence.ContextOutcome;
+import com.gbujak.kanalarz.KanalarzPersistence.ContextRollbackState;
+import com.gbujak.kanalarz.KanalarzPersistence.ContextStartedEvent;
+import com.gbujak.kanalarz.testimplementations.TestPersistence;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+@SpringBootTest
+public class ContextLifecycleTests {
+
+    @Autowired Kanalarz kanalarz;
+    @Autowired KanalarzPersistence kanalarzPersistence;
+    @Autowired JournalTestSteps steps;
+
+    @Test
+    void succeededContextIsRecorded() {
+        var contextId = UUID.randomUUID();
+
+        kanalarz.newContext().resumes(contextId).metadata("job", "import").consume(ctx -> {
+            steps.copy(List.of("first"));
+        });
+
+        assertThat(started(contextId)).singleElement().satisfies(it -> {
+            assertThat(it.resumed()).isTrue();
+            assertThat(it.rollbackOnly()).isFalse();
+            assertThat(it.parentContextId()).isNull();
+            assertThat(it.metadata()).containsEntry("job", "import");
+        });
+        assertThat(finished(contextId)).singleElement().satisfies(it -> {
+            assertThat(it.outcome()).isEqualTo(ContextOutcome.SUCCEEDED);
+            assertThat(it.rollbackState()).isEqualTo(ContextRollbackState.NOT_NEEDED);
+            assertThat(it.duration().isNegative()).isFalse();
+        });
+    }
+
+    @Test
+    void failedContextIsRecordedAfterRollback() {
+        var contextId = UUID.randomUUID();
+
+        assertThatThrownBy(() ->
+            kanalarz.newContext().resumes(contextId).consume(ctx -> {
+                steps.copy(List.of("first"));
+                throw new RuntimeException("boom");
+            })
+        ).isExactlyInstanceOf(KanalarzException.KanalarzThrownOutsideOfStepException.class);
+
+        assertThat(finished(contextId)).singleElement().satisfies(it -> {
+            assertThat(it.outcome()).isEqualTo(ContextOutcome.FAILED);
+            assertThat(it.rollbackState()).isEqualTo(ContextRollbackState.ROLLED_BACK);
+        });
+    }
+
+    @Test
+    void deferredRollbackIsPendingUntilRollbackNow() {
+        var contextId = UUID.randomUUID();
+
+        assertThatThrownBy(() ->
+            kanalarz.newContext().resumes(contextId).option(Kanalarz.Option.DEFER_ROLLBACK).consume(ctx -> {
+                steps.copy(List.of("first"));
+                throw new RuntimeException("boom");
+            })
+        ).isExactlyInstanceOf(KanalarzException.KanalarzThrownOutsideOfStepException.class);
+        kanalarz.newContext().resumes(contextId).rollbackNow();
+
+        assertThat(started(contextId))
+            .extracting(ContextStartedEvent::rollbackOnly)
+            .containsExactly(false, true);
+        assertThat(finished(contextId))
+            .extracting(ContextFinishedEvent::outcome, ContextFinishedEvent::rollbackState)
+            .containsExactly(
+                tuple(ContextOutcome.FAILED, ContextRollbackState.PENDING),
+                tuple(ContextOutcome.SUCCEEDED, ContextRollbackState.ROLLED_BACK)
+            );
+    }
+
+    @Test
+    void nestedContextRecordsParent() {
+        var parentId = UUID.randomUUID();
+        var childId = UUID.randomUUID();
+
+        kanalarz.newContext().resumes(parentId).consume(ctx -> {
+            kanalarz.newContext().resumes(childId).consume(nested -> {
+                steps.copy(List.of("nested"));
+            });
+        });
+
+        assertThat(started(childId)).singleElement()
+            .extracting(ContextStartedEvent::parentContextId)
+            .isEqualTo(parentId);
+        assertThat(finished(childId)).singleElement()
+            .extracting(ContextFinishedEvent::parentContextId)
+            .isEqualTo(parentId);
+    }
+
+    private List<ContextStartedEvent> started(UUID contextId) {
+        return List.copyOf(((TestPersistence) kanalarzPersistence).contextStartedEvents).stream()
+            .filter(it -> it.contextId().equals(contextId))
+            .toList();
+    }
+
+    private List<ContextFinishedEvent> finished(UUID contextId) {
+        return List.copyOf(((TestPersistence) kanalarzPersistence).contextFinishedEvents).stream()
+            .filter(it -> it.contextId().equals(contextId))
+            .toList();
+    }
+}
@@ -21,7 +21,7 @@ class ContextResumeStateResolverTests {
             stepWithPath(basePath + ".s1.s0")
         ));
 
-        assertThat(resolver.resolveBasePath(contextId)).isEqualTo(basePath);
+        assertThat(resolver.resolveBasePath(contextId)).hasToString(basePath);
     }
 
     @Test
@@ -46,7 +46,7 @@ class ContextResumeStateResolverTests {
             stepWithPath("r.s1")
         ));
 
-        assertThat(resolver.resolveBasePath(contextId)).isEqualTo(basePath);
+        assertThat(resolver.resolveBasePath(contextId)).hasToString(basePath);
     }
 
     @Test
@@ -79,7 +79,7 @@ class ContextResumeStateResolverTests {
             stepWithPath("r.s0.c-" + contextId + ".s1")
         ));
 
-        assertThat(resolver.resolveBasePath(contextId)).isEqualTo("r.s0.c-" + contextId);
+        assertThat(resolver.resolveBasePath(contextId)).hasToString("r.s0.c-" + contextId);
     }
 
     @Test
@@ -92,7 +92,33 @@ class ContextResumeStateResolverTests {
             stepWithPath(basePath + ".s1.c-" + otherContextId + ".s0")
         ));
 
-        assertThat(resolver.resolveBasePath(contextId)).isEqualTo(basePath);
+        assertThat(resolver.resolveBasePath(contextId)).hasToString(basePath);
+    }
+
+    @Test
+    void shouldSkipRolledBackStepsWhenReadingNewestFirst() {
+        var contextId = UUID.randomUUID();
+        var basePath = "r.c-" + contextId;
+        var kept = stepWithPath(basePath + ".s0");
+        var rolledBack = stepWithPath(basePath + ".s1");
+        var rollback = new KanalarzPersistence.StepExecutedInfo(
+            List.of(contextId),
+            UUID.randomUUID(),
+            "test:rollback",
+            "",
+            Optional.empty(),
+            Optional.of(rolledBack.stepId()),
+            false,
+            basePath + ".s1.r"
+        );
+
+        var resolver = new ContextResumeStateResolver(List.of(rollback, rolledBack, kept).iterator(), contextId, true);
+        var withoutSteps = new ContextResumeStateResolver(List.of(rollback, kept).iterator(), contextId, false);
+
+        assertThat(resolver.replayable()).containsExactly(kept);
+        assertThat(resolver.resolveBasePath(contextId)).hasToString(basePath);
+        assertThat(withoutSteps.replayable()).isEmpty();
+        assertThat(withoutSteps.resolveBasePath(contextId)).hasToString(basePath);
     }
 
     private static KanalarzPersistence.StepExecutedInfo stepWithPath(String executionPath) {
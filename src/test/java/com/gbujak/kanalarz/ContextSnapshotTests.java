@@ -0,0 +1,68 @@
+package com.gbujak.kanalarz;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ContextSnapshotTests {
+
+    @Test
+    void metadataSnapshotShouldBeImmutableAndStable() {
+        var context = newContext();
+        context.putMetadata("a", "1");
+
+        var snapshot = context.fullMetadata();
+        context.putMetadata("b", "2");
+
+        assertThat(snapshot).isEqualTo(Map.of("a", "1"));
+        assertThat(context.fullMetadata()).isEqualTo(Map.of("a", "1", "b", "2"));
+        assertThatThrownBy(() -> snapshot.put("c", "3")).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void metadataSnapshotShouldOnlyBeRebuiltAfterChange() {
+        var context = newContext();
+        context.putMetadata("a", "1");
+
+        var snapshot = context.fullMetadata();
+        assertThat(context.fullMetadata()).isSameAs(snapshot);
+
+        context.removeMetadata("a");
+        assertThat(context.fullMetadata()).isNotSameAs(snapshot).isEmpty();
+    }
+
+    @Test
+    void forkCopiesShouldShareMetadata() {
+        var context = newContext();
+        var copy = context.copy(new ExecutionContext());
+
+        copy.putMetadata("a", "1");
+
+        assertThat(context.fullMetadata()).isEqualTo(Map.of("a", "1"));
+    }
+
+    @Test
+    void contextStackShouldListContextIdsFromRoot() {
+        var root = newContext();
+        var child = newContext();
+        var grandchild = newContext();
+
+        var stack = new Kanalarz.ContextStack(
+            grandchild,
+            new Kanalarz.ContextStack(child, new Kanalarz.ContextStack(root, null))
+        );
+
+        assertThat(stack.contextIds()).isEqualTo(List.of(root.id(), child.id(), grandchild.id()));
+        assertThat(stack.parents().contextIds()).isEqualTo(List.of(root.id(), child.id()));
+    }
+
+    private static KanalarzContext newContext() {
+        return new KanalarzContext(UUID.randomUUID(), EnumSet.noneOf(Kanalarz.Option.class), null, null);
+    }
+}
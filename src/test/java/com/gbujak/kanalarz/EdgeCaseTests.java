@@ -6,6 +6,7 @@ import com.gbujak.kanalarz.annotations.Step;
 import com.gbujak.kanalarz.annotations.StepsHolder;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.Advised;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.stereotype.Component;
@@ -244,4 +245,10 @@ public class EdgeCaseTests {
         assertThatThrownBy(() -> Kanalarz.cancelContextForceDeferRollback(UUID.randomUUID()))
             .isExactlyInstanceOf(IllegalStateException.class);
     }
+
+    @Test
+    void shouldFreezeStepsHolderProxy() {
+        assertThat(steps).isInstanceOf(Advised.class);
+        assertThat(((Advised) steps).isFrozen()).isTrue();
+    }
 }
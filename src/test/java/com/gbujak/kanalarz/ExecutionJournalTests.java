@@ -0,0 +1,106 @@
+package com.gbujak.kanalarz;
+
+import com.gbujak.kanalarz.annotations.Rollback;
+import com.gbujak.kanalarz.annotations.RollforwardOut;
+import com.gbujak.kanalarz.annotations.Step;
+import com.gbujak.kanalarz.annotations.StepsHolder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Component
+@StepsHolder("journal-steps")
+class JournalTestSteps {
+
+    final List<List<String>> rolledBackArguments = Collections.synchronizedList(new ArrayList<>());
+    final List<List<String>> rolledBackResults = Collections.synchronizedList(new ArrayList<>());
+
+    @Step("copy")
+    public List<String> copy(List<String> names) {
+        return new ArrayList<>(names);
+    }
+
+    @Rollback("copy")
+    public void rollbackCopy(List<String> names, @RollforwardOut List<String> copy) {
+        rolledBackArguments.add(names);
+        rolledBackResults.add(copy);
+    }
+
+    void clear() {
+        rolledBackArguments.clear();
+        rolledBackResults.clear();
+    }
+}
+
+@SpringBootTest
+public class ExecutionJournalTests {
+
+    @Autowired Kanalarz kanalarz;
+    @Autowired JournalTestSteps steps;
+
+    @BeforeEach
+    void beforeEach() {
+        steps.clear();
+    }
+
+    @Test
+    void freshContextRollsBackWithLiveObjects() {
+        var names = new ArrayList<>(List.of("first", "second"));
+        var copy = new ArrayList<List<String>>();
+
+        assertThatThrownBy(() ->
+            kanalarz.newContext().consume(ctx -> {
+                copy.add(steps.copy(names));
+                throw new RuntimeException("boom");
+            })
+        ).isExactlyInstanceOf(KanalarzException.KanalarzThrownOutsideOfStepException.class);
+
+        assertThat(steps.rolledBackArguments).singleElement().isSameAs(names);
+        assertThat(steps.rolledBackResults).singleElement().isSameAs(copy.getFirst());
+    }
+
+    @Test
+    void freshContextSkipsStepsRolledBackByNestedContext() {
+        var names = new ArrayList<>(List.of("nested"));
+
+        assertThatThrownBy(() ->
+            kanalarz.newContext().consume(ctx -> {
+                assertThatThrownBy(() ->
+                    kanalarz.newContext().consume(nested -> {
+                        steps.copy(names);
+                        throw new RuntimeException("nested");
+                    })
+                ).isExactlyInstanceOf(KanalarzException.KanalarzThrownOutsideOfStepException.class);
+                throw new RuntimeException("outer");
+            })
+        ).isExactlyInstanceOf(KanalarzException.KanalarzThrownOutsideOfStepException.class);
+
+        assertThat(steps.rolledBackArguments).singleElement().isSameAs(names);
+    }
+
+    @Test
+    void resumedContextRollsBackFromPersistence() {
+        var names = new ArrayList<>(List.of("resumed"));
+
+        assertThatThrownBy(() ->
+            kanalarz.newContext().resumes(UUID.randomUUID()).consume(ctx -> {
+                steps.copy(names);
+                throw new RuntimeException("boom");
+            })
+        ).isExactlyInstanceOf(KanalarzException.KanalarzThrownOutsideOfStepException.class);
+
+        assertThat(steps.rolledBackArguments).singleElement()
+            .isEqualTo(names)
+            .isNotSameAs(names);
+    }
+}
@@ -0,0 +1,71 @@
+package com.gbujak.kanalarz;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ExecutionPathTests {
+
+    @Test
+    void shouldRenderSegments() {
+        var contextId = UUID.randomUUID();
+        var path = ExecutionPath.ROOT
+            .namedSubContext(contextId)
+            .forkTask(3, 17)
+            .subContext(2)
+            .step(4)
+            .rollback();
+
+        assertThat(path).hasToString("r.c-" + contextId + ".f3-17.c2.s4.r");
+    }
+
+    @Test
+    void shouldParseRenderedPath() {
+        var contextId = UUID.randomUUID();
+        var path = ExecutionPath.ROOT.step(0).namedSubContext(contextId).forkTask(1, 12).step(7);
+
+        var parsed = ExecutionPath.parse(path.toString());
+
+        assertThat(parsed).isEqualTo(path).hasSameHashCodeAs(path).hasToString(path.toString());
+    }
+
+    @Test
+    void shouldNotEqualPathWithDifferentSegment() {
+        assertThat(ExecutionPath.ROOT.step(1).step(0)).isNotEqualTo(ExecutionPath.ROOT.step(0).step(1));
+        assertThat(ExecutionPath.ROOT.subContext(0)).isNotEqualTo(ExecutionPath.ROOT.step(0));
+        assertThat(ExecutionPath.parse("another-root.s0")).isNotEqualTo(ExecutionPath.ROOT.step(0));
+    }
+
+    @Test
+    void shouldShareStepPathWithNestedExecutionContext() {
+        var executionContext = new ExecutionContext();
+
+        var nested = executionContext.forNestedSteps();
+        var step = executionContext.nextStepId();
+
+        assertThat(step).hasToString("r.s0");
+        assertThat(nested.nextStepId()).hasToString("r.s0.s0");
+        assertThat(executionContext.forNestedSteps().nextStepId()).hasToString("r.s1.s0");
+    }
+
+    @Test
+    void shouldFindNamedSubContextAncestor() {
+        var contextId = UUID.randomUUID();
+        var base = ExecutionPath.ROOT.step(0).namedSubContext(contextId);
+
+        assertThat(base.step(1).subContext(0).step(2).namedSubContextAncestor(contextId)).isEqualTo(base);
+        assertThat(base.step(1).namedSubContextAncestor(UUID.randomUUID())).isNull();
+    }
+
+    @Test
+    void shouldRejectUnrecognizedSegment() {
+        assertThatThrownBy(() -> ExecutionPath.parse("r.s0.x1"))
+            .isExactlyInstanceOf(KanalarzException.KanalarzIllegalUsageException.class)
+            .hasMessageContaining("[x1]");
+        assertThatThrownBy(() -> ExecutionPath.parse("r.f1"))
+            .isExactlyInstanceOf(KanalarzException.KanalarzIllegalUsageException.class);
+    }
+}
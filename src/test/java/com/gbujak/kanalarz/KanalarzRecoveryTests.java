@@ -0,0 +1,126 @@
+package com.gbujak.kanalarz;
+
+import com.gbujak.kanalarz.KanalarzPersistence.ContextOutcome;
+import com.gbujak.kanalarz.KanalarzPersistence.ContextRollbackState;
+import com.gbujak.kanalarz.testimplementations.TestPersistence;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+public class KanalarzRecoveryTests {
+
+    @Autowired Kanalarz kanalarz;
+    @Autowired KanalarzPersistence kanalarzPersistence;
+    @Autowired KanalarzPersistencePipeline persistencePipeline;
+    @Autowired JournalTestSteps steps;
+
+    KanalarzRecovery recovery;
+
+    @BeforeEach
+    void beforeEach() {
+        steps.clear();
+        recovery = new KanalarzRecovery(
+            kanalarz,
+            persistencePipeline,
+            new KanalarzRecoverySettings(Duration.ZERO, 4, 100)
+        );
+    }
+
+    @Test
+    void abandonedContextIsRolledBack() {
+        var contextId = UUID.randomUUID();
+        var names = List.of("abandoned");
+        assertThatThrownBy(() ->
+            kanalarz.newContext().resumes(contextId).option(Kanalarz.Option.DEFER_ROLLBACK).consume(ctx -> {
+                steps.copy(names);
+                throw new RuntimeException("boom");
+            })
+        ).isExactlyInstanceOf(KanalarzException.KanalarzThrownOutsideOfStepException.class);
+        abandon(contextId);
+
+        assertThat(recover(contextId)).singleElement().satisfies(it -> {
+            assertThat(it.action()).isEqualTo(KanalarzRecovery.Action.ROLLED_BACK);
+            assertThat(it.failure()).isNull();
+        });
+        assertThat(steps.rolledBackArguments).containsExactly(names);
+        assertThat(testPersistence().contextFinishedEvents)
+            .filteredOn(it -> it.contextId().equals(contextId))
+            .singleElement()
+            .satisfies(it -> {
+                assertThat(it.rollbackOnly()).isTrue();
+                assertThat(it.outcome()).isEqualTo(ContextOutcome.SUCCEEDED);
+                assertThat(it.rollbackState()).isEqualTo(ContextRollbackState.ROLLED_BACK);
+            });
+        assertThat(recover(contextId)).isEmpty();
+    }
+
+    @Test
+    void abandonedContextIsPassedToItsResumeHandler() {
+        var contextId = UUID.randomUUID();
+        kanalarz.newContext()
+            .resumes(contextId)
+            .metadata(KanalarzRecovery.RESUME_HANDLER_METADATA_KEY, "copy-pipeline")
+            .consume(ctx -> {
+                steps.copy(List.of("resumed"));
+            });
+        abandon(contextId);
+
+        var resumed = new ArrayList<UUID>();
+        recovery.registerResumeHandler("copy-pipeline", context -> {
+            resumed.add(context.contextId());
+            kanalarz.newContext().resumes(context.contextId()).consumeResumeReplay(ctx -> {
+                steps.copy(List.of("resumed"));
+            });
+        });
+
+        assertThat(recover(contextId)).singleElement().satisfies(it -> {
+            assertThat(it.action()).isEqualTo(KanalarzRecovery.Action.RESUMED);
+            assertThat(it.failure()).isNull();
+        });
+        assertThat(resumed).containsExactly(contextId);
+        assertThat(steps.rolledBackArguments).isEmpty();
+    }
+
+    @Test
+    void contextWithUnknownResumeHandlerIsNotRolledBack() {
+        var contextId = UUID.randomUUID();
+        kanalarz.newContext()
+            .resumes(contextId)
+            .metadata(KanalarzRecovery.RESUME_HANDLER_METADATA_KEY, "unknown")
+            .consume(ctx -> {
+                steps.copy(List.of("unknown"));
+            });
+        abandon(contextId);
+
+        assertThat(recover(contextId)).singleElement()
+            .extracting(KanalarzRecovery.RecoveredContext::failure)
+            .isInstanceOf(KanalarzException.KanalarzIllegalUsageException.class);
+        assertThat(steps.rolledBackArguments).isEmpty();
+        assertThat(recover(contextId)).hasSize(1);
+    }
+
+    // Drops the finished event, as if the JVM died before writing it.
+    private void abandon(UUID contextId) {
+        testPersistence().contextFinishedEvents.removeIf(it -> it.contextId().equals(contextId));
+    }
+
+    private List<KanalarzRecovery.RecoveredContext> recover(UUID contextId) {
+        return recovery.recover().stream()
+            .filter(it -> it.contextId().equals(contextId))
+            .toList();
+    }
+
+    private TestPersistence testPersistence() {
+        return (TestPersistence) kanalarzPersistence;
+    }
+}
@@ -0,0 +1,144 @@
+package com.gbujak.kanalarz;
+
+import com.gbujak.kanalarz.annotations.Rollback;
+import com.gbujak.kanalarz.annotations.Step;
+import com.gbujak.kanalarz.annotations.StepsHolder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.stereotype.Component;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+
+@Service
+class KanalarzRollbacksTestService {
+
+    final List<String> items = Collections.synchronizedList(new ArrayList<>());
+
+    void add(String item) {
+        items.add(item);
+    }
+
+    void remove(String item) {
+        if (item.startsWith("broken")) {
+            throw new RuntimeException("cannot remove " + item);
+        }
+        items.remove(item);
+    }
+}
+
+@Component
+@StepsHolder("async-rollback-steps")
+class KanalarzRollbacksTestSteps {
+
+    @Autowired private KanalarzRollbacksTestService service;
+
+    @Step("add")
+    void add(String item) {
+        service.add(item);
+    }
+
+    @Rollback("add")
+    void rollbackAdd(String item) {
+        service.remove(item);
+    }
+}
+
+@SpringBootTest
+public class KanalarzRollbacksTests {
+
+    @Autowired Kanalarz kanalarz;
+    @Autowired KanalarzRollbacks rollbacks;
+    @Autowired KanalarzRollbacksTestSteps steps;
+    @Autowired KanalarzRollbacksTestService service;
+
+    @BeforeEach
+    void beforeEach() {
+        service.items.clear();
+    }
+
+    @Test
+    void rollsBackSubmittedContexts() {
+        var contextIds = IntStream.range(0, 50).mapToObj(it -> failDeferred("item-" + it)).toList();
+        assertThat(service.items).hasSize(50);
+        var before = rollbacks.progress();
+
+        var futures = rollbacks.submitAll(contextIds);
+        assertThat(futures.keySet()).containsExactlyElementsOf(contextIds);
+        CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new)).join();
+
+        assertThat(service.items).isEmpty();
+        var progress = rollbacks.progress();
+        assertThat(progress.submitted() - before.submitted()).isEqualTo(50);
+        assertThat(progress.succeeded() - before.succeeded()).isEqualTo(50);
+        assertThat(progress.remaining()).isZero();
+        assertThat(progress.rollbackCalls().get("async-rollback-steps"))
+            .isEqualTo(before.rollbackCalls().getOrDefault("async-rollback-steps", 0L) + 50);
+    }
+
+    @Test
+    void failedRollbackFailsItsFuture() {
+        var broken = failDeferred("broken");
+        var fine = failDeferred("fine");
+        var before = rollbacks.progress();
+
+        var brokenFuture = rollbacks.submit(broken);
+        var fineFuture = rollbacks.submit(fine);
+
+        fineFuture.join();
+        assertThatThrownBy(brokenFuture::join)
+            .isExactlyInstanceOf(CompletionException.class)
+            .hasCauseInstanceOf(KanalarzException.KanalarzRollbackStepFailedException.class);
+        assertThat(service.items).containsExactly("broken");
+        assertThat(rollbacks.progress().failed() - before.failed()).isEqualTo(1);
+    }
+
+    @Test
+    void rateLimitSpacesRollbackCalls() {
+        var contextIds = IntStream.range(0, 11).mapToObj(it -> failDeferred("limited-" + it)).toList();
+        var settings = new KanalarzRollbackSettings(8, Map.of()).withRateLimit("async-rollback-steps", 50);
+
+        try (var limited = new KanalarzRollbacks(kanalarz, settings)) {
+            var startedAt = System.nanoTime();
+            var futures = limited.submitAll(contextIds);
+            CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new)).join();
+
+            assertThat(Duration.ofNanos(System.nanoTime() - startedAt)).isGreaterThanOrEqualTo(Duration.ofMillis(200));
+            assertThat(limited.progress().rollbackCalls()).containsEntry("async-rollback-steps", 11L);
+        }
+        assertThat(service.items).isEmpty();
+    }
+
+    @Test
+    void closedServiceRejectsContexts() {
+        var closed = new KanalarzRollbacks(kanalarz, KanalarzRollbackSettings.defaults());
+        closed.close();
+
+        assertThatThrownBy(() -> closed.submit(UUID.randomUUID()))
+            .isExactlyInstanceOf(IllegalStateException.class);
+    }
+
+    private UUID failDeferred(String item) {
+        var contextId = UUID.randomUUID();
+        assertThatThrownBy(() ->
+            kanalarz.newContext().resumes(contextId).option(Kanalarz.Option.DEFER_ROLLBACK).consume(ctx -> {
+                steps.add(item);
+                throw new RuntimeException("test");
+            })
+        ).isExactlyInstanceOf(KanalarzException.KanalarzThrownOutsideOfStepException.class);
+        return contextId;
+    }
+}
@@ -1,8 +1,5 @@
 package com.gbujak.kanalarz;
 
-import com.gbujak.kanalarz.annotations.RollbackOnly;
-import com.gbujak.kanalarz.annotations.Step;
-import com.gbujak.kanalarz.annotations.StepsHolder;
 import org.aopalliance.intercept.MethodInvocation;
 import org.junit.jupiter.api.Test;
 
@@ -82,9 +79,7 @@ class KanalarzStepExecutionStateGuardTests {
             var method = Kanalarz.class.getDeclaredMethod(
                 "handleInContextMethodExecution",
                 MethodInvocation.class,
-                StepsHolder.class,
-                Step.class,
-                RollbackOnly.class,
+                StepInfoClasses.StepInfo.class,
                 KanalarzContext.class
             );
             method.setAccessible(true);
@@ -98,7 +93,7 @@ class KanalarzStepExecutionStateGuardTests {
         var kanalarz = new Kanalarz(new KanalarzStepsRegistry(), NOOP_SERIALIZATION, NOOP_PERSISTENCE);
 
         try {
-            return HANDLE_IN_CONTEXT_METHOD.invoke(kanalarz, null, null, null, null, context);
+            return HANDLE_IN_CONTEXT_METHOD.invoke(kanalarz, null, null, context);
         } catch (InvocationTargetException e) {
             if (e.getCause() instanceof RuntimeException runtimeException) {
                 throw runtimeException;
@@ -0,0 +1,205 @@
+package com.gbujak.kanalarz;
+
+import com.gbujak.kanalarz.annotations.Rollback;
+import com.gbujak.kanalarz.annotations.Step;
+import com.gbujak.kanalarz.annotations.StepsHolder;
+import com.gbujak.kanalarz.persistence.InMemoryWorkQueue;
+import com.gbujak.kanalarz.testimplementations.TestPersistence;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.stereotype.Component;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+
+@Service
+class KanalarzWorkersTestService {
+
+    final List<String> items = Collections.synchronizedList(new ArrayList<>());
+}
+
+@Component
+@StepsHolder("workers-steps")
+class KanalarzWorkersTestSteps {
+
+    @Autowired private KanalarzWorkersTestService service;
+
+    @Step("add")
+    void add(String item) {
+        service.items.add(item);
+    }
+
+    @Rollback("add")
+    void rollbackAdd(String item) {
+        service.items.remove(item);
+    }
+}
+
+@SpringBootTest
+public class KanalarzWorkersTests {
+
+    @Autowired Kanalarz kanalarz;
+    @Autowired KanalarzSerialization serialization;
+    @Autowired KanalarzPersistence kanalarzPersistence;
+    @Autowired KanalarzWorkersTestSteps steps;
+    @Autowired KanalarzWorkersTestService service;
+
+    InMemoryWorkQueue queue;
+
+    @BeforeEach
+    void beforeEach() {
+        service.items.clear();
+        queue = new InMemoryWorkQueue();
+    }
+
+    @Test
+    void submittedPipelineRunsOnWorkerAndCompletesItem() {
+        var contexts = Collections.synchronizedList(new ArrayList<UUID>());
+        try (var workers = workers(4, Duration.ofMinutes(5))) {
+            workers.registerPipeline("add", String.class, (ctx, input) -> {
+                contexts.add(ctx.id());
+                steps.add(input);
+            });
+
+            var contextId = workers.submit("add", "submitted");
+            assertThat(queue.size()).isEqualTo(1);
+            workers.start();
+
+            awaitUntil(() -> queue.size() == 0);
+            assertThat(contexts).containsExactly(contextId);
+            assertThat(service.items).containsExactly("submitted");
+            assertThat(testPersistence().contextStartedEvents)
+                .filteredOn(it -> it.contextId().equals(contextId))
+                .singleElement()
+                .satisfies(it -> assertThat(it.metadata())
+                    .containsEntry(KanalarzWorkers.PIPELINE_METADATA_KEY, "add"));
+        }
+    }
+
+    @Test
+    void runningPipelinesStayWithinConcurrency() {
+        var running = new AtomicInteger();
+        var maxRunning = new AtomicInteger();
+        try (var workers = workers(3, Duration.ofMinutes(5))) {
+            workers.registerPipeline("add", String.class, (ctx, input) -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    steps.add(input);
+                    sleep(50);
+                } finally {
+                    running.decrementAndGet();
+                }
+            });
+
+            IntStream.range(0, 12).forEach(it -> workers.submit("add", "item-" + it));
+            workers.start();
+
+            awaitUntil(() -> queue.size() == 0);
+        }
+
+        assertThat(service.items).hasSize(12);
+        assertThat(maxRunning.get()).isBetween(1, 3);
+    }
+
+    @Test
+    void itemOfUnregisteredPipelineStaysInQueue() {
+        try (var workers = workers(4, Duration.ofMinutes(5))) {
+            workers.registerPipeline("add", String.class, (ctx, input) -> steps.add(input));
+
+            workers.submit("missing", "unregistered");
+            workers.submit("add", "registered");
+            workers.start();
+
+            awaitUntil(() -> service.items.contains("registered"));
+            sleep(100);
+            assertThat(queue.size()).isEqualTo(1);
+        }
+        assertThat(testPersistence().contextStartedEvents)
+            .noneMatch(it -> "missing".equals(it.metadata().get(KanalarzWorkers.PIPELINE_METADATA_KEY)));
+    }
+
+    @Test
+    void persistenceFailureLeavesItemClaimableAgain() {
+        var runs = new AtomicInteger();
+        try (var workers = workers(4, Duration.ofMillis(200))) {
+            workers.registerPipeline("add", String.class, (ctx, input) -> {
+                runs.incrementAndGet();
+                steps.add(input);
+            });
+
+            var contextId = workers.submit("add", "retried");
+            testPersistence().failNextHistoryReadOf.add(contextId);
+            workers.start();
+
+            awaitUntil(() -> queue.size() == 0);
+            assertThat(testPersistence().failNextHistoryReadOf).doesNotContain(contextId);
+            assertThat(runs.get()).isEqualTo(1);
+            assertThat(service.items).containsExactly("retried");
+        }
+    }
+
+    @Test
+    void closeWaitsForRunningPipelines() {
+        var started = new CountDownLatch(1);
+        var finished = new AtomicBoolean(false);
+        var workers = workers(4, Duration.ofMinutes(5));
+        workers.registerPipeline("add", String.class, (ctx, input) -> {
+            started.countDown();
+            sleep(300);
+            steps.add(input);
+            finished.set(true);
+        });
+
+        workers.submit("add", "slow");
+        workers.start();
+        awaitUntil(() -> started.getCount() == 0);
+        workers.close();
+
+        assertThat(finished.get()).isTrue();
+        assertThat(service.items).containsExactly("slow");
+        assertThat(queue.size()).isZero();
+    }
+
+    private KanalarzWorkers workers(int concurrency, Duration visibilityTimeout) {
+        return new KanalarzWorkers(
+            kanalarz,
+            queue,
+            serialization,
+            new KanalarzWorkerSettings(concurrency, Duration.ofMillis(10), visibilityTimeout)
+        );
+    }
+
+    private TestPersistence testPersistence() {
+        return (TestPersistence) kanalarzPersistence;
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) {
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.gbujak.kanalarz;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PersistencePipelineTests {
+
+    private static class BatchRecordingPersistence implements KanalarzPersistence {
+
+        final List<List<StepEvent>> batches = Collections.synchronizedList(new ArrayList<>());
+        final List<StepEvent> directWrites = Collections.synchronizedList(new ArrayList<>());
+        volatile boolean failBatches = false;
+
+        @Override
+        public void stepStarted(StepStartedEvent stepStartedEvent) {
+            directWrites.add(stepStartedEvent);
+        }
+
+        @Override
+        public void stepCompleted(StepCompletedEvent stepCompletedEvent) {
+            directWrites.add(stepCompletedEvent);
+        }
+
+        @Override
+        public void stepEventsBatch(List<StepEvent> events) {
+            if (failBatches) {
+                throw new RuntimeException("batch-failed");
+            }
+            batches.add(List.copyOf(events));
+        }
+
+        @Override
+        public List<StepExecutedInfo> getExecutedStepsInContextInOrderOfExecutionStarted(UUID contextId) {
+            return List.of();
+        }
+
+        List<StepEvent> batchedEvents() {
+            return batches.stream().flatMap(List::stream).toList();
+        }
+    }
+
+    @Test
+    void syncEventsShouldBeWrittenDirectly() {
+        var persistence = new BatchRecordingPersistence();
+        try (var pipeline = pipeline(persistence, Duration.ZERO)) {
+            var event = stepStarted();
+            pipeline.stepStarted(event, Kanalarz.Durability.SYNC);
+
+            assertThat(persistence.directWrites).containsExactly(event);
+            assertThat(persistence.batches).isEmpty();
+        }
+    }
+
+    @Test
+    void groupCommitShouldReturnAfterTheEventIsWrittenInABatch() {
+        var persistence = new BatchRecordingPersistence();
+        try (var pipeline = pipeline(persistence, Duration.ZERO)) {
+            var event = stepStarted();
+            pipeline.stepStarted(event, Kanalarz.Durability.GROUP_COMMIT);
+
+            assertThat(persistence.batchedEvents()).containsExactly(event);
+            assertThat(persistence.directWrites).isEmpty();
+        }
+    }
+
+    @Test
+    void groupCommitShouldShareBatchesBetweenConcurrentWriters() throws InterruptedException {
+        var persistence = new BatchRecordingPersistence();
+        int writers = 50;
+        try (var pipeline = pipeline(persistence, Duration.ofMillis(50))) {
+            var start = new CountDownLatch(1);
+            var threads = new ArrayList<Thread>();
+            for (int i = 0; i < writers; i++) {
+                threads.add(Thread.ofVirtual().start(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    pipeline.stepStarted(stepStarted(), Kanalarz.Durability.GROUP_COMMIT);
+                }));
+            }
+            start.countDown();
+            for (var thread : threads) {
+                thread.join();
+            }
+
+            assertThat(persistence.batchedEvents()).hasSize(writers);
+            assertThat(persistence.batches.size()).isLessThan(writers);
+        }
+    }
+
+    @Test
+    void readShouldWaitForAsyncEventsInOrder() {
+        var persistence = new BatchRecordingPersistence();
+        try (var pipeline = pipeline(persistence, Duration.ofMillis(20))) {
+            List<KanalarzPersistence.StepEvent> events = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                var event = stepStarted();
+                events.add(event);
+                pipeline.stepStarted(event, Kanalarz.Durability.ASYNC);
+            }
+
+            pipeline.getExecutedStepsInContextInOrderOfExecutionStarted(UUID.randomUUID());
+
+            assertThat(persistence.batchedEvents()).containsExactlyElementsOf(events);
+        }
+    }
+
+    @Test
+    void groupCommitShouldThrowWhenTheBatchFails() {
+        var persistence = new BatchRecordingPersistence();
+        persistence.failBatches = true;
+        try (var pipeline = pipeline(persistence, Duration.ZERO)) {
+            assertThatThrownBy(() -> pipeline.stepStarted(stepStarted(), Kanalarz.Durability.GROUP_COMMIT))
+                .isExactlyInstanceOf(KanalarzException.KanalarzPersistenceException.class)
+                .hasMessageContaining("batch-failed");
+        }
+    }
+
+    @Test
+    void failedAsyncWriteShouldBeThrownFromTheNextRead() {
+        var persistence = new BatchRecordingPersistence();
+        persistence.failBatches = true;
+        try (var pipeline = pipeline(persistence, Duration.ZERO)) {
+            var event = stepStarted();
+            var contextId = event.contexts().getFirst();
+            pipeline.stepStarted(event, Kanalarz.Durability.ASYNC);
+
+            assertThatThrownBy(() -> pipeline.getExecutedStepsInContextInOrderOfExecutionStarted(contextId))
+                .isExactlyInstanceOf(KanalarzException.KanalarzPersistenceException.class)
+                .hasMessageContaining("batch-failed");
+
+            // reported once
+            assertThat(pipeline.getExecutedStepsInContextInOrderOfExecutionStarted(contextId)).isEmpty();
+        }
+    }
+
+    @Test
+    void failedAsyncWriteShouldOnlyBeThrownToItsContexts() {
+        var persistence = new BatchRecordingPersistence();
+        persistence.failBatches = true;
+        try (var pipeline = pipeline(persistence, Duration.ZERO)) {
+            var root = UUID.randomUUID();
+            var nested = UUID.randomUUID();
+            pipeline.stepStarted(stepStarted(List.of(root, nested)), Kanalarz.Durability.ASYNC);
+
+            assertThat(pipeline.getExecutedStepsInContextInOrderOfExecutionStarted(UUID.randomUUID())).isEmpty();
+            assertThatThrownBy(() -> pipeline.getExecutedStepsInContextInOrderOfExecutionStarted(nested))
+                .isExactlyInstanceOf(KanalarzException.KanalarzPersistenceException.class)
+                .hasMessageContaining("batch-failed");
+            assertThatThrownBy(() -> pipeline.getExecutedStepsInContextInOrderOfExecutionStarted(root))
+                .isExactlyInstanceOf(KanalarzException.KanalarzPersistenceException.class)
+                .hasMessageContaining("batch-failed");
+        }
+    }
+
+    @Test
+    void closeShouldWriteBufferedEvents() {
+        var persistence = new BatchRecordingPersistence();
+        var pipeline = pipeline(persistence, Duration.ofSeconds(10));
+        var event = stepStarted();
+        pipeline.stepStarted(event, Kanalarz.Durability.ASYNC);
+
+        pipeline.close();
+
+        assertThat(persistence.batchedEvents()).containsExactly(event);
+
+        var afterClose = stepStarted();
+        pipeline.stepStarted(afterClose, Kanalarz.Durability.ASYNC);
+        assertThat(persistence.directWrites).containsExactly(afterClose);
+    }
+
+    private static KanalarzPersistencePipeline pipeline(KanalarzPersistence persistence, Duration maxBatchDelay) {
+        return new KanalarzPersistencePipeline(
+            new KanalarzPersistenceExceptionWrapper(persistence),
+            new KanalarzPersistencePipelineSettings(1024, 256, maxBatchDelay)
+        );
+    }
+
+    private static KanalarzPersistence.StepStartedEvent stepStarted() {
+        return stepStarted(List.of(UUID.randomUUID()));
+    }
+
+    private static KanalarzPersistence.StepStartedEvent stepStarted(List<UUID> contexts) {
+        return new KanalarzPersistence.StepStartedEvent(
+            contexts,
+            UUID.randomUUID(),
+            Optional.empty(),
+            Optional.empty(),
+            Map.of(),
+            "test:step",
+            null,
+            "",
+            false,
+            false,
+            "r.s0"
+        );
+    }
+}
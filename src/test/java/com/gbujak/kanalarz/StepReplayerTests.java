@@ -0,0 +1,238 @@
+package com.gbujak.kanalarz;
+
+import com.gbujak.kanalarz.annotations.Step;
+import com.gbujak.kanalarz.annotations.StepsHolder;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StepReplayerTests {
+
+    private static final String STEP = "replayer-tests:step";
+
+    @StepsHolder("replayer-tests")
+    static class ReplayerTestSteps {
+        @Step("step")
+        public String step(String value) {
+            return value;
+        }
+    }
+
+    private final KanalarzStepsRegistry registry = new KanalarzStepsRegistry();
+    private final AtomicInteger comparisons = new AtomicInteger();
+
+    private final KanalarzSerialization serialization = new KanalarzSerialization() {
+        @Override
+        public String serializeStepCalled(List<SerializeParameterInfo> parametersInfo, SerializeReturnInfo returnInfo) {
+            return "";
+        }
+
+        @Override
+        public DeserializeParametersResult deserializeParameters(
+            String serialized,
+            List<DeserializeParameterInfo> parametersInfo,
+            Type returnType
+        ) {
+            return new DeserializeParametersResult(Map.of(), serialized, null);
+        }
+
+        @Override
+        public boolean parametersAreEqualIgnoringReturn(String left, String right) {
+            comparisons.incrementAndGet();
+            return left.equals(right);
+        }
+    };
+
+    @BeforeEach
+    void registerStep() throws NoSuchMethodException {
+        var method = ReplayerTestSteps.class.getMethod("step", String.class);
+        registry.registerRollforwardStep(
+            new ReplayerTestSteps(),
+            method,
+            ReplayerTestSteps.class.getAnnotation(StepsHolder.class),
+            method.getAnnotation(Step.class),
+            false
+        );
+    }
+
+    @Test
+    void shouldMarkNestedStepsAsReplayedWithTheirParent() {
+        var replayer = replayer(
+            step("r.s0"),
+            step("r.s0.s0"),
+            step("r.s0.s0.s0"),
+            step("r.s0.f1-0.s0"),
+            step("r.s1"),
+            step("r.s10")
+        );
+
+        assertThat(replayer.findNextStep("r.s0", STEP, params("r.s0")))
+            .isEqualTo(new StepReplayer.SearchResult.Found("r.s0"));
+        assertThat(replayer.isDone()).isFalse();
+        assertThat(replayer.unreplayedStepsInfo())
+            .contains("[r.s1]", "[r.s10]")
+            .doesNotContain("[r.s0.");
+
+        replayer.findNextStep("r.s1", STEP, params("r.s1"));
+        assertThat(replayer.isDone()).isFalse();
+
+        replayer.findNextStep("r.s10", STEP, params("r.s10"));
+        assertThat(replayer.isDone()).isTrue();
+    }
+
+    @Test
+    void shouldRerunFailedStepsWithoutMarkingNestedSteps() {
+        var replayer = replayer(
+            failedStep("r.s0"),
+            step("r.s0.s0")
+        );
+
+        assertThat(replayer.findNextStep("r.s0", STEP, params("r.s0")))
+            .isEqualTo(StepReplayer.SearchResult.FoundShouldRerun);
+        assertThat(replayer.isDone()).isFalse();
+
+        replayer.findNextStep("r.s0.s0", STEP, params("r.s0.s0"));
+        assertThat(replayer.isDone()).isTrue();
+    }
+
+    @Test
+    void shouldReplayLargeHistoryWithConcurrentForkBranches() throws InterruptedException {
+        var branches = 16;
+        var stepsPerBranch = 5_000;
+        var steps = new ArrayList<KanalarzPersistence.StepExecutedInfo>();
+        for (int branch = 0; branch < branches; branch++) {
+            for (int i = 0; i < stepsPerBranch; i++) {
+                var path = "r.f0-" + branch + ".s" + i;
+                steps.add(step(path));
+                steps.add(step(path + ".s0"));
+            }
+        }
+        var replayer = new StepReplayer(steps, serialization, registry);
+
+        var threads = new ArrayList<Thread>();
+        for (int branch = 0; branch < branches; branch++) {
+            var branchPath = "r.f0-" + branch;
+            threads.add(Thread.ofVirtual().start(() -> {
+                for (int i = 0; i < stepsPerBranch; i++) {
+                    var path = branchPath + ".s" + i;
+                    replayer.findNextStep(path, STEP, params(path));
+                }
+            }));
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        assertThat(replayer.isDone()).isTrue();
+    }
+
+    @Test
+    void shouldPoisonReplayerWhenStepIsReplayedTwice() {
+        var replayer = replayer(step("r.s0"), step("r.s1"));
+
+        replayer.findNextStep("r.s0", STEP, params("r.s0"));
+
+        assertThatThrownBy(() -> replayer.findNextStep("r.s0", STEP, params("r.s0")))
+            .isExactlyInstanceOf(KanalarzException.KanalarzInternalError.class)
+            .hasMessageContaining("same path multiple times");
+        assertThatThrownBy(() -> replayer.findNextStep("r.s1", STEP, params("r.s1")))
+            .isExactlyInstanceOf(KanalarzException.KanalarzContextPoisonedException.class);
+        assertThat(replayer.isDone()).isFalse();
+    }
+
+    @Test
+    void shouldReplayLatestExecutionOfRepeatedPath() {
+        var replayer = replayer(step("r.s0", "first"), step("r.s0", "second"));
+
+        assertThat(replayer.findNextStep("r.s0", STEP, params("second")))
+            .isEqualTo(new StepReplayer.SearchResult.Found("second"));
+        assertThat(replayer.isDone()).isTrue();
+    }
+
+    @Test
+    void shouldMatchEqualFingerprintsWithoutComparingPayloads() {
+        var replayer = replayer(stepExecutedInfo("r.s0", "persisted", false, "fingerprint"));
+
+        assertThat(replayer.findNextStep("r.s0", STEP, params("current", "fingerprint")))
+            .isEqualTo(new StepReplayer.SearchResult.Found("persisted"));
+        assertThat(comparisons).hasValue(0);
+    }
+
+    @Test
+    void shouldComparePayloadsWhenFingerprintsDiffer() {
+        var replayer = replayer(
+            stepExecutedInfo("r.s0", "r.s0", false, "old-fingerprint"),
+            stepExecutedInfo("r.s1", "r.s1", false, null)
+        );
+
+        replayer.findNextStep("r.s0", STEP, params("r.s0", "new-fingerprint"));
+        replayer.findNextStep("r.s1", STEP, params("r.s1", "fingerprint"));
+
+        assertThat(comparisons).hasValue(2);
+        assertThat(replayer.isDone()).isTrue();
+    }
+
+    @Test
+    void shouldFailWhenFingerprintsAndPayloadsDiffer() {
+        var replayer = replayer(stepExecutedInfo("r.s0", "persisted", false, "old-fingerprint"));
+
+        assertThatThrownBy(() -> replayer.findNextStep("r.s0", STEP, params("current", "new-fingerprint")))
+            .isExactlyInstanceOf(KanalarzException.KanalarzNewStepBeforeReplayEndedException.class)
+            .hasMessageContaining("different parameters");
+    }
+
+    private StepReplayer replayer(KanalarzPersistence.StepExecutedInfo... steps) {
+        return new StepReplayer(List.of(steps), serialization, registry);
+    }
+
+    private static KanalarzSerialization.SerializedParameters params(String serialized) {
+        return params(serialized, null);
+    }
+
+    private static KanalarzSerialization.SerializedParameters params(String serialized, @Nullable String fingerprint) {
+        return new KanalarzSerialization.SerializedParameters(serialized, List.of(), null, fingerprint);
+    }
+
+    private static KanalarzPersistence.StepExecutedInfo step(String executionPath) {
+        return step(executionPath, executionPath);
+    }
+
+    private static KanalarzPersistence.StepExecutedInfo failedStep(String executionPath) {
+        return stepExecutedInfo(executionPath, executionPath, true, null);
+    }
+
+    private static KanalarzPersistence.StepExecutedInfo step(String executionPath, String serialized) {
+        return stepExecutedInfo(executionPath, serialized, false, null);
+    }
+
+    private static KanalarzPersistence.StepExecutedInfo stepExecutedInfo(
+        String executionPath,
+        String serialized,
+        boolean failed,
+        @Nullable String fingerprint
+    ) {
+        return new KanalarzPersistence.StepExecutedInfo(
+            List.of(UUID.randomUUID()),
+            UUID.randomUUID(),
+            STEP,
+            serialized,
+            Optional.empty(),
+            Optional.empty(),
+            failed,
+            executionPath,
+            fingerprint,
+            List.of()
+        );
+    }
+}
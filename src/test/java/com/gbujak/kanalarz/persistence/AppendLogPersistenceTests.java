@@ -0,0 +1,314 @@
+package com.gbujak.kanalarz.persistence;
+
+import com.gbujak.kanalarz.Kanalarz;
+import com.gbujak.kanalarz.KanalarzPersistence.ContextFinishedEvent;
+import com.gbujak.kanalarz.KanalarzPersistence.ContextOutcome;
+import com.gbujak.kanalarz.KanalarzPersistence.ContextRollbackState;
+import com.gbujak.kanalarz.KanalarzPersistence.ContextStartedEvent;
+import com.gbujak.kanalarz.KanalarzPersistence.HistoryOrder;
+import com.gbujak.kanalarz.KanalarzPersistence.StepCompletedEvent;
+import com.gbujak.kanalarz.KanalarzPersistence.StepExecutedInfo;
+import com.gbujak.kanalarz.KanalarzPersistence.StepStartedEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AppendLogPersistenceTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldReturnCompletedStepsInStartOrderForEveryContext() {
+        var parentContext = UUID.randomUUID();
+        var childContext = UUID.randomUUID();
+        var first = UUID.randomUUID();
+        var second = UUID.randomUUID();
+
+        try (var persistence = open(AppendLogPersistenceSettings.defaults(directory))) {
+            persistence.stepStarted(started(List.of(parentContext), first, "r.s0"));
+            persistence.stepStarted(started(List.of(childContext, parentContext), second, "r.s1.s0"));
+            persistence.stepCompleted(completed(List.of(childContext, parentContext), second, "r.s1.s0", true));
+            persistence.stepCompleted(completed(List.of(parentContext), first, "r.s0", false));
+
+            assertThat(persistence.getExecutedStepsInContextInOrderOfExecutionStarted(parentContext))
+                .extracting(StepExecutedInfo::stepId)
+                .containsExactly(first, second);
+
+            var child = persistence.getExecutedStepsInContextInOrderOfExecutionStarted(childContext);
+            assertThat(child).singleElement().satisfies(step -> {
+                assertThat(step.stepId()).isEqualTo(second);
+                assertThat(step.executionPath()).isEqualTo("r.s1.s0");
+                assertThat(step.serializedExecutionResult()).isEqualTo("result-" + second);
+                assertThat(step.failed()).isTrue();
+                assertThat(step.parametersFingerprint()).isEqualTo("fingerprint-" + second);
+            });
+        }
+    }
+
+    @Test
+    void shouldLeaveOutStepsThatNeverCompleted() {
+        var context = UUID.randomUUID();
+        var completedStep = UUID.randomUUID();
+
+        try (var persistence = open(AppendLogPersistenceSettings.defaults(directory))) {
+            persistence.stepStarted(started(List.of(context), completedStep, "r.s0"));
+            persistence.stepStarted(started(List.of(context), UUID.randomUUID(), "r.s1"));
+            persistence.stepCompleted(completed(List.of(context), completedStep, "r.s0", false));
+
+            assertThat(persistence.getExecutedStepsInContextInOrderOfExecutionStarted(context))
+                .extracting(StepExecutedInfo::stepId)
+                .containsExactly(completedStep);
+        }
+    }
+
+    @Test
+    void shouldReadHistoryPagesNewestFirst() {
+        var context = UUID.randomUUID();
+        var first = Kanalarz.timeOrderedEpochPlus1();
+        var second = Kanalarz.timeOrderedEpochPlus1();
+        var third = Kanalarz.timeOrderedEpochPlus1();
+
+        try (var persistence = open(AppendLogPersistenceSettings.defaults(directory))) {
+            for (var stepId : List.of(first, second, third)) {
+                persistence.stepStarted(started(List.of(context), stepId, "r.s0"));
+                persistence.stepCompleted(completed(List.of(context), stepId, "r.s0", false));
+            }
+
+            var firstPage = persistence.getExecutedStepsPage(context, HistoryOrder.NEWEST_FIRST, null, 2);
+            var lastPage = persistence.getExecutedStepsPage(
+                context, HistoryOrder.NEWEST_FIRST, firstPage.nextCursor(), 2
+            );
+
+            assertThat(firstPage.steps()).extracting(StepExecutedInfo::stepId).containsExactly(third, second);
+            assertThat(firstPage.nextCursor()).isEqualTo(second);
+            assertThat(lastPage.steps()).extracting(StepExecutedInfo::stepId).containsExactly(first);
+            assertThat(lastPage.nextCursor()).isNull();
+        }
+    }
+
+    @Test
+    void shouldRecoverIndexAfterReopening() {
+        var context = UUID.randomUUID();
+        var first = UUID.randomUUID();
+        var second = UUID.randomUUID();
+        var settings = new AppendLogPersistenceSettings(directory, 256, true);
+
+        try (var persistence = open(settings)) {
+            persistence.stepEventsBatch(List.of(
+                started(List.of(context), first, "r.s0"),
+                completed(List.of(context), first, "r.s0", false)
+            ));
+            persistence.stepStarted(started(List.of(context), second, "r.s1"));
+        }
+
+        try (var persistence = open(settings)) {
+            persistence.stepCompleted(completed(List.of(context), second, "r.s1", false));
+
+            assertThat(persistence.getExecutedStepsInContextInOrderOfExecutionStarted(context))
+                .extracting(StepExecutedInfo::stepId)
+                .containsExactly(first, second);
+        }
+        assertThat(directory.toFile().list()).hasSizeGreaterThan(1);
+    }
+
+    @Test
+    void shouldRecoverRecordsSpanningAndExceedingTheReadBuffer() {
+        var context = UUID.randomUUID();
+        var large = UUID.randomUUID();
+        var largeResult = "x".repeat(3 * 1024 * 1024);
+        var small = new ArrayList<UUID>();
+        var settings = new AppendLogPersistenceSettings(directory, 64L * 1024 * 1024, false);
+
+        try (var persistence = open(settings)) {
+            for (int i = 0; i < 5_000; i++) {
+                var step = UUID.randomUUID();
+                small.add(step);
+                persistence.stepStarted(started(List.of(context), step, "r.s" + i));
+                persistence.stepCompleted(completed(List.of(context), step, "r.s" + i, false));
+            }
+            persistence.stepStarted(started(List.of(context), large, "r.s5000"));
+            persistence.stepCompleted(new StepCompletedEvent(
+                List.of(context),
+                large,
+                Optional.empty(),
+                Optional.empty(),
+                Map.of(),
+                "steps:step",
+                null,
+                largeResult,
+                false,
+                false,
+                "r.s5000"
+            ));
+        }
+
+        try (var persistence = open(settings)) {
+            var steps = persistence.getExecutedStepsInContextInOrderOfExecutionStarted(context);
+            assertThat(steps).extracting(StepExecutedInfo::stepId).hasSize(5_001).startsWith(small.getFirst());
+            assertThat(steps.getLast().stepId()).isEqualTo(large);
+            assertThat(steps.getLast().serializedExecutionResult()).isEqualTo(largeResult);
+        }
+    }
+
+    @Test
+    void shouldRecoverUnfinishedRootContextsAfterReopening() {
+        var root = UUID.randomUUID();
+        var nested = UUID.randomUUID();
+        var finished = UUID.randomUUID();
+        var startedAt = Instant.parse("2026-01-01T00:00:00.123456789Z");
+        var settings = AppendLogPersistenceSettings.defaults(directory);
+
+        try (var persistence = open(settings)) {
+            persistence.contextStarted(new ContextStartedEvent(root, null, false, false, Map.of("key", "value"), startedAt));
+            persistence.contextStarted(new ContextStartedEvent(nested, root, false, false, Map.of(), startedAt));
+            persistence.contextStarted(new ContextStartedEvent(finished, null, true, false, Map.of(), startedAt));
+            persistence.contextFinished(new ContextFinishedEvent(
+                finished,
+                null,
+                false,
+                ContextOutcome.FAILED,
+                ContextRollbackState.PENDING,
+                Map.of(),
+                startedAt,
+                Duration.ofMillis(5)
+            ));
+        }
+
+        try (var persistence = open(settings)) {
+            assertThat(persistence.getUnfinishedContexts(startedAt.plusSeconds(1), 10))
+                .singleElement()
+                .isEqualTo(new ContextStartedEvent(root, null, false, false, Map.of("key", "value"), startedAt));
+            assertThat(persistence.getUnfinishedContexts(startedAt, 10)).isEmpty();
+        }
+    }
+
+    @Test
+    void shouldTruncateTornRecordAtTheEndOfTheLog() throws IOException {
+        var context = UUID.randomUUID();
+        var step = UUID.randomUUID();
+
+        try (var persistence = open(AppendLogPersistenceSettings.defaults(directory))) {
+            persistence.stepStarted(started(List.of(context), step, "r.s0"));
+            persistence.stepCompleted(completed(List.of(context), step, "r.s0", false));
+        }
+        var segment = directory.resolve("%020d.log".formatted(0));
+        var validSize = Files.size(segment);
+        Files.write(segment, new byte[] { 0, 0, 1, 0, 42, 42 }, StandardOpenOption.APPEND);
+
+        try (var persistence = open(AppendLogPersistenceSettings.defaults(directory))) {
+            assertThat(Files.size(segment)).isEqualTo(validSize);
+            assertThat(persistence.getExecutedStepsInContextInOrderOfExecutionStarted(context))
+                .extracting(StepExecutedInfo::stepId)
+                .containsExactly(step);
+        }
+    }
+
+    @Test
+    void shouldFailDecodingStepRecordWithoutBatchedRollbackIds() {
+        var record = AppendLogCodec.encode(started(List.of(UUID.randomUUID()), UUID.randomUUID(), "r.s0"));
+        var payload = ByteBuffer.wrap(record, AppendLogCodec.HEADER_SIZE, record.length - AppendLogCodec.HEADER_SIZE)
+            .slice();
+
+        assertThat(AppendLogCodec.decode(payload.duplicate()))
+            .isInstanceOfSatisfying(StepStartedEvent.class, it -> assertThat(it.batchedRollbackFor()).isEmpty());
+        // an empty batchedRollbackFor is written as a single int count
+        assertThatThrownBy(() -> AppendLogCodec.decode(payload.limit(payload.limit() - Integer.BYTES)))
+            .isExactlyInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void shouldKeepTheLogOpenWhenWriterOrReaderIsInterrupted() {
+        var context = UUID.randomUUID();
+        var first = UUID.randomUUID();
+        var second = UUID.randomUUID();
+        var settings = new AppendLogPersistenceSettings(directory, 64 * 1024 * 1024, true);
+
+        try (var persistence = open(settings)) {
+            Thread.currentThread().interrupt();
+            try {
+                persistence.stepStarted(started(List.of(context), first, "r.s0"));
+                persistence.stepCompleted(completed(List.of(context), first, "r.s0", false));
+                assertThat(persistence.getExecutedStepsInContextInOrderOfExecutionStarted(context))
+                    .extracting(StepExecutedInfo::stepId)
+                    .containsExactly(first);
+                assertThat(Thread.currentThread().isInterrupted()).isTrue();
+            } finally {
+                Thread.interrupted();
+            }
+
+            persistence.stepStarted(started(List.of(context), second, "r.s1"));
+            persistence.stepCompleted(completed(List.of(context), second, "r.s1", false));
+        }
+
+        try (var persistence = open(settings)) {
+            assertThat(persistence.getExecutedStepsInContextInOrderOfExecutionStarted(context))
+                .extracting(StepExecutedInfo::stepId)
+                .containsExactly(first, second);
+        }
+    }
+
+    @Test
+    void shouldRejectWritesAfterClosing() {
+        var persistence = open(AppendLogPersistenceSettings.defaults(directory));
+        persistence.close();
+
+        assertThatThrownBy(() -> persistence.stepStarted(started(List.of(UUID.randomUUID()), UUID.randomUUID(), "r.s0")))
+            .isExactlyInstanceOf(IllegalStateException.class);
+    }
+
+    private static AppendLogPersistence open(AppendLogPersistenceSettings settings) {
+        return new AppendLogPersistence(settings);
+    }
+
+    private static StepStartedEvent started(List<UUID> contexts, UUID stepId, String executionPath) {
+        return new StepStartedEvent(
+            contexts,
+            stepId,
+            Optional.empty(),
+            Optional.empty(),
+            Map.of("key", "value"),
+            "steps:step",
+            null,
+            "parameters-" + stepId,
+            false,
+            false,
+            executionPath,
+            "fingerprint-" + stepId,
+            List.of()
+        );
+    }
+
+    private static StepCompletedEvent completed(List<UUID> contexts, UUID stepId, String executionPath, boolean failed) {
+        return new StepCompletedEvent(
+            contexts,
+            stepId,
+            Optional.empty(),
+            Optional.empty(),
+            Map.of("key", "value"),
+            "steps:step",
+            null,
+            "result-" + stepId,
+            failed,
+            false,
+            executionPath,
+            "fingerprint-" + stepId,
+            List.of()
+        );
+    }
+}
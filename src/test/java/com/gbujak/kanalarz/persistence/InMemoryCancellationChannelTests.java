@@ -0,0 +1,40 @@
+package com.gbujak.kanalarz.persistence;
+
+import com.gbujak.kanalarz.KanalarzCancellationChannel.CancelRequest;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryCancellationChannelTests {
+
+    private final InMemoryCancellationChannel channel = new InMemoryCancellationChannel(Duration.ofMillis(100));
+
+    @Test
+    void shouldReturnRequestsOfPolledContextsOnly() {
+        var running = UUID.randomUUID();
+        var other = UUID.randomUUID();
+        var request = new CancelRequest(running, false, Instant.now());
+        channel.publish(request);
+        channel.publish(new CancelRequest(other, true, Instant.now()));
+
+        assertThat(channel.poll(Set.of(running, UUID.randomUUID()))).containsExactly(request);
+    }
+
+    @Test
+    void shouldDropAcknowledgedRequests() {
+        var contextId = UUID.randomUUID();
+        var first = new CancelRequest(contextId, false, Instant.now());
+        var second = new CancelRequest(contextId, true, Instant.now().plusMillis(1));
+        channel.publish(first);
+        channel.publish(second);
+
+        channel.acknowledge(first);
+
+        assertThat(channel.poll(Set.of(contextId))).containsExactly(second);
+    }
+}
@@ -0,0 +1,57 @@
+package com.gbujak.kanalarz.persistence;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryLeasesTests {
+
+    private final AtomicLong now = new AtomicLong();
+    private final InMemoryLeases leases = new InMemoryLeases(Duration.ofSeconds(10), now::get);
+
+    @Test
+    void shouldGrantLeaseToOneHolderAtATime() {
+        var contextId = UUID.randomUUID();
+
+        var lease = leases.tryAcquire(contextId);
+
+        assertThat(lease).isNotNull();
+        assertThat(leases.tryAcquire(contextId)).isNull();
+        assertThat(leases.tryAcquire(UUID.randomUUID())).isNotNull();
+
+        leases.release(lease);
+        assertThat(leases.tryAcquire(contextId)).isNotNull();
+    }
+
+    @Test
+    void shouldKeepRenewedLease() {
+        var contextId = UUID.randomUUID();
+        var lease = leases.tryAcquire(contextId);
+
+        now.addAndGet(Duration.ofSeconds(8).toNanos());
+        assertThat(leases.renew(lease)).isTrue();
+        now.addAndGet(Duration.ofSeconds(8).toNanos());
+
+        assertThat(leases.tryAcquire(contextId)).isNull();
+    }
+
+    @Test
+    void shouldFenceOffExpiredHolder() {
+        var contextId = UUID.randomUUID();
+        var expired = leases.tryAcquire(contextId);
+
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        var takenOver = leases.tryAcquire(contextId);
+
+        assertThat(takenOver).isNotNull();
+        assertThat(takenOver.fencingToken()).isGreaterThan(expired.fencingToken());
+        assertThat(leases.renew(expired)).isFalse();
+
+        leases.release(expired);
+        assertThat(leases.renew(takenOver)).isTrue();
+    }
+}
@@ -0,0 +1,211 @@
+package com.gbujak.kanalarz.persistence;
+
+import com.gbujak.kanalarz.Kanalarz;
+import com.gbujak.kanalarz.KanalarzPersistence.ContextFinishedEvent;
+import com.gbujak.kanalarz.KanalarzPersistence.ContextOutcome;
+import com.gbujak.kanalarz.KanalarzPersistence.ContextRollbackState;
+import com.gbujak.kanalarz.KanalarzPersistence.ContextStartedEvent;
+import com.gbujak.kanalarz.KanalarzPersistence.HistoryOrder;
+import com.gbujak.kanalarz.KanalarzPersistence.StepCompletedEvent;
+import com.gbujak.kanalarz.KanalarzPersistence.StepExecutedInfo;
+import com.gbujak.kanalarz.KanalarzPersistence.StepStartedEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryPersistenceTests {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void shouldReturnCompletedStepsInStartOrderForEveryContext() {
+        var persistence = persistence(new InMemoryPersistenceSettings(10, Duration.ofHours(1), 1 << 20));
+        var parentContext = UUID.randomUUID();
+        var childContext = UUID.randomUUID();
+        var first = UUID.randomUUID();
+        var second = UUID.randomUUID();
+
+        persistence.stepStarted(started(List.of(parentContext), first));
+        persistence.stepStarted(started(List.of(childContext, parentContext), second));
+        persistence.stepStarted(started(List.of(parentContext), UUID.randomUUID()));
+        persistence.stepEventsBatch(List.of(
+            completed(List.of(childContext, parentContext), second),
+            completed(List.of(parentContext), first)
+        ));
+
+        assertThat(persistence.getExecutedStepsInContextInOrderOfExecutionStarted(parentContext))
+            .extracting(StepExecutedInfo::stepId)
+            .containsExactly(first, second);
+        assertThat(persistence.getExecutedStepsInContextInOrderOfExecutionStarted(childContext))
+            .singleElement()
+            .satisfies(step -> {
+                assertThat(step.stepId()).isEqualTo(second);
+                assertThat(step.serializedExecutionResult()).startsWith("result-" + second);
+            });
+    }
+
+    @Test
+    void shouldReadHistoryPagesInBothDirections() {
+        var persistence = persistence(new InMemoryPersistenceSettings(10, Duration.ofHours(1), 1 << 20));
+        var context = UUID.randomUUID();
+        var stepIds = new ArrayList<UUID>();
+        for (int i = 0; i < 5; i++) {
+            stepIds.add(executeStep(persistence, context));
+        }
+
+        var firstPage = persistence.getExecutedStepsPage(context, HistoryOrder.NEWEST_FIRST, null, 2);
+        var secondPage = persistence.getExecutedStepsPage(context, HistoryOrder.NEWEST_FIRST, firstPage.nextCursor(), 2);
+        var lastPage = persistence.getExecutedStepsPage(context, HistoryOrder.NEWEST_FIRST, secondPage.nextCursor(), 2);
+        var oldestFirst = persistence.getExecutedStepsPage(context, HistoryOrder.OLDEST_FIRST, stepIds.get(2), 10);
+
+        assertThat(firstPage.steps()).extracting(StepExecutedInfo::stepId).containsExactly(stepIds.get(4), stepIds.get(3));
+        assertThat(secondPage.steps()).extracting(StepExecutedInfo::stepId).containsExactly(stepIds.get(2), stepIds.get(1));
+        assertThat(lastPage.steps()).extracting(StepExecutedInfo::stepId).containsExactly(stepIds.get(0));
+        assertThat(lastPage.nextCursor()).isNull();
+        assertThat(oldestFirst.steps()).extracting(StepExecutedInfo::stepId).containsExactly(stepIds.get(3), stepIds.get(4));
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedIdleContexts() {
+        var persistence = persistence(new InMemoryPersistenceSettings(2, Duration.ofHours(1), 1 << 20));
+        var running = UUID.randomUUID();
+        var idle = UUID.randomUUID();
+        var recent = UUID.randomUUID();
+
+        persistence.stepStarted(started(List.of(running), UUID.randomUUID()));
+        executeStep(persistence, idle);
+        finish(persistence, idle);
+        executeStep(persistence, recent);
+        finish(persistence, recent);
+        executeStep(persistence, UUID.randomUUID());
+
+        assertThat(persistence.getExecutedStepsInContextInOrderOfExecutionStarted(idle)).isEmpty();
+        assertThat(persistence.getExecutedStepsInContextInOrderOfExecutionStarted(recent)).isEmpty();
+        var runningStep = UUID.randomUUID();
+        persistence.stepStarted(started(List.of(running), runningStep));
+        persistence.stepCompleted(completed(List.of(running), runningStep));
+        assertThat(persistence.getExecutedStepsInContextInOrderOfExecutionStarted(running))
+            .extracting(StepExecutedInfo::stepId)
+            .containsExactly(runningStep);
+    }
+
+    @Test
+    void shouldEvictContextsIdleForLongerThanTimeout() {
+        var persistence = persistence(new InMemoryPersistenceSettings(10, Duration.ofSeconds(10), 1 << 20));
+        var expired = UUID.randomUUID();
+        var kept = UUID.randomUUID();
+
+        executeStep(persistence, expired);
+        now.addAndGet(Duration.ofSeconds(6).toNanos());
+        executeStep(persistence, kept);
+        now.addAndGet(Duration.ofSeconds(6).toNanos());
+
+        assertThat(persistence.getExecutedStepsInContextInOrderOfExecutionStarted(expired)).isEmpty();
+        assertThat(persistence.getExecutedStepsInContextInOrderOfExecutionStarted(kept)).hasSize(1);
+    }
+
+    @Test
+    void shouldEvictContextsOverMemoryBudget() {
+        var persistence = persistence(new InMemoryPersistenceSettings(10, Duration.ofHours(1), 2_000));
+        var first = UUID.randomUUID();
+        var second = UUID.randomUUID();
+
+        executeStep(persistence, first);
+        finish(persistence, first);
+        executeStep(persistence, second);
+        executeStep(persistence, second);
+
+        assertThat(persistence.getExecutedStepsInContextInOrderOfExecutionStarted(first)).isEmpty();
+        assertThat(persistence.getExecutedStepsInContextInOrderOfExecutionStarted(second)).hasSize(2);
+    }
+
+    @Test
+    void shouldKeepUnfinishedContextsOverLimitsUntilIdleTimeout() {
+        var persistence = persistence(new InMemoryPersistenceSettings(1, Duration.ofSeconds(10), 2_000));
+        var unfinished = UUID.randomUUID();
+        var finished = UUID.randomUUID();
+
+        start(persistence, unfinished);
+        executeStep(persistence, unfinished);
+        for (int i = 0; i < 5; i++) {
+            start(persistence, finished);
+            executeStep(persistence, finished);
+            finish(persistence, finished);
+        }
+
+        assertThat(persistence.getExecutedStepsInContextInOrderOfExecutionStarted(finished)).isEmpty();
+        assertThat(persistence.getExecutedStepsInContextInOrderOfExecutionStarted(unfinished)).hasSize(1);
+
+        now.addAndGet(Duration.ofSeconds(11).toNanos());
+        assertThat(persistence.getExecutedStepsInContextInOrderOfExecutionStarted(unfinished)).isEmpty();
+    }
+
+    private InMemoryPersistence persistence(InMemoryPersistenceSettings settings) {
+        return new InMemoryPersistence(settings, now::get);
+    }
+
+    private static void start(InMemoryPersistence persistence, UUID contextId) {
+        persistence.contextStarted(new ContextStartedEvent(contextId, null, false, false, Map.of(), Instant.now()));
+    }
+
+    private static void finish(InMemoryPersistence persistence, UUID contextId) {
+        persistence.contextFinished(new ContextFinishedEvent(
+            contextId,
+            null,
+            false,
+            ContextOutcome.SUCCEEDED,
+            ContextRollbackState.NOT_NEEDED,
+            Map.of(),
+            Instant.now(),
+            Duration.ZERO
+        ));
+    }
+
+    private static UUID executeStep(InMemoryPersistence persistence, UUID contextId) {
+        var stepId = Kanalarz.timeOrderedEpochPlus1();
+        persistence.stepStarted(started(List.of(contextId), stepId));
+        persistence.stepCompleted(completed(List.of(contextId), stepId));
+        return stepId;
+    }
+
+    private static StepStartedEvent started(List<UUID> contexts, UUID stepId) {
+        return new StepStartedEvent(
+            contexts,
+            stepId,
+            Optional.empty(),
+            Optional.empty(),
+            Map.of(),
+            "steps:step",
+            null,
+            "parameters",
+            false,
+            false,
+            "r.s0"
+        );
+    }
+
+    private static StepCompletedEvent completed(List<UUID> contexts, UUID stepId) {
+        return new StepCompletedEvent(
+            contexts,
+            stepId,
+            Optional.empty(),
+            Optional.empty(),
+            Map.of(),
+            "steps:step",
+            null,
+            "result-" + stepId + "-".repeat(300),
+            false,
+            false,
+            "r.s0"
+        );
+    }
+}
@@ -0,0 +1,70 @@
+package com.gbujak.kanalarz.persistence;
+
+import com.gbujak.kanalarz.KanalarzWorkQueue.WorkItem;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InMemoryWorkQueueTests {
+
+    private final AtomicLong now = new AtomicLong();
+    private final InMemoryWorkQueue queue = new InMemoryWorkQueue(now::get);
+    private Instant enqueuedAt = Instant.parse("2025-01-01T00:00:00Z");
+
+    private WorkItem enqueue(String tenant, int priority) {
+        enqueuedAt = enqueuedAt.plusSeconds(1);
+        var item = new WorkItem(UUID.randomUUID(), "pipeline", "input", tenant, priority, enqueuedAt);
+        queue.enqueue(item);
+        return item;
+    }
+
+    @Test
+    void shouldClaimHigherPriorityFirst() {
+        var low = enqueue("a", 0);
+        var high = enqueue("a", 5);
+
+        assertThat(queue.claim(2, Duration.ofMinutes(1))).containsExactly(high, low);
+    }
+
+    @Test
+    void shouldShareClaimsBetweenTenants() {
+        var a1 = enqueue("a", 0);
+        var a2 = enqueue("a", 0);
+        var a3 = enqueue("a", 0);
+        var b1 = enqueue("b", 0);
+        var c1 = enqueue("c", 0);
+        var b2 = enqueue("b", 0);
+
+        assertThat(queue.claim(4, Duration.ofMinutes(1))).containsExactly(a1, b1, c1, a2);
+        assertThat(queue.claim(4, Duration.ofMinutes(1))).containsExactly(a3, b2);
+    }
+
+    @Test
+    void shouldClaimAgainAfterVisibilityTimeout() {
+        var item = enqueue("a", 0);
+
+        assertThat(queue.claim(1, Duration.ofSeconds(10))).containsExactly(item);
+        assertThat(queue.claim(1, Duration.ofSeconds(10))).isEmpty();
+
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertThat(queue.claim(1, Duration.ofSeconds(10))).containsExactly(item);
+
+        queue.complete(item);
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertThat(queue.claim(1, Duration.ofSeconds(10))).isEmpty();
+        assertThat(queue.size()).isZero();
+    }
+
+    @Test
+    void shouldRejectDuplicateContext() {
+        var item = enqueue("a", 0);
+
+        assertThatThrownBy(() -> queue.enqueue(item)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,136 @@
+package com.gbujak.kanalarz.persistence;
+
+import com.gbujak.kanalarz.Kanalarz;
+import com.gbujak.kanalarz.KanalarzPersistence.StepCompletedEvent;
+import com.gbujak.kanalarz.KanalarzPersistence.StepExecutedInfo;
+import com.gbujak.kanalarz.KanalarzPersistence.StepStartedEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShardedPersistenceTests {
+
+    private final List<ShardedPersistence.Shard> shards = List.of(shard("first"), shard("second"), shard("third"));
+    private final ShardedPersistence router = new ShardedPersistence(shards);
+
+    @Test
+    void shouldWriteRootContextOnlyToItsShard() {
+        var contextId = UUID.randomUUID();
+        var stepId = executeStep(router, List.of(contextId));
+
+        assertThat(shards)
+            .filteredOn(shard -> !shard.persistence()
+                .getExecutedStepsInContextInOrderOfExecutionStarted(contextId)
+                .isEmpty())
+            .containsExactly(router.shardFor(contextId));
+        assertThat(router.getExecutedStepsInContextInOrderOfExecutionStarted(contextId))
+            .extracting(StepExecutedInfo::stepId)
+            .containsExactly(stepId);
+    }
+
+    @Test
+    void shouldWriteNestedStepsToOwnersOfAllContexts() {
+        var rootId = UUID.randomUUID();
+        var childId = UUID.randomUUID();
+        while (router.shardFor(childId).equals(router.shardFor(rootId))) {
+            childId = UUID.randomUUID();
+        }
+
+        var stepId = UUID.randomUUID();
+        router.stepEventsBatch(List.of(started(List.of(rootId, childId), stepId), completed(List.of(rootId, childId), stepId)));
+
+        assertThat(router.shardFor(childId).persistence().getExecutedStepsInContextInOrderOfExecutionStarted(childId))
+            .extracting(StepExecutedInfo::stepId)
+            .containsExactly(stepId);
+        assertThat(router.getExecutedStepsInContextInOrderOfExecutionStarted(rootId))
+            .extracting(StepExecutedInfo::stepId)
+            .containsExactly(stepId);
+    }
+
+    @Test
+    void shouldMoveContextsOnlyToAddedShard() {
+        var added = new ArrayList<>(shards);
+        added.add(shard("fourth"));
+        var rebalanced = new ShardedPersistence(added, shards);
+
+        var contexts = 10_000;
+        var moved = 0;
+        for (int i = 0; i < contexts; i++) {
+            var contextId = Kanalarz.timeOrderedEpochPlus1();
+            var owner = rebalanced.shardFor(contextId);
+            if (!owner.equals(router.shardFor(contextId))) {
+                moved++;
+                assertThat(owner.name()).isEqualTo("fourth");
+            }
+        }
+
+        assertThat(moved).isBetween(contexts / 8, contexts * 3 / 8);
+    }
+
+    @Test
+    void shouldMergeHistoryOfMovedContextWhileRebalancing() {
+        var added = new ArrayList<>(shards);
+        added.add(shard("fourth"));
+        var rebalanced = new ShardedPersistence(added, shards);
+        var contextId = Kanalarz.timeOrderedEpochPlus1();
+        while (rebalanced.shardFor(contextId).equals(router.shardFor(contextId))) {
+            contextId = Kanalarz.timeOrderedEpochPlus1();
+        }
+
+        var beforeRebalancing = executeStep(router, List.of(contextId));
+        var afterRebalancing = executeStep(rebalanced, List.of(contextId));
+
+        assertThat(rebalanced.getExecutedStepsInContextInOrderOfExecutionStarted(contextId))
+            .extracting(StepExecutedInfo::stepId)
+            .containsExactly(beforeRebalancing, afterRebalancing);
+    }
+
+    private static ShardedPersistence.Shard shard(String name) {
+        return new ShardedPersistence.Shard(name, new InMemoryPersistence(InMemoryPersistenceSettings.defaults()));
+    }
+
+    private static UUID executeStep(ShardedPersistence persistence, List<UUID> contexts) {
+        var stepId = Kanalarz.timeOrderedEpochPlus1();
+        persistence.stepStarted(started(contexts, stepId));
+        persistence.stepCompleted(completed(contexts, stepId));
+        return stepId;
+    }
+
+    private static StepStartedEvent started(List<UUID> contexts, UUID stepId) {
+        return new StepStartedEvent(
+            contexts,
+            stepId,
+            Optional.empty(),
+            Optional.empty(),
+            Map.of(),
+            "steps:step",
+            null,
+            "parameters",
+            false,
+            false,
+            "r.s0"
+        );
+    }
+
+    private static StepCompletedEvent completed(List<UUID> contexts, UUID stepId) {
+        return new StepCompletedEvent(
+            contexts,
+            stepId,
+            Optional.empty(),
+            Optional.empty(),
+            Map.of(),
+            "steps:step",
+            null,
+            "result",
+            false,
+            false,
+            "r.s0"
+        );
+    }
+}
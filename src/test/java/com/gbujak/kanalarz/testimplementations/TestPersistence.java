@@ -6,10 +6,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 @NullMarked
@@ -19,19 +25,62 @@ public class TestPersistence implements KanalarzPersistence {
 
     public final List<StepStartedEvent> stepStartedEvents = Collections.synchronizedList(new ArrayList<>());
     public final List<StepCompletedEvent> stepCompletedEvents = Collections.synchronizedList(new ArrayList<>());
+    public final List<ContextStartedEvent> contextStartedEvents = Collections.synchronizedList(new ArrayList<>());
+    public final List<ContextFinishedEvent> contextFinishedEvents = Collections.synchronizedList(new ArrayList<>());
+    // Steps whose events were written by an interrupted thread.
+    public final Set<UUID> stepsWrittenWhileInterrupted = ConcurrentHashMap.newKeySet();
+    // Next history read of each of these contexts fails.
+    public final Set<UUID> failNextHistoryReadOf = ConcurrentHashMap.newKeySet();
 
     @Override
     public void stepStarted(StepStartedEvent stepStartedEvent) {
+        recordInterruptedWrite(stepStartedEvent);
         stepStartedEvents.add(stepStartedEvent);
     }
 
     @Override
     public void stepCompleted(StepCompletedEvent stepCompletedEvent) {
+        recordInterruptedWrite(stepCompletedEvent);
         stepCompletedEvents.add(stepCompletedEvent);
     }
 
+    private void recordInterruptedWrite(StepEvent event) {
+        if (Thread.currentThread().isInterrupted()) {
+            stepsWrittenWhileInterrupted.add(event.stepId());
+        }
+    }
+
+    @Override
+    public void contextStarted(ContextStartedEvent contextStartedEvent) {
+        contextStartedEvents.add(contextStartedEvent);
+    }
+
+    @Override
+    public void contextFinished(ContextFinishedEvent contextFinishedEvent) {
+        contextFinishedEvents.add(contextFinishedEvent);
+    }
+
+    @Override
+    public List<ContextStartedEvent> getUnfinishedContexts(Instant startedBefore, int limit) {
+        var finished = List.copyOf(contextFinishedEvents);
+        Map<UUID, ContextStartedEvent> latestStarted = new LinkedHashMap<>();
+        List.copyOf(contextStartedEvents).forEach(it -> latestStarted.put(it.contextId(), it));
+
+        return latestStarted.values().stream()
+            .filter(it -> it.parentContextId() == null && it.startedAt().isBefore(startedBefore))
+            .filter(started -> finished.stream().noneMatch(it ->
+                it.contextId().equals(started.contextId()) && !it.startedAt().isBefore(started.startedAt()))
+            )
+            .sorted(Comparator.comparing(ContextStartedEvent::startedAt))
+            .limit(limit)
+            .toList();
+    }
+
     @Override
     public List<StepExecutedInfo> getExecutedStepsInContextInOrderOfExecutionStarted(UUID contextId) {
+        if (failNextHistoryReadOf.remove(contextId)) {
+            throw new RuntimeException("history-read-failed");
+        }
         var starteds = List.copyOf(stepStartedEvents);
         var completeds = List.copyOf(stepCompletedEvents);
 
@@ -48,7 +97,9 @@ public class TestPersistence implements KanalarzPersistence {
                 it.parentStepId(),
                 it.stepIsRollbackFor(),
                 it.failed(),
-                it.executionPath()
+                it.executionPath(),
+                it.parametersFingerprint(),
+                it.batchedRollbackFor()
             ))
             .toList();
     }
@@ -3,6 +3,7 @@ package com.gbujak.kanalarz.testimplementations;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.gbujak.kanalarz.KanalarzSerialization;
 import org.jetbrains.annotations.Nullable;
@@ -10,9 +11,11 @@ import org.jspecify.annotations.NullMarked;
 import org.springframework.stereotype.Component;
 
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 @Component
 @NullMarked
@@ -25,8 +28,24 @@ public class TestSerialization implements KanalarzSerialization {
         List<SerializeParameterInfo> parametersInfo,
         @Nullable SerializeReturnInfo returnInfo
     ) {
-        var serialized = mapper.createObjectNode();
+        return serialize(serializeParams(parametersInfo), returnInfo);
+    }
 
+    @Override
+    public SerializedParameters serializeStepStarted(List<SerializeParameterInfo> parametersInfo) {
+        var params = serializeParams(parametersInfo);
+        return new SerializedParameters(serialize(params, null), parametersInfo, params, fingerprint(params));
+    }
+
+    @Override
+    public String serializeStepCompleted(SerializedParameters parameters, SerializeReturnInfo returnInfo) {
+        if (parameters.encodedParameters() instanceof ArrayNode params) {
+            return serialize(params, returnInfo);
+        }
+        return serializeStepCalled(parameters.parametersInfo(), returnInfo);
+    }
+
+    private ArrayNode serializeParams(List<SerializeParameterInfo> parametersInfo) {
         var params = mapper.createArrayNode();
         for (var parameter : parametersInfo) {
             var paramNode = mapper.createObjectNode();
@@ -36,6 +55,15 @@ public class TestSerialization implements KanalarzSerialization {
             paramNode.put("type", parameter.type().getTypeName());
             params.add(paramNode);
         }
+        return params;
+    }
+
+    private String fingerprint(ArrayNode params) {
+        return UUID.nameUUIDFromBytes(params.toString().getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private String serialize(ArrayNode params, @Nullable SerializeReturnInfo returnInfo) {
+        var serialized = mapper.createObjectNode();
         serialized.set("params", params);
 
         if (returnInfo != null) {
@@ -56,25 +84,10 @@ public class TestSerialization implements KanalarzSerialization {
         List<DeserializeParameterInfo> parametersInfo,
         Type returnType
     ) {
-        JsonNode tree;
-        try {
-            tree = mapper.readTree(serialized);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
+        var tree = readTree(serialized);
         Map<String, Object> parameters = new HashMap<>(parametersInfo.size());
 
-        Object result;
-        try {
-            result = mapper.readValue(
-                tree.get("returnInfo").get("value").toString(),
-                mapper.getTypeFactory().constructType(returnType)
-            );
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
-
-        var error = tree.get("returnInfo").get("error").textValue();
+        var result = deserializeResult(tree, returnType);
 
         var treeParams = tree.get("params");
         paramLoop: for (var param : parametersInfo) {
@@ -100,11 +113,39 @@ public class TestSerialization implements KanalarzSerialization {
 
         return new DeserializeParametersResult(
             parameters,
-            result,
-            error != null ? new RuntimeException(error) : null
+            result.executionResult(),
+            result.executionError()
         );
     }
 
+    @Override
+    public DeserializedResult deserializeResult(String serialized, Type returnType) {
+        return deserializeResult(readTree(serialized), returnType);
+    }
+
+    private DeserializedResult deserializeResult(JsonNode tree, Type returnType) {
+        Object result;
+        try {
+            result = mapper.readValue(
+                tree.get("returnInfo").get("value").toString(),
+                mapper.getTypeFactory().constructType(returnType)
+            );
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+
+        var error = tree.get("returnInfo").get("error").textValue();
+        return new DeserializedResult(result, error != null ? new RuntimeException(error) : null);
+    }
+
+    private JsonNode readTree(String serialized) {
+        try {
+            return mapper.readTree(serialized);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public boolean parametersAreEqualIgnoringReturn(String left, String right) {
         try {